@@ -0,0 +1,124 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * {@link IMediaDataSource} for uncompressed assets.
+ *
+ * <p>Uncompressed assets can be opened with {@link android.content.res.AssetManager#openFd},
+ * every {@link #readAt} is a positional {@link FileChannel#read(ByteBuffer, long)} inside the apk,
+ * so a seek costs the same wherever it lands.
+ */
+class AssetMediaDataSource implements IMediaDataSource {
+
+    private AssetFileDescriptor mAfd;
+    private FileInputStream mIs;
+    private FileChannel mChannel;
+    final private long mStart;
+    private long mLength;
+
+    private byte[] mLastBuffer;
+    private ByteBuffer mLastWrapped;
+
+    AssetMediaDataSource(AssetFileDescriptor afd) throws IOException {
+        mAfd = afd;
+        mStart = afd.getStartOffset();
+        try {
+            mIs = afd.createInputStream();
+            mChannel = mIs.getChannel();
+            long length = afd.getLength();
+            if (length == AssetFileDescriptor.UNKNOWN_LENGTH)
+                length = mChannel.size() - mStart;
+            mLength = length;
+        } catch (IOException e) {
+            // the caller has no data source to close, don't leak the descriptor
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) {
+        if (size <= 0)
+            return size;
+        if (mChannel == null || position >= mLength)
+            return -1;
+        int length = (int) Math.min(size, mLength - position);
+        // ijk passes the same buffer for each read, reuse the wrapper
+        if (buffer != mLastBuffer) {
+            mLastBuffer = buffer;
+            mLastWrapped = ByteBuffer.wrap(buffer);
+        }
+        ByteBuffer wrapped = mLastWrapped;
+        wrapped.limit(offset + length);
+        wrapped.position(offset);
+        int read = 0;
+        try {
+            while (wrapped.hasRemaining()) {
+                int n = mChannel.read(wrapped, mStart + position + read);
+                if (n < 0)
+                    break;
+                read += n;
+            }
+        } catch (IOException e) {
+            Log.e("DataSource", "failed to read" + e.getMessage());
+        }
+        return read > 0 ? read : -1;
+    }
+
+    @Override
+    public long getSize() {
+        return mLength;
+    }
+
+    @Override
+    public void close() {
+        mLastBuffer = null;
+        mLastWrapped = null;
+        mChannel = null;
+        mLength = 0;
+        try {
+            if (mIs != null) {
+                mIs.close();
+                mIs = null;
+            }
+            if (mAfd != null) {
+                mAfd.close();
+                mAfd = null;
+            }
+        } catch (IOException e) {
+            Log.e("DataSource", "failed to close" + e.getMessage());
+        }
+    }
+}
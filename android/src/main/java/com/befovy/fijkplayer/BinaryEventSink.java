@@ -0,0 +1,93 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * Sends player events as fixed layout binary records on a dedicated {@link BinaryMessenger}
+ * channel, without allocating a map or boxed values for each event.
+ *
+ * <p>Each record is {@link #RECORD_SIZE} bytes, little endian:
+ * <pre>
+ *   int32 what    one of {@link FijkEventConstants}
+ *   int32 arg1
+ *   int32 arg2
+ *   int64 value
+ * </pre>
+ * A buffering update carries head and percent in arg1 and arg2, and the cached bytes and
+ * milliseconds in the high and low 32 bits of value, so one native callback is one record.
+ * The same direct {@link ByteBuffer} is reused for every message, the engine copies the
+ * message before {@link BinaryMessenger#send} returns.
+ *
+ * <p>A record is only sent when the {@link QueuingEventSink} of the player passes events
+ * through, that is, the Dart side listens, batching is off and no event is queued.
+ * Otherwise {@link #send} returns false and the event goes through the queuing sink, so it's
+ * batched, bounded and kept in order with errors like any map event.
+ *
+ * <p>This class is not thread-safe. All calls must be done on the same thread.
+ */
+final class BinaryEventSink {
+
+    final static int RECORD_SIZE = 20;
+
+    @Nullable
+    final private BinaryMessenger mMessenger;
+    final private String mChannel;
+    final private QueuingEventSink mEventSink;
+    final private ByteBuffer mBuffer;
+    private boolean mEnabled = false;
+
+    BinaryEventSink(@Nullable BinaryMessenger messenger, String channel, QueuingEventSink eventSink) {
+        mMessenger = messenger;
+        mChannel = channel;
+        mEventSink = eventSink;
+        mBuffer = ByteBuffer.allocateDirect(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * @return false if binary events are disabled or the queuing sink holds events back,
+     * and the event should go through the map channel
+     */
+    boolean send(int what, int arg1, int arg2, long value) {
+        if (!mEnabled || mMessenger == null || !mEventSink.passThrough())
+            return false;
+        mBuffer.clear();
+        mBuffer.putInt(what);
+        mBuffer.putInt(arg1);
+        mBuffer.putInt(arg2);
+        mBuffer.putLong(value);
+        // BinaryMessenger takes position as the message size
+        mMessenger.send(mChannel, mBuffer);
+        return true;
+    }
+}
@@ -0,0 +1,428 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * {@link IMediaDataSource} for http(s) urls backed by {@link FijkDiskCache}.
+ *
+ * <p>Reads are served from the cache data file. Missing chunks are fetched with a http Range
+ * request, at most {@link #FETCH_CHUNKS} consecutive missing chunks per request, and stored into
+ * the cache before they are returned. If the server ignores Range, the response is kept open and
+ * read sequentially instead, chunks on the way are cached too. Network work happens on the ijk read
+ * thread, the constructor never touches the network.
+ *
+ * <p>ETag, Last-Modified and length of every response are checked against the cache entry,
+ * cached chunks of a media changed on the server are dropped. A source opening an entry with
+ * cached data checks it with a request of 1 byte first.
+ *
+ * <p>{@link #abort} can be called from any thread to stop a read or prefetch blocked on the
+ * network.
+ */
+class CacheMediaDataSource implements IMediaDataSource {
+
+    final static int FETCH_CHUNKS = 4;
+
+    final private static int CONNECT_TIMEOUT = 10000;
+    final private static int READ_TIMEOUT = 15000;
+
+    final private FijkDiskCache mCache;
+    final private String mUrl;
+    final private Map<String, String> mHeaders;
+    private FijkDiskCache.Entry mEntry;
+    private RandomAccessFile mFile;
+    private byte[] mChunk;
+    private boolean mClosed = false;
+    private volatile boolean mAborted = false;
+    // connection being read, disconnected by abort
+    private volatile HttpURLConnection mActiveConn;
+
+    private boolean mRangeSupported = true;
+    // response read sequentially when the server ignores Range
+    private HttpURLConnection mStreamConn;
+    private InputStream mStream;
+    private long mStreamPos = 0;
+
+    CacheMediaDataSource(@NonNull FijkDiskCache cache, @NonNull String url) {
+        this(cache, url, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * @param headers extra http headers of every request, see {@link HttpHeaders}
+     */
+    CacheMediaDataSource(@NonNull FijkDiskCache cache, @NonNull String url, @NonNull Map<String, String> headers) {
+        mCache = cache;
+        mUrl = url;
+        mHeaders = headers;
+    }
+
+    private boolean ensureOpen() {
+        if (mClosed || mAborted)
+            return false;
+        if (mFile != null)
+            return true;
+        mEntry = mCache.open(mUrl);
+        try {
+            mFile = new RandomAccessFile(mCache.dataFile(mEntry), "rw");
+            mChunk = new byte[FijkDiskCache.CHUNK_SIZE];
+            if (mCache.length(mEntry) < 0)
+                fetch(0);
+            else
+                revalidate();
+        } catch (IOException e) {
+            Log.e("DataSource", "failed to open cache " + e.getMessage());
+        }
+        if (mFile == null) {
+            // next call opens the entry again, don't leave this reference behind
+            mCache.close(mEntry);
+            mEntry = null;
+        }
+        return mFile != null;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) {
+        if (size <= 0)
+            return size;
+        if (!ensureOpen())
+            return -1;
+        long length = mCache.length(mEntry);
+        if (length >= 0 && position >= length)
+            return -1;
+        int index = (int) (position / FijkDiskCache.CHUNK_SIZE);
+        try {
+            if (!mCache.hasChunk(mEntry, index)) {
+                fetch(index);
+                if (!mCache.hasChunk(mEntry, index))
+                    return -1;
+                length = mCache.length(mEntry);
+            }
+            long chunkEnd = (long) (index + 1) * FijkDiskCache.CHUNK_SIZE;
+            if (length >= 0)
+                chunkEnd = Math.min(chunkEnd, length);
+            int n = (int) Math.min(size, chunkEnd - position);
+            mFile.seek(position);
+            return mFile.read(buffer, offset, n);
+        } catch (IOException e) {
+            Log.e("DataSource", "failed to read" + e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Make sure the first length bytes are in the cache, without copying them out.
+     * Stops early if the calling thread is interrupted or the source is aborted.
+     *
+     * @return true if all requested bytes, or the whole media if shorter, are cached
+     */
+    boolean prefetch(long length) {
+        return prefetch(0, length);
+    }
+
+    /**
+     * Make sure length bytes from position are in the cache, see {@link #prefetch(long)}
+     */
+    boolean prefetch(long position, long length) {
+        if (!ensureOpen())
+            return false;
+        try {
+            for (int index = (int) (position / FijkDiskCache.CHUNK_SIZE);
+                 (long) index * FijkDiskCache.CHUNK_SIZE < position + length; index++) {
+                if (mAborted || Thread.currentThread().isInterrupted())
+                    return false;
+                long total = mCache.length(mEntry);
+                if (total >= 0 && (long) index * FijkDiskCache.CHUNK_SIZE >= total)
+                    break;
+                if (!mCache.hasChunk(mEntry, index)) {
+                    fetch(index);
+                    if (!mCache.hasChunk(mEntry, index))
+                        return false;
+                }
+            }
+        } catch (IOException e) {
+            Log.e("DataSource", "failed to prefetch " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fetch the chunk at index and the missing chunks just after it with one Range request
+     */
+    private void fetch(int index) throws IOException {
+        if (!mRangeSupported) {
+            fetchSequential(index);
+            return;
+        }
+        long length = mCache.length(mEntry);
+        int last = index;
+        while (last - index + 1 < FETCH_CHUNKS && !mCache.hasChunk(mEntry, last + 1)
+                && (length < 0 || (long) (last + 1) * FijkDiskCache.CHUNK_SIZE < length))
+            last++;
+        long start = (long) index * FijkDiskCache.CHUNK_SIZE;
+        long end = (long) (last + 1) * FijkDiskCache.CHUNK_SIZE - 1;
+
+        HttpURLConnection conn = open();
+        conn.setRequestProperty("Range", "bytes=" + start + "-" + end);
+        InputStream is = null;
+        try {
+            int code = conn.getResponseCode();
+            length = -1;
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                length = totalLength(conn);
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                // server ignores Range, read the body from 0 instead of skipping it for every fetch
+                mRangeSupported = false;
+                validate(conn, parseLong(conn.getHeaderField("Content-Length")));
+                mStream = conn.getInputStream();
+                mStreamConn = conn;
+                mStreamPos = 0;
+                conn = null;
+                fetchSequential(index);
+                return;
+            } else if (code == 416) {
+                mCache.setLength(mEntry, start);
+                return;
+            } else {
+                Log.e("DataSource", "http cache fetch failed, code " + code);
+                return;
+            }
+            validate(conn, length);
+
+            is = conn.getInputStream();
+            store(is, index, last);
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (conn != null)
+                conn.disconnect();
+        }
+    }
+
+    /**
+     * Fetch the chunk at index from the sequential response, it's opened again to go backward
+     */
+    private void fetchSequential(int index) throws IOException {
+        long start = (long) index * FijkDiskCache.CHUNK_SIZE;
+        if (mStream != null && mStreamPos > start)
+            closeStream();
+        if (mStream == null) {
+            HttpURLConnection conn = open();
+            int code = conn.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                conn.disconnect();
+                Log.e("DataSource", "http cache fetch failed, code " + code);
+                return;
+            }
+            validate(conn, parseLong(conn.getHeaderField("Content-Length")));
+            mStream = conn.getInputStream();
+            mStreamConn = conn;
+            mStreamPos = 0;
+        }
+        int first = (int) (mStreamPos / FijkDiskCache.CHUNK_SIZE);
+        try {
+            boolean more = store(mStream, first, index + FETCH_CHUNKS - 1);
+            mStreamPos = (long) (index + FETCH_CHUNKS) * FijkDiskCache.CHUNK_SIZE;
+            if (!more)
+                closeStream();
+        } catch (IOException e) {
+            closeStream();
+            throw e;
+        }
+    }
+
+    /**
+     * Check cached data against the server once when it's opened, with a request of 1 byte.
+     * The cached data is used as it is if the server can't be reached.
+     */
+    private void revalidate() {
+        try {
+            HttpURLConnection conn = open();
+            conn.setRequestProperty("Range", "bytes=0-0");
+            try {
+                int code = conn.getResponseCode();
+                if (code == HttpURLConnection.HTTP_PARTIAL)
+                    validate(conn, totalLength(conn));
+                else if (code == HttpURLConnection.HTTP_OK)
+                    validate(conn, parseLong(conn.getHeaderField("Content-Length")));
+            } finally {
+                conn.disconnect();
+            }
+        } catch (IOException e) {
+            Log.w("DataSource", "failed to revalidate cache, " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return total length in Content-Range: bytes start-end/total, or -1
+     */
+    private static long totalLength(HttpURLConnection conn) {
+        String range = conn.getHeaderField("Content-Range");
+        int slash = range != null ? range.lastIndexOf('/') : -1;
+        if (slash >= 0 && slash < range.length() - 1 && range.charAt(slash + 1) != '*')
+            return parseLong(range.substring(slash + 1));
+        return -1;
+    }
+
+    private HttpURLConnection open() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(mUrl).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        HttpHeaders.apply(conn, mHeaders);
+        mActiveConn = conn;
+        // abort may have missed the connection, it's set before the flag is checked
+        if (mAborted) {
+            conn.disconnect();
+            throw new IOException("aborted");
+        }
+        return conn;
+    }
+
+    /**
+     * Stop the network work of this source from another thread. Interrupting the reading
+     * thread does not stop a blocking socket read, disconnecting the connection does.
+     * Later reads and prefetches fail, the source still has to be closed by its owner.
+     */
+    void abort() {
+        mAborted = true;
+        HttpURLConnection conn = mActiveConn;
+        if (conn != null)
+            conn.disconnect();
+    }
+
+    private void validate(HttpURLConnection conn, long length) {
+        if (!mCache.validate(mEntry, length, conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified")))
+            Log.w("DataSource", "media changed on server, cached data dropped " + mUrl);
+    }
+
+    /**
+     * Read chunks first to last from is into the cache, chunks already cached are read but not written.
+     * Only complete chunks, or the complete last chunk of the media, are stored.
+     *
+     * @return false if the end of is was reached
+     */
+    private boolean store(InputStream is, int first, int last) throws IOException {
+        long length = mCache.length(mEntry);
+        for (int c = first; c <= last; c++) {
+            int filled = readFully(is, mChunk);
+            long chunkStart = (long) c * FijkDiskCache.CHUNK_SIZE;
+            boolean atEnd = filled < mChunk.length;
+            if (atEnd && length < 0) {
+                length = chunkStart + filled;
+                mCache.setLength(mEntry, length);
+            }
+            if (filled == 0)
+                return false;
+            if ((!atEnd || chunkStart + filled == length) && !mCache.hasChunk(mEntry, c)) {
+                mFile.seek(chunkStart);
+                mFile.write(mChunk, 0, filled);
+                mCache.putChunk(mEntry, c);
+            }
+            if (atEnd)
+                return false;
+        }
+        return true;
+    }
+
+    private void closeStream() {
+        if (mStream != null) {
+            try {
+                mStream.close();
+            } catch (IOException ignored) {
+            }
+            mStream = null;
+        }
+        if (mStreamConn != null) {
+            mStreamConn.disconnect();
+            mStreamConn = null;
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null)
+            return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int readFully(InputStream is, byte[] buffer) throws IOException {
+        int filled = 0;
+        while (filled < buffer.length) {
+            int n = is.read(buffer, filled, buffer.length - filled);
+            if (n < 0)
+                break;
+            filled += n;
+        }
+        return filled;
+    }
+
+    @Override
+    public long getSize() {
+        if (!ensureOpen())
+            return -1;
+        return mCache.length(mEntry);
+    }
+
+    @Override
+    public void close() {
+        if (mClosed)
+            return;
+        mClosed = true;
+        closeStream();
+        mActiveConn = null;
+        if (mFile != null) {
+            try {
+                mFile.close();
+            } catch (IOException e) {
+                Log.e("DataSource", "failed to close" + e.getMessage());
+            }
+            mFile = null;
+        }
+        if (mEntry != null) {
+            mCache.close(mEntry);
+            mEntry = null;
+        }
+        mChunk = null;
+    }
+}
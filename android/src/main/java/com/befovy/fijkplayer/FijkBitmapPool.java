@@ -0,0 +1,115 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Pool of mutable ARGB_8888 {@link Bitmap}s shared by snapshot and thumbnail.
+ *
+ * <p>A released bitmap is handed out again for any size it has enough memory for,
+ * reconfigured on API 19 and above, or only for the same size below API 19.
+ * Bitmaps beyond maxBytes are recycled, least recently released first.
+ * All methods are thread-safe.
+ */
+final class FijkBitmapPool {
+
+    final static int DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    final private ArrayDeque<Bitmap> mBitmaps = new ArrayDeque<>();
+    private long mMaxBytes;
+    private long mBytes = 0;
+
+    FijkBitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    private static int allocationBytes(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+            return bitmap.getAllocationByteCount();
+        return bitmap.getByteCount();
+    }
+
+    /**
+     * Get a bitmap of width x height, the content of a reused bitmap is not erased
+     */
+    @NonNull
+    synchronized Bitmap acquire(int width, int height) {
+        final int bytes = width * height * 4;
+        Iterator<Bitmap> iterator = mBitmaps.iterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                iterator.remove();
+                mBytes -= allocationBytes(bitmap);
+                return bitmap;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && allocationBytes(bitmap) >= bytes) {
+                iterator.remove();
+                mBytes -= allocationBytes(bitmap);
+                bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                return bitmap;
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Give back a bitmap got from {@link #acquire(int, int)}, it must not be used after release
+     */
+    synchronized void release(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable())
+            return;
+        mBitmaps.addFirst(bitmap);
+        mBytes += allocationBytes(bitmap);
+        trim(mMaxBytes);
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trim(mMaxBytes);
+    }
+
+    synchronized void clear() {
+        trim(0);
+    }
+
+    synchronized long bytes() {
+        return mBytes;
+    }
+
+    private void trim(long maxBytes) {
+        while (mBytes > maxBytes && !mBitmaps.isEmpty()) {
+            Bitmap bitmap = mBitmaps.removeLast();
+            mBytes -= allocationBytes(bitmap);
+            bitmap.recycle();
+        }
+    }
+}
@@ -0,0 +1,311 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size capped LRU disk cache for network media, shared by all players of the plugin.
+ *
+ * <p>Each url owns a sparse data file in which fetched bytes are stored at their own offset,
+ * and a bit set of the {@link #CHUNK_SIZE} chunks already present. The index of all entries is
+ * persisted in the cache directory so cached ranges survive app restarts.
+ * When the cache grows over its size cap, least recently used entries which are not opened by any
+ * player are deleted.
+ */
+final class FijkDiskCache {
+
+    final static int CHUNK_SIZE = 256 * 1024;
+    final static long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    final private static int INDEX_VERSION = 2;
+    final private static String INDEX_NAME = "index";
+    final private static String DATA_SUFFIX = ".data";
+
+    final private File mDir;
+    final private File mIndexFile;
+    private long mMaxBytes;
+    private long mTotalBytes = 0;
+
+    // access order, the eldest entry is the least recently used one
+    final private LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    static final class Entry {
+        final String key;
+        long length = -1;
+        // validators of the cached data, null if the server sends none
+        String etag;
+        String lastModified;
+        final BitSet chunks = new BitSet();
+        int refs = 0;
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    FijkDiskCache(@NonNull File dir, long maxBytes) {
+        mDir = dir;
+        mIndexFile = new File(dir, INDEX_NAME);
+        mMaxBytes = maxBytes;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e("FIJKPLAYER", "failed to create cache dir " + dir.getPath());
+        }
+        loadIndex();
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes > 0 && maxBytes != mMaxBytes) {
+            mMaxBytes = maxBytes;
+            trim();
+        }
+    }
+
+    File dir() {
+        return mDir;
+    }
+
+    synchronized long totalBytes() {
+        return mTotalBytes;
+    }
+
+    synchronized Entry open(@NonNull String url) {
+        String key = keyOf(url);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            mEntries.put(key, entry);
+        }
+        entry.refs++;
+        return entry;
+    }
+
+    synchronized void close(@NonNull Entry entry) {
+        entry.refs--;
+        trim();
+        saveIndex();
+    }
+
+    File dataFile(@NonNull Entry entry) {
+        return new File(mDir, entry.key + DATA_SUFFIX);
+    }
+
+    synchronized boolean hasChunk(@NonNull Entry entry, int index) {
+        return entry.chunks.get(index);
+    }
+
+    synchronized long length(@NonNull Entry entry) {
+        return entry.length;
+    }
+
+    synchronized void setLength(@NonNull Entry entry, long length) {
+        entry.length = length;
+    }
+
+    /**
+     * Check length and validators of a response against the entry, and remember them.
+     * Cached chunks are dropped if the media has changed, ETag is compared first,
+     * Last-Modified only if either side has no ETag.
+     *
+     * @param length media length, -1 if unknown
+     * @return false if the media has changed and cached chunks are dropped
+     */
+    synchronized boolean validate(@NonNull Entry entry, long length, String etag, String lastModified) {
+        boolean changed = entry.length >= 0 && length >= 0 && entry.length != length;
+        if (entry.etag != null && etag != null)
+            changed |= !entry.etag.equals(etag);
+        else if (entry.lastModified != null && lastModified != null)
+            changed |= !entry.lastModified.equals(lastModified);
+        if (changed) {
+            mTotalBytes -= (long) entry.chunks.cardinality() * CHUNK_SIZE;
+            entry.chunks.clear();
+            entry.length = -1;
+        }
+        if (length >= 0)
+            entry.length = length;
+        entry.etag = etag;
+        entry.lastModified = lastModified;
+        return !changed;
+    }
+
+    synchronized void putChunk(@NonNull Entry entry, int index) {
+        if (!entry.chunks.get(index)) {
+            entry.chunks.set(index);
+            mTotalBytes += CHUNK_SIZE;
+            trim();
+        }
+    }
+
+    /**
+     * Delete all entries which are not opened by any player
+     */
+    synchronized void clear() {
+        Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.refs <= 0) {
+                it.remove();
+                delete(entry);
+            }
+        }
+        saveIndex();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        while (mTotalBytes > mMaxBytes && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.refs <= 0) {
+                it.remove();
+                delete(entry);
+            }
+        }
+    }
+
+    private void delete(Entry entry) {
+        mTotalBytes -= (long) entry.chunks.cardinality() * CHUNK_SIZE;
+        File data = dataFile(entry);
+        if (data.exists() && !data.delete()) {
+            Log.w("FIJKPLAYER", "failed to delete cache file " + data.getPath());
+        }
+    }
+
+    private void loadIndex() {
+        if (!mIndexFile.exists())
+            return;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mIndexFile)));
+            if (in.readInt() != INDEX_VERSION) {
+                deleteDataFiles();
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF());
+                entry.length = in.readLong();
+                entry.etag = emptyToNull(in.readUTF());
+                entry.lastModified = emptyToNull(in.readUTF());
+                int chunks = in.readInt();
+                for (int c = 0; c < chunks; c++)
+                    entry.chunks.set(in.readInt());
+                if (dataFile(entry).exists()) {
+                    mEntries.put(entry.key, entry);
+                    mTotalBytes += (long) chunks * CHUNK_SIZE;
+                }
+            }
+        } catch (IOException e) {
+            Log.e("FIJKPLAYER", "failed to load cache index " + e.getMessage());
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void saveIndex() {
+        File tmp = new File(mDir, INDEX_NAME + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(mEntries.size());
+            // write in LRU order, so that the order is restored by loadIndex
+            for (Entry entry : mEntries.values()) {
+                out.writeUTF(entry.key);
+                out.writeLong(entry.length);
+                out.writeUTF(entry.etag != null ? entry.etag : "");
+                out.writeUTF(entry.lastModified != null ? entry.lastModified : "");
+                out.writeInt(entry.chunks.cardinality());
+                for (int c = entry.chunks.nextSetBit(0); c >= 0; c = entry.chunks.nextSetBit(c + 1))
+                    out.writeInt(c);
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mIndexFile)) {
+                Log.e("FIJKPLAYER", "failed to rename cache index");
+            }
+        } catch (IOException e) {
+            Log.e("FIJKPLAYER", "failed to save cache index " + e.getMessage());
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Delete data files of an index which can't be read
+     */
+    private void deleteDataFiles() {
+        File[] files = mDir.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            if (file.getName().endsWith(DATA_SUFFIX) && !file.delete())
+                Log.w("FIJKPLAYER", "failed to delete cache file " + file.getPath());
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.length() > 0 ? value : null;
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    static String keyOf(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] bytes = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
@@ -30,18 +30,49 @@ import androidx.annotation.Nullable;
 
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.view.TextureRegistry;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
 
 interface FijkEngine {
 
     @Nullable
     TextureRegistry.SurfaceTextureEntry createSurfaceEntry();
 
+    /**
+     * Create a native player, may be called on any thread
+     */
+    @NonNull
+    IjkMediaPlayer createMediaPlayer();
+
     @Nullable
     BinaryMessenger messenger();
 
     @Nullable
     Context context();
 
+    @Nullable
+    FijkDiskCache diskCache();
+
+    @Nullable
+    FijkPreloader preloader();
+
+    @Nullable
+    FijkKeyframeIndex keyframeIndex();
+
+    @Nullable
+    FijkOptionProfile optionProfile(@NonNull String name);
+
+    @NonNull
+    FijkBitmapPool bitmapPool();
+
+    @NonNull
+    FijkTexturePool texturePool();
+
+    @NonNull
+    FijkScheduler scheduler();
+
+    @NonNull
+    FijkMemoryGovernor memoryGovernor();
+
     @Nullable
     String lookupKeyForAsset(@NonNull String asset, @Nullable String packageName);
 
@@ -0,0 +1,363 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * Keyframe times and byte offsets of media, shared by all players of the plugin.
+ *
+ * <p>Keyframes are read from the MP4 sample tables by {@link Mp4KeyframeParser} the first time a
+ * media is seen, through a data source of its own, and persisted as one small file per media in
+ * a directory next to {@link FijkDiskCache}. Later sessions, also after app restarts, load the file
+ * instead of reading the media again. Media which is not a supported MP4 is persisted as an empty
+ * index, so it's not parsed again either. The least recently used files beyond {@link #MAX_FILES}
+ * are deleted, the last {@link #MAX_LOADED} indexes are kept in memory.
+ *
+ * <p>Loading and parsing run one at a time on a background executor.
+ */
+final class FijkKeyframeIndex {
+
+    final static String DIR_NAME = "keyframes";
+    final static int MAX_FILES = 256;
+    final static int MAX_LOADED = 16;
+    final static int MAX_KEYFRAMES = 1 << 20;
+
+    final private static int VERSION = 1;
+    final private static String SUFFIX = ".kfi";
+
+    /**
+     * Sorted keyframes of one media, immutable
+     */
+    static final class Keyframes {
+
+        final static Keyframes EMPTY = new Keyframes(new int[0], new long[0]);
+
+        final private int[] mTimeMs;
+        final private long[] mOffsets;
+
+        Keyframes(@NonNull int[] timeMs, @NonNull long[] offsets) {
+            mTimeMs = timeMs;
+            mOffsets = offsets;
+        }
+
+        int count() {
+            return mTimeMs.length;
+        }
+
+        long timeMs(int index) {
+            return mTimeMs[index];
+        }
+
+        long offset(int index) {
+            return mOffsets[index];
+        }
+
+        /**
+         * @return index of the last keyframe at or before ms, 0 if ms is before all of them,
+         * -1 if there are no keyframes
+         */
+        int floor(long ms) {
+            if (mTimeMs.length == 0)
+                return -1;
+            int index = Arrays.binarySearch(mTimeMs, (int) Math.max(0, Math.min(Integer.MAX_VALUE, ms)));
+            if (index < 0)
+                index = -index - 2;
+            // equal times, take the first of them
+            while (index > 0 && mTimeMs[index - 1] == mTimeMs[index])
+                index--;
+            return Math.max(0, index);
+        }
+
+        /**
+         * @return time of the keyframe closest to ms, ms itself if there are no keyframes
+         */
+        long nearest(long ms) {
+            int index = floor(ms);
+            if (index < 0)
+                return ms;
+            long before = mTimeMs[index];
+            int next = index + 1;
+            while (next < mTimeMs.length && mTimeMs[next] <= before)
+                next++;
+            if (next < mTimeMs.length && mTimeMs[next] - ms < Math.abs(ms - before))
+                return mTimeMs[next];
+            return before;
+        }
+
+        /**
+         * @return byte range of the keyframe at index up to the next keyframe, capped to max bytes
+         */
+        long rangeLength(int index, long max) {
+            long offset = mOffsets[index];
+            for (int next = index + 1; next < mOffsets.length; next++) {
+                if (mOffsets[next] > offset)
+                    return Math.min(mOffsets[next] - offset, max);
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Opens a data source to parse the media, called on the background executor
+     */
+    interface Source {
+        @Nullable
+        IMediaDataSource open();
+    }
+
+    interface Callback {
+        /**
+         * Called on the background executor, not called if the media can't be read
+         */
+        void onKeyframes(@NonNull Keyframes keyframes);
+    }
+
+    final private File mDir;
+    final private SerialExecutor mExecutor = new SerialExecutor();
+    // access order, the eldest one is dropped over MAX_LOADED
+    final private LinkedHashMap<String, Keyframes> mLoaded = new LinkedHashMap<String, Keyframes>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Keyframes> eldest) {
+            return size() > MAX_LOADED;
+        }
+    };
+
+    FijkKeyframeIndex(@NonNull File dir) {
+        mDir = dir;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e("FIJKPLAYER", "failed to create keyframe dir " + dir.getPath());
+        }
+    }
+
+    /**
+     * Key of a local file, a changed file gets a new key
+     */
+    @NonNull
+    static String keyOf(@NonNull File file) {
+        return FijkDiskCache.keyOf("file://" + file.getAbsolutePath() + "#" + file.length() + "#" + file.lastModified());
+    }
+
+    /**
+     * Key of a network url, the same one as its {@link FijkDiskCache} entry
+     */
+    @NonNull
+    static String keyOf(@NonNull String url) {
+        return FijkDiskCache.keyOf(url);
+    }
+
+    /**
+     * Load the keyframes of key in background, parsing the media of source if they are not known
+     */
+    void load(@NonNull final String key, @NonNull final Source source, @NonNull final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Keyframes keyframes = get(key, source);
+                if (keyframes != null)
+                    callback.onKeyframes(keyframes);
+            }
+        });
+    }
+
+    /**
+     * Keyframes of key from memory, file, or parsed from source and persisted. Blocks on IO.
+     *
+     * @return null if the media can't be read, it's tried again next time
+     */
+    @Nullable
+    Keyframes get(@NonNull String key, @NonNull Source source) {
+        Keyframes keyframes;
+        synchronized (this) {
+            keyframes = mLoaded.get(key);
+        }
+        if (keyframes != null)
+            return keyframes;
+        File file = new File(mDir, key + SUFFIX);
+        keyframes = read(file);
+        if (keyframes != null) {
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+        } else {
+            keyframes = parse(source);
+            if (keyframes == null)
+                return null;
+            write(file, keyframes);
+            trim();
+        }
+        synchronized (this) {
+            mLoaded.put(key, keyframes);
+        }
+        return keyframes;
+    }
+
+    @Nullable
+    private static Keyframes parse(Source source) {
+        IMediaDataSource dataSource = source.open();
+        if (dataSource == null)
+            return null;
+        try {
+            Keyframes keyframes = Mp4KeyframeParser.parse(dataSource);
+            return keyframes != null ? keyframes : Keyframes.EMPTY;
+        } catch (IOException e) {
+            Log.w("FIJKPLAYER", "failed to read keyframes " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                dataSource.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * File format: version, count, then per keyframe the time delta and the zigzag offset delta,
+     * all as variable length integers
+     */
+    @Nullable
+    private static Keyframes read(File file) {
+        if (!file.exists())
+            return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (readVarLong(in) != VERSION)
+                return null;
+            long count = readVarLong(in);
+            if (count > MAX_KEYFRAMES)
+                return null;
+            int[] timeMs = new int[(int) count];
+            long[] offsets = new long[(int) count];
+            long time = 0;
+            long offset = 0;
+            for (int i = 0; i < count; i++) {
+                time += readVarLong(in);
+                long delta = readVarLong(in);
+                offset += (delta >>> 1) ^ -(delta & 1);
+                timeMs[i] = (int) time;
+                offsets[i] = offset;
+            }
+            return new Keyframes(timeMs, offsets);
+        } catch (IOException e) {
+            Log.e("FIJKPLAYER", "failed to load keyframes " + e.getMessage());
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void write(File file, Keyframes keyframes) {
+        File tmp = new File(mDir, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            writeVarLong(out, VERSION);
+            writeVarLong(out, keyframes.count());
+            long time = 0;
+            long offset = 0;
+            for (int i = 0; i < keyframes.count(); i++) {
+                writeVarLong(out, keyframes.timeMs(i) - time);
+                long delta = keyframes.offset(i) - offset;
+                writeVarLong(out, (delta << 1) ^ (delta >> 63));
+                time = keyframes.timeMs(i);
+                offset = keyframes.offset(i);
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                Log.e("FIJKPLAYER", "failed to rename keyframes");
+            }
+        } catch (IOException e) {
+            Log.e("FIJKPLAYER", "failed to save keyframes " + e.getMessage());
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Delete the least recently used files over MAX_FILES
+     */
+    private void trim() {
+        File[] files = mDir.listFiles();
+        if (files == null || files.length <= MAX_FILES)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_FILES; i++) {
+            if (!files[i].delete())
+                Log.w("FIJKPLAYER", "failed to delete keyframes " + files[i].getPath());
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
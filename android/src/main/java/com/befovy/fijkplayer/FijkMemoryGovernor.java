@@ -0,0 +1,103 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.content.ComponentCallbacks2;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * Tracks memory pressure reported by {@link ComponentCallbacks2#onTrimMemory(int)}.
+ *
+ * <p>While under pressure, players are prepared with smaller max-buffer-size and min-frames.
+ * ijkplayer reads these options only in prepare, so players already prepared keep their buffers.
+ * That is all for moderate pressure, under severe pressure the plugin also drops its caches and
+ * resets paused players.
+ * Pressure expires after {@link #PRESSURE_TIMEOUT_MS} without new trim callbacks.
+ */
+final class FijkMemoryGovernor {
+
+    final static int PRESSURE_NONE = 0;
+    final static int PRESSURE_MODERATE = 1;
+    final static int PRESSURE_SEVERE = 2;
+
+    final private static long PRESSURE_TIMEOUT_MS = 60 * 1000;
+
+    final private static long[] MAX_BUFFER_BYTES = {0, 4 * 1024 * 1024, 1024 * 1024};
+    final private static int[] MIN_FRAMES = {0, 25, 5};
+
+    private volatile int mPressure = PRESSURE_NONE;
+    private volatile long mPressureTime = 0;
+
+    /**
+     * Map trim level to pressure
+     */
+    static int pressureOf(int level) {
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE)
+            return PRESSURE_SEVERE;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)
+            return PRESSURE_MODERATE;
+        return PRESSURE_NONE;
+    }
+
+    /**
+     * @return pressure of level
+     */
+    int onTrimMemory(int level) {
+        int pressure = pressureOf(level);
+        if (pressure > PRESSURE_NONE) {
+            mPressure = Math.max(pressure(), pressure);
+            mPressureTime = SystemClock.elapsedRealtime();
+        }
+        return pressure;
+    }
+
+    int pressure() {
+        if (mPressure != PRESSURE_NONE && SystemClock.elapsedRealtime() - mPressureTime > PRESSURE_TIMEOUT_MS)
+            mPressure = PRESSURE_NONE;
+        return mPressure;
+    }
+
+    /**
+     * Lower buffer options of a player before it prepares, called on the player thread
+     *
+     * @param bufferBytes max-buffer-size already set for the player, 0 if not set
+     * @return max-buffer-size set by this method, or 0
+     */
+    long applyLimits(@NonNull IjkMediaPlayer mediaPlayer, long bufferBytes) {
+        final int pressure = pressure();
+        if (pressure == PRESSURE_NONE)
+            return 0;
+        long maxBufferBytes = MAX_BUFFER_BYTES[pressure];
+        if (bufferBytes > 0)
+            maxBufferBytes = Math.min(maxBufferBytes, bufferBytes);
+        mediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "max-buffer-size", maxBufferBytes);
+        mediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "min-frames", MIN_FRAMES[pressure]);
+        return maxBufferBytes;
+    }
+}
@@ -0,0 +1,282 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Playback QoS metrics of one {@link FijkPlayer}.
+ *
+ * <p>Timestamps of the current session are recorded from method calls and native events,
+ * latencies are aggregated into lock-free {@link Histogram}s.
+ * A session starts with setDataSource, histograms and counters live until {@link #reset}.
+ * Rebuffer ratio is the stall time over the time spent in started state, both since reset,
+ * so paused time and time before the first frame don't count.
+ */
+final class FijkMetrics {
+
+    // upper bounds in milliseconds of histogram buckets, the last bucket has no upper bound
+    final private static long[] BOUNDS = {50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    final private Histogram mPrepare = new Histogram();
+    final private Histogram mFirstFrame = new Histogram();
+    final private Histogram mStall = new Histogram();
+    final private Histogram mSeek = new Histogram();
+
+    // session timestamps, elapsedRealtime in milliseconds, 0 means not happened
+    final private AtomicLong mSetDataSourceAt = new AtomicLong();
+    final private AtomicLong mPrepareAsyncAt = new AtomicLong();
+    final private AtomicLong mPreparedAt = new AtomicLong();
+    final private AtomicLong mFirstFrameAt = new AtomicLong();
+    final private AtomicLong mStallStartAt = new AtomicLong();
+    final private AtomicLong mSeekRequestAt = new AtomicLong();
+    // time in started state since reset, a stall while started counts as started time
+    final private AtomicLong mPlayingSince = new AtomicLong();
+    final private AtomicLong mPlayedMs = new AtomicLong();
+
+    // seeks sent to native player, and seeks replaced by a newer one in scrub mode
+    final private AtomicLong mSeeksIssued = new AtomicLong();
+    final private AtomicLong mSeeksDropped = new AtomicLong();
+
+    static final class Histogram {
+        final private AtomicLongArray mBuckets = new AtomicLongArray(BOUNDS.length + 1);
+        final private AtomicLong mCount = new AtomicLong();
+        final private AtomicLong mSum = new AtomicLong();
+        final private AtomicLong mMax = new AtomicLong();
+
+        void record(long value) {
+            int i = 0;
+            while (i < BOUNDS.length && value > BOUNDS[i])
+                i++;
+            mBuckets.incrementAndGet(i);
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+            long max = mMax.get();
+            while (value > max && !mMax.compareAndSet(max, value))
+                max = mMax.get();
+        }
+
+        long count() {
+            return mCount.get();
+        }
+
+        long sum() {
+            return mSum.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < mBuckets.length(); i++)
+                mBuckets.set(i, 0);
+            mCount.set(0);
+            mSum.set(0);
+            mMax.set(0);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            long count = mCount.get();
+            long sum = mSum.get();
+            map.put("count", count);
+            map.put("sum", sum);
+            map.put("max", mMax.get());
+            map.put("avg", count > 0 ? sum / count : 0L);
+            List<Long> buckets = new ArrayList<>(mBuckets.length());
+            for (int i = 0; i < mBuckets.length(); i++)
+                buckets.add(mBuckets.get(i));
+            map.put("buckets", buckets);
+            return map;
+        }
+    }
+
+    /**
+     * Time source in milliseconds, replaced in tests
+     */
+    interface Clock {
+        long now();
+    }
+
+    final private static Clock ELAPSED_REALTIME = new Clock() {
+        @Override
+        public long now() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    final private Clock mClock;
+
+    FijkMetrics() {
+        this(ELAPSED_REALTIME);
+    }
+
+    FijkMetrics(Clock clock) {
+        mClock = clock;
+    }
+
+    private long now() {
+        return mClock.now();
+    }
+
+    /**
+     * Record the latency since the timestamp in from, and clear the timestamp
+     */
+    private static void since(AtomicLong from, long to, Histogram histogram) {
+        long start = from.getAndSet(0);
+        if (start > 0)
+            histogram.record(to - start);
+    }
+
+    void onSetDataSource() {
+        mSetDataSourceAt.set(now());
+        mPrepareAsyncAt.set(0);
+        mPreparedAt.set(0);
+        mFirstFrameAt.set(0);
+        mStallStartAt.set(0);
+        mSeekRequestAt.set(0);
+    }
+
+    void onPrepareAsync() {
+        mPrepareAsyncAt.set(now());
+    }
+
+    void onPrepared() {
+        long now = now();
+        mPreparedAt.set(now);
+        long start = mPrepareAsyncAt.get();
+        if (start > 0)
+            mPrepare.record(now - start);
+    }
+
+    void onFirstFrame() {
+        long now = now();
+        if (mFirstFrameAt.compareAndSet(0, now)) {
+            long start = mPrepareAsyncAt.get();
+            if (start > 0)
+                mFirstFrame.record(now - start);
+        }
+    }
+
+    void onBufferingStart() {
+        // buffering before the first frame is startup, and buffering while paused doesn't stall
+        if (mFirstFrameAt.get() > 0 && mPlayingSince.get() > 0)
+            mStallStartAt.compareAndSet(0, now());
+    }
+
+    void onBufferingEnd() {
+        since(mStallStartAt, now(), mStall);
+    }
+
+    /**
+     * Player enters or leaves started state
+     */
+    void onPlaying(boolean playing) {
+        long now = now();
+        if (playing) {
+            mPlayingSince.compareAndSet(0, now);
+        } else {
+            long since = mPlayingSince.getAndSet(0);
+            if (since > 0)
+                mPlayedMs.addAndGet(now - since);
+            // the stall ends with playback, time after it is not rebuffering
+            since(mStallStartAt, now, mStall);
+        }
+    }
+
+    void onSeekRequest() {
+        // a new seek request replaces the pending one
+        mSeekRequestAt.set(now());
+    }
+
+    void onSeekComplete() {
+        since(mSeekRequestAt, now(), mSeek);
+    }
+
+    void onSeekIssued() {
+        mSeeksIssued.incrementAndGet();
+    }
+
+    void onSeekDropped() {
+        mSeeksDropped.incrementAndGet();
+    }
+
+    void reset() {
+        mPrepare.reset();
+        mFirstFrame.reset();
+        mStall.reset();
+        mSeek.reset();
+        mSeeksIssued.set(0);
+        mSeeksDropped.set(0);
+        mPlayedMs.set(0);
+        if (mPlayingSince.get() > 0)
+            mPlayingSince.set(now());
+        onSetDataSource();
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        long now = now();
+        long setDataSource = mSetDataSourceAt.get();
+        long prepareAsync = mPrepareAsyncAt.get();
+        long prepared = mPreparedAt.get();
+        long firstFrame = mFirstFrameAt.get();
+        if (setDataSource > 0 && prepareAsync > 0)
+            map.put("setDataSourceToPrepareAsync", prepareAsync - setDataSource);
+        if (prepareAsync > 0 && prepared > 0)
+            map.put("prepareMs", prepared - prepareAsync);
+        if (prepareAsync > 0 && firstFrame > 0)
+            map.put("firstFrameMs", firstFrame - prepareAsync);
+
+        long stallMs = mStall.sum();
+        long stallStart = mStallStartAt.get();
+        if (stallStart > 0)
+            stallMs += now - stallStart;
+        map.put("stallCount", mStall.count() + (stallStart > 0 ? 1 : 0));
+        map.put("stallMs", stallMs);
+        long playedMs = mPlayedMs.get();
+        long playingSince = mPlayingSince.get();
+        if (playingSince > 0)
+            playedMs += now - playingSince;
+        map.put("playMs", playedMs);
+        if (playedMs > 0)
+            map.put("rebufferRatio", (double) stallMs / (double) playedMs);
+
+        List<Long> bounds = new ArrayList<>(BOUNDS.length);
+        for (long bound : BOUNDS)
+            bounds.add(bound);
+        map.put("bounds", bounds);
+        map.put("prepare", mPrepare.toMap());
+        map.put("firstFrame", mFirstFrame.toMap());
+        map.put("stall", mStall.toMap());
+        map.put("seek", mSeek.toMap());
+        map.put("seeksIssued", mSeeksIssued.get());
+        map.put("seeksDropped", mSeeksDropped.get());
+        return map;
+    }
+}
@@ -0,0 +1,181 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * Options in the format of FijkOption data, flattened into arrays once
+ * and applied to any number of players without walking the raw maps again.
+ *
+ * <p>Options are applied in the order they are found in the maps, int and String options mixed,
+ * the same as setting them one by one.
+ *
+ * <p>Instances are immutable and can be shared between players and threads.
+ */
+final class FijkOptionProfile {
+
+    final private static int HOST_CATEGORY = 0;
+
+    final private int[] mCategories;
+    final private String[] mNames;
+    final private long[] mIntValues;
+    // null for int options
+    final private String[] mStrValues;
+
+    private FijkOptionProfile(List<Integer> categories, List<String> names, List<Long> intValues,
+                              List<String> strValues) {
+        int count = names.size();
+        mCategories = new int[count];
+        mNames = names.toArray(new String[count]);
+        mIntValues = new long[count];
+        mStrValues = strValues.toArray(new String[count]);
+        for (int i = 0; i < count; i++) {
+            mCategories[i] = categories.get(i);
+            mIntValues[i] = intValues.get(i);
+        }
+    }
+
+    /**
+     * Flatten options map.
+     *
+     * @param options map from category to map of option name and value
+     * @param strict  throw on invalid entries if true, otherwise invalid entries are skipped
+     *                which is the same as {@code setOption} for single option
+     * @throws IllegalArgumentException if strict and some entry is not a int category,
+     *                                  a String name or a int / String value,
+     *                                  or a host option value does not fit in int
+     */
+    @NonNull
+    static FijkOptionProfile compile(Object options, boolean strict) {
+        List<Integer> categories = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Long> intValues = new ArrayList<>();
+        List<String> strValues = new ArrayList<>();
+        if (options instanceof Map) {
+            Map optionsMap = (Map) options;
+            for (Object o : optionsMap.keySet()) {
+                Object option = optionsMap.get(o);
+                if (!(o instanceof Integer) || !(option instanceof Map)) {
+                    if (strict)
+                        throw new IllegalArgumentException("invalid option category " + o);
+                    continue;
+                }
+                int cat = (Integer) o;
+                Map optionMap = (Map) option;
+                for (Object key : optionMap.keySet()) {
+                    Object value = optionMap.get(key);
+                    boolean valid = key instanceof String;
+                    if (valid && (value instanceof Integer || value instanceof Long)) {
+                        long intValue = ((Number) value).longValue();
+                        // host options are int
+                        valid = cat != HOST_CATEGORY || intValue == (int) intValue;
+                        if (valid) {
+                            intValues.add(intValue);
+                            strValues.add(null);
+                        }
+                    } else if (valid && value instanceof String) {
+                        intValues.add(0L);
+                        strValues.add((String) value);
+                    } else {
+                        valid = false;
+                    }
+                    if (valid) {
+                        categories.add(cat);
+                        names.add((String) key);
+                    } else if (strict) {
+                        throw new IllegalArgumentException("invalid option " + key + ": " + value);
+                    }
+                }
+            }
+        } else if (strict && options != null) {
+            throw new IllegalArgumentException("options is not a map");
+        }
+        return new FijkOptionProfile(categories, names, intValues, strValues);
+    }
+
+    /**
+     * Apply options of ijkplayer category to player, and options of host category to hostOption
+     */
+    void applyTo(@NonNull IjkMediaPlayer player, @NonNull HostOption hostOption) {
+        for (int i = 0; i < mNames.length; i++) {
+            String strValue = mStrValues[i];
+            if (mCategories[i] == HOST_CATEGORY) {
+                if (strValue != null)
+                    hostOption.addStrOption(mNames[i], strValue);
+                else
+                    hostOption.addIntOption(mNames[i], (int) mIntValues[i]);
+            } else {
+                if (strValue != null)
+                    player.setOption(mCategories[i], mNames[i], strValue);
+                else
+                    player.setOption(mCategories[i], mNames[i], mIntValues[i]);
+            }
+        }
+    }
+
+    /**
+     * @return value of the last String option of category and name in this profile, or def if none
+     */
+    String stringOption(int category, @NonNull String name, String def) {
+        for (int i = mNames.length - 1; i >= 0; i--) {
+            if (mStrValues[i] != null && mCategories[i] == category && name.equals(mNames[i]))
+                return mStrValues[i];
+        }
+        return def;
+    }
+
+    int size() {
+        return mNames.length;
+    }
+
+    boolean isHostOption(int index) {
+        return mCategories[index] == HOST_CATEGORY;
+    }
+
+    int categoryAt(int index) {
+        return mCategories[index];
+    }
+
+    String nameAt(int index) {
+        return mNames[index];
+    }
+
+    long intValueAt(int index) {
+        return mIntValues[index];
+    }
+
+    /**
+     * @return String value of option at index, null if it's an int option
+     */
+    String strValueAt(int index) {
+        return mStrValues[index];
+    }
+}
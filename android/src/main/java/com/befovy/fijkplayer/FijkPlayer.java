@@ -23,28 +23,35 @@
 package com.befovy.fijkplayer;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
-import android.graphics.Bitmap;
-import android.graphics.SurfaceTexture;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.Surface;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
-import io.flutter.view.TextureRegistry;
 import tv.danmaku.ijk.media.player.IMediaPlayer;
 import tv.danmaku.ijk.media.player.IjkMediaPlayer;
 import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
@@ -55,10 +62,15 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
         IMediaPlayer.OnVideoSizeChangedListener,
         IMediaPlayer.OnInfoListener,
         IMediaPlayer.OnCompletionListener,
-        IMediaPlayer.OnBufferingUpdateListener {
+        IMediaPlayer.OnBufferingUpdateListener,
+        IMediaPlayer.OnSeekCompleteListener {
 
     final private static AtomicInteger atomicId = new AtomicInteger(0);
 
+    // method calls which may block on IO or native teardown, run on mSerialExecutor
+    final private static Set<String> BACKGROUND_METHODS =
+            new HashSet<>(Arrays.asList("setDataSource", "prepareAsync", "stop", "reset"));
+
     final private static int idle = 0;
     final private static int initialized = 1;
     final private static int asyncPreparing = 2;
@@ -69,12 +81,12 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
     final private static int paused = 5;
     final private static int completed = 6;
     final private static int stopped = 7;
-    @SuppressWarnings("unused")
     final private static int error = 8;
     final private static int end = 9;
 
     final private int mPlayerId;
-    final private IjkMediaPlayer mIjkMediaPlayer;
+    // replaced by the standby player of mPlaylist when the next item starts
+    private volatile IjkMediaPlayer mIjkMediaPlayer;
     final private FijkEngine mEngine;
     // non-local field prevent GC
     final private EventChannel mEventChannel;
@@ -83,14 +95,74 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
     final private MethodChannel mMethodChannel;
 
     final private QueuingEventSink mEventSink = new QueuingEventSink();
+    final private BinaryEventSink mBinaryEventSink;
     final private HostOption mHostOptions = new HostOption();
+    final private FijkMetrics mMetrics = new FijkMetrics();
+
+    private FijkSnapshot mSnapshot;
+    private FijkPlaylist mPlaylist;
+    // ijkplayer options set since the last reset, replayed on the standby players of mPlaylist
+    final private OptionLog mOptionLog = new OptionLog();
+
+    final private Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // keeps the order of all method calls which touch mIjkMediaPlayer
+    final private SerialExecutor mSerialExecutor = new SerialExecutor();
+    // count of tasks submitted to mSerialExecutor and not finished
+    final private AtomicInteger mPending = new AtomicInteger(0);
+    // increased when the player is recycled or released, events of older tasks are dropped
+    private int mGeneration = 0;
+    // generation of the running task on mSerialExecutor
+    private volatile int mTaskGeneration = 0;
+
+    private volatile int mState;
+    // position notify policy, see setPositionNotify
+    final static int POS_NOTIFY_OFF = 0;
+    final static int POS_NOTIFY_ALWAYS = 1;
+    final static int POS_NOTIFY_PLAYING = 2;
+    final static int POS_NOTIFY_ON_DEMAND = 3;
+
+    // seek mode, host option seek-mode
+    final static int SEEK_MODE_DEFAULT = 0;
+    final static int SEEK_MODE_FAST = 1;
+    final static int SEEK_MODE_ACCURATE = 2;
+
+    // scrub mode keeps at most one seek in native player, newer targets replace the pending one
+    final static int SEEK_TIMEOUT_MS = 1000;
+    private boolean mScrubbing = false;
+    private boolean mSeekInFlight = false;
+    private long mSeekIssuedAt = 0;
+    // latest target waiting for the seek in flight, -1 if none
+    private long mPendingSeek = -1;
+    // latest target asked for in scrub mode, sought again accurately when scrub mode ends
+    private long mScrubTarget = -1;
+    // enable-accurate-seek is changed by scrub mode, and not yet set back to the option value
+    private boolean mAccurateSeekChanged = false;
+
+    // keyframes of the current data source in seek mode fast / accurate, null until loaded
+    private FijkKeyframeIndex.Keyframes mKeyframes;
+    // url and headers of the current data source if it's read through the disk cache
+    private String mCacheUrl;
+    private Map<String, String> mCacheHeaders;
+    // increased to drop keyframes loaded for an older data source
+    final private AtomicInteger mKeyframeSerial = new AtomicInteger(0);
+    // bytes of the target keyframe cached before a seek is sent to native player
+    final static long MAX_SEEK_PREFETCH = (long) FijkDiskCache.CHUNK_SIZE * CacheMediaDataSource.FETCH_CHUNKS;
+    final private SerialExecutor mSeekExecutor = new SerialExecutor();
+    private CacheMediaDataSource mSeekPrefetch;
+    // increased by every seek, a prefetch finishing after a newer seek doesn't send its own
+    private int mSeekSerial = 0;
+
+    private int mPosNotifyMode = POS_NOTIFY_ALWAYS;
+    private int mPosNotifyInterval = 0;
+    private long mLastPosNotify = 0;
+    // count of FijkView showing this player, position is not notified after all views are unloaded
+    private int mViewCount = 0;
+    private boolean mViewLoaded = false;
 
-    private int mState;
     private int mRotate = 0;
     private int mWidth = 0;
     private int mHeight = 0;
-    private TextureRegistry.SurfaceTextureEntry mSurfaceTextureEntry;
-    private SurfaceTexture mSurfaceTexture;
+    private FijkTexturePool.Texture mTexture;
     private Surface mSurface;
     final private boolean mJustSurface;
 
@@ -103,14 +175,11 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
             mIjkMediaPlayer = null;
             mEventChannel = null;
             mMethodChannel = null;
+            mBinaryEventSink = null;
         } else {
-            mIjkMediaPlayer = new IjkMediaPlayer();
-            mIjkMediaPlayer.setOnPreparedListener(this);
-            mIjkMediaPlayer.setOnVideoSizeChangedListener(this);
-            mIjkMediaPlayer.setOnErrorListener(this);
-            mIjkMediaPlayer.setOnInfoListener(this);
-            mIjkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-position-notify", 1);
-            mIjkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
+            mIjkMediaPlayer = mEngine.createMediaPlayer();
+            setListeners(mIjkMediaPlayer);
+            applyDefaultOptions(mIjkMediaPlayer);
 
             mMethodChannel = new MethodChannel(mEngine.messenger(), "befovy.com/fijkplayer/" + mPlayerId);
             mMethodChannel.setMethodCallHandler(this);
@@ -127,6 +196,8 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
                     mEventSink.setDelegate(null);
                 }
             });
+
+            mBinaryEventSink = new BinaryEventSink(mEngine.messenger(), "befovy.com/fijkplayer/binary/" + mPlayerId, mEventSink);
         }
     }
 
@@ -134,6 +205,88 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
         return mPlayerId;
     }
 
+    int getState() {
+        return mState;
+    }
+
+    private void setListeners(IjkMediaPlayer player) {
+        player.setOnPreparedListener(this);
+        player.setOnVideoSizeChangedListener(this);
+        player.setOnErrorListener(this);
+        player.setOnInfoListener(this);
+        player.setOnCompletionListener(this);
+        player.setOnBufferingUpdateListener(this);
+        player.setOnSeekCompleteListener(this);
+    }
+
+    private void applyDefaultOptions(IjkMediaPlayer player) {
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-position-notify", 1);
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
+    }
+
+    /**
+     * Reset this player to the state of a newly created one, so that it can be handed out again.
+     * The native player, channels and surface are kept, options and host options are cleared.
+     */
+    void recycle() {
+        if (mJustSurface)
+            return;
+        mGeneration++;
+        handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, end, mState, null);
+        resetSession(true);
+        mEventSink.reset();
+        mBinaryEventSink.setEnabled(false);
+        mState = idle;
+        mPosNotifyMode = POS_NOTIFY_ALWAYS;
+        mPosNotifyInterval = 0;
+        mLastPosNotify = 0;
+        mViewCount = 0;
+        mViewLoaded = false;
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                resetNative();
+            }
+        });
+    }
+
+    /**
+     * Clear state of the current data source, called on main thread.
+     * The native player is reset later by {@link #resetNative()} on the player thread.
+     *
+     * @param clearHostOptions also clear host options, metrics and video size
+     */
+    private void resetSession(boolean clearHostOptions) {
+        if (mPlaylist != null)
+            mPlaylist.clear();
+        resetScrub();
+        clearKeyframes();
+        if (clearHostOptions) {
+            mHostOptions.clear();
+            mMetrics.reset();
+            mRotate = 0;
+            mWidth = 0;
+            mHeight = 0;
+        }
+    }
+
+    /**
+     * Reset the native player to a newly created one, with default options and the kept surface.
+     * Called on mSerialExecutor.
+     */
+    private void resetNative() {
+        mEngine.scheduler().releaseLimits(this);
+        mIjkMediaPlayer.reset();
+        // native options are dropped by reset
+        mOptionLog.clear();
+        applyDefaultOptions(mIjkMediaPlayer);
+        // native player is recreated by reset, attach the kept surface again
+        if (mSurface != null) {
+            setup();
+            mIjkMediaPlayer.setSurface(mSurface);
+        }
+    }
+
     void setup() {
         if (mJustSurface)
             return;
@@ -142,19 +295,19 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
 
     long setupSurface() {
         setup();
-        if (mSurfaceTextureEntry == null) {
-            TextureRegistry.SurfaceTextureEntry surfaceTextureEntry = mEngine.createSurfaceEntry();
-            mSurfaceTextureEntry = surfaceTextureEntry;
-            if (surfaceTextureEntry != null) {
-                mSurfaceTexture = surfaceTextureEntry.surfaceTexture();
-                mSurface = new Surface(mSurfaceTexture);
+        if (mTexture == null) {
+            mTexture = mEngine.texturePool().acquire();
+            if (mTexture != null) {
+                // 0 x 0 before the first video size, the texture is resized when it's known
+                mTexture.resize(mWidth, mHeight);
+                mSurface = mTexture.surface;
             }
             if (!mJustSurface) {
                 mIjkMediaPlayer.setSurface(mSurface);
             }
         }
-        if (mSurfaceTextureEntry != null)
-            return mSurfaceTextureEntry.id();
+        if (mTexture != null)
+            return mTexture.id();
         else {
             Log.e("FIJKPLAYER", "setup surface, null SurfaceTextureEntry");
             return 0;
@@ -162,26 +315,200 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
     }
 
     void release() {
-        if (!mJustSurface) {
-            handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, end, mState, null);
-            mIjkMediaPlayer.release();
+        if (mJustSurface) {
+            releaseSurface();
+            return;
         }
-        if (mSurfaceTextureEntry != null) {
-            mSurfaceTextureEntry.release();
-            mSurfaceTextureEntry = null;
+        mGeneration++;
+        handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, end, mState, null);
+        if (mPlaylist != null)
+            mPlaylist.clear();
+        mMethodChannel.setMethodCallHandler(null);
+        mEventChannel.setStreamHandler(null);
+        // release native player after pending calls, then the surface it renders to
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                mIjkMediaPlayer.release();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        releaseSurface();
+                    }
+                });
+            }
+        });
+    }
+
+    private void releaseSurface() {
+        if (mTexture != null) {
+            mEngine.texturePool().recycle(mTexture);
+            mTexture = null;
         }
-        if (mSurfaceTexture != null) {
-            mSurfaceTexture.release();
-            mSurfaceTexture = null;
+        mSurface = null;
+    }
+
+    private FijkPlaylist playlist() {
+        if (mPlaylist == null) {
+            mPlaylist = new FijkPlaylist(new FijkPlaylist.Host() {
+                @NonNull
+                @Override
+                public IjkMediaPlayer prepareStandby(@NonNull String url, @NonNull FijkPlaylist.StandbyListener listener) throws IOException {
+                    return FijkPlayer.this.prepareStandby(url, listener);
+                }
+
+                @Override
+                public void swapTo(@NonNull IjkMediaPlayer player, @NonNull FijkPlaylist.StandbyListener listener) {
+                    FijkPlayer.this.swapTo(player, listener);
+                }
+
+                @Override
+                public void releaseStandby(@NonNull final IjkMediaPlayer player) {
+                    enqueue(new Runnable() {
+                        @Override
+                        public void run() {
+                            player.release();
+                        }
+                    });
+                }
+
+                @Override
+                public void runInBackground(@NonNull Runnable task) {
+                    enqueue(task);
+                }
+
+                @Override
+                public void sendEvent(@NonNull Map<String, Object> event) {
+                    if (mState != end)
+                        mEventSink.success(event);
+                }
+
+                @Override
+                public void complete() {
+                    if (mState != end)
+                        handleEvent(FijkEventConstants.COMPLETED, 0, 0, null);
+                }
+            });
         }
-        if (mSurface != null) {
-            mSurface.release();
-            mSurface = null;
+        return mPlaylist;
+    }
+
+    /**
+     * Create a native player configured as the current one, open url and start preparing it.
+     * Called on mSerialExecutor, the new player posts its events to main looper.
+     */
+    private IjkMediaPlayer prepareStandby(String url, FijkPlaylist.StandbyListener listener) throws IOException {
+        IjkMediaPlayer player = mEngine.createMediaPlayer();
+        player.setOnPreparedListener(listener);
+        player.setOnErrorListener(listener);
+        player.setOnInfoListener(listener);
+        player.setOnVideoSizeChangedListener(listener);
+        applyDefaultOptions(player);
+        // host options are kept by this FijkPlayer, only ijkplayer options are replayed
+        mOptionLog.applyTo(player);
+        // standby player waits in prepared state until it is swapped in
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "overlay-format", "fcc-_es2");
+        applySeekMode(player);
+        long bufferBytes = mEngine.scheduler().applyLimits(this, player);
+        mEngine.memoryGovernor().applyLimits(player, bufferBytes);
+        try {
+            if (!openDataSource(player, url))
+                throw new IOException("context null");
+        } catch (IOException e) {
+            player.release();
+            throw e;
         }
-        if (!mJustSurface) {
-            mMethodChannel.setMethodCallHandler(null);
-            mEventChannel.setStreamHandler(null);
+        player.prepareAsync();
+        return player;
+    }
+
+    /**
+     * Render the prepared standby player to the texture of this player and start it,
+     * the previous native player is released in background
+     */
+    private void swapTo(final IjkMediaPlayer next, final FijkPlaylist.StandbyListener info) {
+        runInOrder(new Runnable() {
+            @Override
+            public void run() {
+                if (mState == end) {
+                    enqueue(new Runnable() {
+                        @Override
+                        public void run() {
+                            next.release();
+                        }
+                    });
+                    return;
+                }
+                final IjkMediaPlayer previous = mIjkMediaPlayer;
+                previous.setSurface(null);
+                // keyframes are only loaded for the data source set by setDataSource
+                clearKeyframes();
+                setListeners(next);
+                mIjkMediaPlayer = next;
+                if (mSurface != null)
+                    next.setSurface(mSurface);
+                handleEvent(FijkEventConstants.PREPARED, 0, 0, null);
+                handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, prepared, mState, null);
+                // info of the standby player went to its listener, rotation of previous item is replaced
+                handleEvent(FijkEventConstants.VIDEO_ROTATION_CHANGED, info.rotation, 0, null);
+                int width = info.width > 0 ? info.width : next.getVideoWidth();
+                int height = info.height > 0 ? info.height : next.getVideoHeight();
+                if (width > 0 && height > 0)
+                    handleEvent(FijkEventConstants.VIDEO_SIZE_CHANGED, width, height, null);
+                if (mEngine.scheduler().admit(FijkPlayer.this)) {
+                    next.start();
+                    handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, started, mState, null);
+                }
+                enqueue(new Runnable() {
+                    @Override
+                    public void run() {
+                        previous.release();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Submit a task to mSerialExecutor, method calls received later are queued behind it
+     */
+    private void enqueue(final Runnable task) {
+        final int generation = mGeneration;
+        mPending.incrementAndGet();
+        mSerialExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mTaskGeneration = generation;
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // an uncaught exception on the pool thread kills the app
+                    Log.e("FIJKPLAYER", "player task failed: " + e);
+                } finally {
+                    mPending.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Handle event on main thread.
+     * Events from a task submitted before the player is recycled or released are dropped.
+     */
+    private void postEvent(final int what, final int arg1, final int arg2) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            handleEvent(what, arg1, arg2, null);
+            return;
         }
+        final int generation = mTaskGeneration;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation == mGeneration)
+                    handleEvent(what, arg1, arg2, null);
+            }
+        });
     }
 
     private boolean isPlayable(int state) {
@@ -189,8 +516,10 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
     }
 
     private void onStateChanged(int newState, int oldState) {
+        mMetrics.onPlaying(newState == started);
         if (newState == started && oldState != started) {
             mEngine.onPlayingChange(1);
+            mEngine.scheduler().onStarted(this);
 
             if (mHostOptions.getIntOption(HostOption.REQUEST_AUDIOFOCUS, 0) == 1) {
                 mEngine.audioFocus(true);
@@ -211,6 +540,11 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
             }
         }
 
+        // free the decode slot once the player is not playing or going to play
+        if (newState != started && newState != asyncPreparing && newState != prepared) {
+            mEngine.scheduler().onStopped(this);
+        }
+
         if (isPlayable(newState) && !isPlayable(oldState)) {
             mEngine.onPlayableChange(1);
         } else if (!isPlayable(newState) && isPlayable(oldState)) {
@@ -219,81 +553,144 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
     }
 
     private void handleEvent(int what, int arg1, int arg2, Object extra) {
-        Map<String, Object> event = new HashMap<>();
+        Map<String, Object> event;
 
         switch (what) {
             case FijkEventConstants.PREPARED:
-                event.put("event", "prepared");
+                mMetrics.onPrepared();
                 long duration = mIjkMediaPlayer.getDuration();
-                event.put("duration", duration);
-                mEventSink.success(event);
+                if (!mBinaryEventSink.send(what, 0, 0, duration)) {
+                    event = new HashMap<>();
+                    event.put("event", "prepared");
+                    event.put("duration", duration);
+                    mEventSink.success(event);
+                }
                 break;
             case FijkEventConstants.PLAYBACK_STATE_CHANGED:
                 mState = arg1;
-                event.put("event", "state_change");
-                event.put("new", arg1);
-                event.put("old", arg2);
                 onStateChanged(arg1, arg2);
-                mEventSink.success(event);
+                if (!mBinaryEventSink.send(what, arg1, arg2, 0)) {
+                    event = new HashMap<>();
+                    event.put("event", "state_change");
+                    event.put("new", arg1);
+                    event.put("old", arg2);
+                    mEventSink.success(event);
+                }
                 break;
             case FijkEventConstants.VIDEO_RENDERING_START:
             case FijkEventConstants.AUDIO_RENDERING_START:
-                event.put("event", "rendering_start");
-                event.put("type", what == FijkEventConstants.VIDEO_RENDERING_START ? "video" : "audio");
-                mEventSink.success(event);
+                if (what == FijkEventConstants.VIDEO_RENDERING_START)
+                    mMetrics.onFirstFrame();
+                if (!mBinaryEventSink.send(what, 0, 0, 0)) {
+                    event = new HashMap<>();
+                    event.put("event", "rendering_start");
+                    event.put("type", what == FijkEventConstants.VIDEO_RENDERING_START ? "video" : "audio");
+                    mEventSink.success(event);
+                }
                 break;
             case FijkEventConstants.BUFFERING_START:
             case FijkEventConstants.BUFFERING_END:
-                event.put("event", "freeze");
-                event.put("value", what == FijkEventConstants.BUFFERING_START);
-                mEventSink.success(event);
+                if (what == FijkEventConstants.BUFFERING_START)
+                    mMetrics.onBufferingStart();
+                else
+                    mMetrics.onBufferingEnd();
+                if (!mBinaryEventSink.send(what, 0, 0, 0)) {
+                    event = new HashMap<>();
+                    event.put("event", "freeze");
+                    event.put("value", what == FijkEventConstants.BUFFERING_START);
+                    mEventSink.success(event);
+                }
                 break;
 
-            // buffer / cache position
+            // buffer / cache position, with cached bytes and duration in the same event
             case FijkEventConstants.BUFFERING_UPDATE:
-                event.put("event", "buffering");
-                event.put("head", arg1);
-                event.put("percent", arg2);
-                mEventSink.success(event);
+                long bytes = mIjkMediaPlayer.getVideoCachedBytes() + mIjkMediaPlayer.getAudioCachedBytes();
+                long ms = Math.max(mIjkMediaPlayer.getVideoCachedDuration(), mIjkMediaPlayer.getAudioCachedDuration());
+                bytes = Math.min(bytes, Integer.MAX_VALUE);
+                ms = Math.min(ms, Integer.MAX_VALUE);
+                if (!mBinaryEventSink.send(what, arg1, arg2, bytes << 32 | ms)) {
+                    event = new HashMap<>();
+                    event.put("event", "buffering");
+                    event.put("head", arg1);
+                    event.put("percent", arg2);
+                    event.put("bytes", (int) bytes);
+                    event.put("ms", (int) ms);
+                    mEventSink.success(event);
+                }
                 break;
             case FijkEventConstants.CURRENT_POSITION_UPDATE:
-                event.put("event", "pos");
-                event.put("pos", arg1);
-                mEventSink.success(event);
+                if (!shouldNotifyPosition())
+                    break;
+                if (!mBinaryEventSink.send(what, arg1, 0, 0)) {
+                    event = new HashMap<>();
+                    event.put("event", "pos");
+                    event.put("pos", arg1);
+                    mEventSink.success(event);
+                }
                 break;
             case FijkEventConstants.VIDEO_ROTATION_CHANGED:
-                event.put("event", "rotate");
-                event.put("degree", arg1);
                 mRotate = arg1;
-                mEventSink.success(event);
+                if (!mBinaryEventSink.send(what, arg1, 0, 0)) {
+                    event = new HashMap<>();
+                    event.put("event", "rotate");
+                    event.put("degree", arg1);
+                    mEventSink.success(event);
+                }
                 if (mWidth > 0 && mHeight > 0) {
                     handleEvent(FijkEventConstants.VIDEO_SIZE_CHANGED, mWidth, mHeight, null);
                 }
                 break;
             case FijkEventConstants.VIDEO_SIZE_CHANGED:
-                event.put("event", "size_changed");
+                int width = -1;
+                int height = -1;
                 if (mRotate == 0 || mRotate == 180) {
-                    event.put("width", arg1);
-                    event.put("height", arg2);
-                    mEventSink.success(event);
+                    width = arg1;
+                    height = arg2;
                 } else if (mRotate == 90 || mRotate == 270) {
-                    event.put("width", arg2);
-                    event.put("height", arg1);
-                    mEventSink.success(event);
+                    width = arg2;
+                    height = arg1;
                 }
                 // default mRotate is -1 which means unknown
                 // do not send event if mRotate is unknown
+                if (width >= 0 && !mBinaryEventSink.send(what, width, height, 0)) {
+                    event = new HashMap<>();
+                    event.put("event", "size_changed");
+                    event.put("width", width);
+                    event.put("height", height);
+                    mEventSink.success(event);
+                }
                 mWidth = arg1;
                 mHeight = arg2;
+                if (mTexture != null)
+                    mTexture.resize(mWidth, mHeight);
                 break;
             case FijkEventConstants.SEEK_COMPLETE:
-                event.put("event", "seek_complete");
-                event.put("pos", arg1);
-                event.put("err", arg2);
-                mEventSink.success(event);
+                mMetrics.onSeekComplete();
+                if (!mBinaryEventSink.send(what, arg1, arg2, 0)) {
+                    event = new HashMap<>();
+                    event.put("event", "seek_complete");
+                    event.put("pos", arg1);
+                    event.put("err", arg2);
+                    mEventSink.success(event);
+                }
+                break;
+            case FijkEventConstants.ACCURATE_SEEK_COMPLETE:
+                if (!mBinaryEventSink.send(what, arg1, 0, 0)) {
+                    event = new HashMap<>();
+                    event.put("event", "accurate_seek_complete");
+                    event.put("pos", arg1);
+                    mEventSink.success(event);
+                }
+                break;
+            case FijkEventConstants.COMPLETED:
+                if (mState != completed)
+                    handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, completed, mState, null);
                 break;
             case FijkEventConstants.ERROR:
-                mEventSink.error(String.valueOf(arg1), extra.toString(), arg2);
+                mEventSink.error(String.valueOf(arg1), extra != null ? extra.toString() : "", arg2);
+                // leave started state, frees the decode slot of scheduler
+                if (mState != error && mState != end)
+                    handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, error, mState, null);
                 break;
             default:
                 // Log.d("FLUTTER", "jonEvent:" + what);
@@ -308,6 +705,7 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
             case FijkEventConstants.BUFFERING_START:
             case FijkEventConstants.BUFFERING_END:
             case FijkEventConstants.BUFFERING_UPDATE:
+            case FijkEventConstants.COMPLETED:
             case FijkEventConstants.VIDEO_SIZE_CHANGED:
             case FijkEventConstants.ERROR:
             case FijkEventConstants.VIDEO_RENDERING_START:
@@ -315,6 +713,7 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
             case FijkEventConstants.CURRENT_POSITION_UPDATE:
             case FijkEventConstants.VIDEO_ROTATION_CHANGED:
             case FijkEventConstants.SEEK_COMPLETE:
+            case FijkEventConstants.ACCURATE_SEEK_COMPLETE:
                 handleEvent(what, arg1, arg2, extra);
                 break;
             default:
@@ -323,40 +722,463 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
     }
 
 
+    /**
+     * Position update events from native player are filtered by the notify policy
+     * and the visibility of FijkView before being sent to dart
+     */
+    private boolean shouldNotifyPosition() {
+        if (mPosNotifyMode == POS_NOTIFY_OFF || mPosNotifyMode == POS_NOTIFY_ON_DEMAND)
+            return false;
+        if (mViewLoaded && mViewCount == 0)
+            return false;
+        if (mPosNotifyMode == POS_NOTIFY_PLAYING && mState != started)
+            return false;
+        if (mPosNotifyInterval > 0) {
+            long now = SystemClock.elapsedRealtime();
+            if (mLastPosNotify > 0 && now - mLastPosNotify < mPosNotifyInterval)
+                return false;
+            mLastPosNotify = now;
+        }
+        return true;
+    }
+
+    private void setPositionNotify(int mode, int interval) {
+        mPosNotifyMode = mode;
+        mPosNotifyInterval = Math.max(interval, 0);
+        mLastPosNotify = 0;
+        // native player reads this option in prepare, stop position events at source if possible
+        if (mState == idle || mState == initialized) {
+            boolean notify = mode != POS_NOTIFY_OFF && mode != POS_NOTIFY_ON_DEMAND;
+            mIjkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-position-notify", notify ? 1 : 0);
+        }
+    }
+
+    private void onSnapshot(@Nullable Map<String, Object> snapshot, @Nullable String error) {
+        if (mState == end)
+            return;
+        if (snapshot == null)
+            Log.w("FIJKPLAYER", "snapshot failed: " + error);
+        // dart side completes the snapshot future with a map, or an error for anything else
+        mMethodChannel.invokeMethod("_onSnapshot", snapshot != null ? snapshot : error);
+    }
+
     private void applyOptions(Object options) {
-        if (options instanceof Map) {
-            Map optionsMap = (Map) options;
-            for (Object o : optionsMap.keySet()) {
-                Object option = optionsMap.get(o);
-                if (o instanceof Integer && option instanceof Map) {
-                    int cat = (Integer) o;
-                    Map optionMap = (Map) option;
-                    for (Object key : optionMap.keySet()) {
-                        Object value = optionMap.get(key);
-                        if (key instanceof String && cat != 0) {
-                            String name = (String) key;
-                            if (value instanceof Integer) {
-                                mIjkMediaPlayer.setOption(cat, name, (Integer) value);
-                            } else if (value instanceof String) {
-                                mIjkMediaPlayer.setOption(cat, name, (String) value);
-                            }
-                        } else if (key instanceof String) {
-                            // cat == 0, hostCategory
-                            String name = (String) key;
-                            if (value instanceof Integer) {
-                                mHostOptions.addIntOption(name, (Integer) value);
-                            } else if (value instanceof String) {
-                                mHostOptions.addStrOption(name, (String) value);
-                            }
-                        }
+        FijkOptionProfile profile = FijkOptionProfile.compile(options, false);
+        profile.applyTo(mIjkMediaPlayer, mHostOptions);
+        mOptionLog.add(profile);
+    }
+
+    private boolean takePreload(String url) {
+        FijkPreloader preloader = mEngine.preloader();
+        return preloader != null && preloader.take(url);
+    }
+
+    /**
+     * Seek to target, in scrub mode the target waits if a seek is in flight.
+     * Called on main thread.
+     */
+    private void seekTo(long target) {
+        if (mScrubbing)
+            mScrubTarget = target;
+        if (mScrubbing && mSeekInFlight
+                && SystemClock.elapsedRealtime() - mSeekIssuedAt < SEEK_TIMEOUT_MS) {
+            if (mPendingSeek >= 0)
+                mMetrics.onSeekDropped();
+            mPendingSeek = target;
+            return;
+        }
+        mPendingSeek = -1;
+        mSeekInFlight = true;
+        mSeekIssuedAt = SystemClock.elapsedRealtime();
+        int mode = mHostOptions.getIntOption(HostOption.SEEK_MODE, SEEK_MODE_DEFAULT);
+        FijkKeyframeIndex.Keyframes keyframes = mode != SEEK_MODE_DEFAULT ? mKeyframes : null;
+        if (keyframes == null || keyframes.count() == 0) {
+            sendSeek(target);
+            return;
+        }
+        if (mode == SEEK_MODE_FAST || mScrubbing)
+            target = keyframes.nearest(target);
+        FijkDiskCache cache = mEngine.diskCache();
+        if (mCacheUrl == null || cache == null) {
+            sendSeek(target);
+            return;
+        }
+        // decoding restarts from the keyframe at or before target, have its bytes cached first
+        int index = keyframes.floor(target);
+        prefetchAndSeek(cache, keyframes.offset(index), keyframes.rangeLength(index, MAX_SEEK_PREFETCH), target);
+    }
+
+    private void sendSeek(long target) {
+        mSeekSerial++;
+        abortSeekPrefetch();
+        mMetrics.onSeekIssued();
+        mIjkMediaPlayer.seekTo(target);
+    }
+
+    /**
+     * Cache the byte range in background, then send the seek if no newer one is sent meanwhile
+     */
+    private void prefetchAndSeek(FijkDiskCache cache, final long offset, final long length, final long target) {
+        final int serial = ++mSeekSerial;
+        final int generation = mGeneration;
+        abortSeekPrefetch();
+        final CacheMediaDataSource source = new CacheMediaDataSource(cache, mCacheUrl, mCacheHeaders);
+        mSeekPrefetch = source;
+        mSeekExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.prefetch(offset, length);
+                source.close();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (serial != mSeekSerial || generation != mGeneration)
+                            return;
+                        mSeekPrefetch = null;
+                        mMetrics.onSeekIssued();
+                        mIjkMediaPlayer.seekTo(target);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stop the prefetch of a seek which is replaced before it's sent
+     */
+    private void abortSeekPrefetch() {
+        if (mSeekPrefetch != null) {
+            mSeekPrefetch.abort();
+            mSeekPrefetch = null;
+            mMetrics.onSeekDropped();
+        }
+    }
+
+    /**
+     * Issue the pending seek of scrub mode when the seek in flight completes
+     *
+     * @return true if a seek is issued, and the completion should not be reported
+     */
+    private boolean onSeekDone() {
+        mSeekInFlight = false;
+        if (mPendingSeek < 0)
+            return false;
+        seekTo(mPendingSeek);
+        return true;
+    }
+
+    /**
+     * Seeks of scrub mode land on keyframes without decoding up to the target.
+     * When it ends, the last target is sought again with accurate seek.
+     */
+    private void setScrubbing(boolean scrubbing) {
+        if (mScrubbing == scrubbing)
+            return;
+        mScrubbing = scrubbing;
+        mAccurateSeekChanged = true;
+        if (scrubbing) {
+            mScrubTarget = -1;
+            mIjkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", 0);
+            return;
+        }
+        mIjkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", 1);
+        if (mPendingSeek < 0)
+            mPendingSeek = mScrubTarget;
+        mScrubTarget = -1;
+        // a seek in flight issues the pending one when it completes
+        if (mPendingSeek >= 0 && !mSeekInFlight)
+            seekTo(mPendingSeek);
+    }
+
+    /**
+     * Set enable-accurate-seek back to the value of seek mode or player options, before a seek
+     * which is not part of scrubbing
+     */
+    private void restoreAccurateSeek() {
+        if (mScrubbing || !mAccurateSeekChanged)
+            return;
+        mAccurateSeekChanged = false;
+        int mode = mHostOptions.getIntOption(HostOption.SEEK_MODE, SEEK_MODE_DEFAULT);
+        long accurate = mode == SEEK_MODE_FAST ? 0 : mode == SEEK_MODE_ACCURATE ? 1
+                : mOptionLog.intOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", 0);
+        mIjkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", accurate);
+    }
+
+    private void resetScrub() {
+        mScrubbing = false;
+        mSeekInFlight = false;
+        mPendingSeek = -1;
+        mScrubTarget = -1;
+        // options of the native player are dropped by reset
+        mAccurateSeekChanged = false;
+    }
+
+    /**
+     * Forget keyframes of the current data source, drop the ones still loading and the seek
+     * waiting for its prefetch
+     */
+    private void clearKeyframes() {
+        // a seek waiting for its prefetch never reaches native player
+        if (mSeekPrefetch != null)
+            mSeekInFlight = false;
+        mSeekSerial++;
+        abortSeekPrefetch();
+        mKeyframeSerial.incrementAndGet();
+        mKeyframes = null;
+        mCacheUrl = null;
+        mCacheHeaders = null;
+    }
+
+    /**
+     * Load keyframes of the data source set by setDataSource in seek mode fast / accurate.
+     * Called on mSerialExecutor, they are used from main thread once loaded.
+     *
+     * @param cacheUrl url of the data source if it's read through the disk cache, the bytes of a
+     *                 seek target are prefetched into the cache then
+     */
+    private void requestKeyframes(String key, FijkKeyframeIndex.Source source,
+                                  @Nullable final String cacheUrl, @Nullable final Map<String, String> headers) {
+        final int serial = mKeyframeSerial.incrementAndGet();
+        FijkKeyframeIndex index = mEngine.keyframeIndex();
+        if (index == null || mHostOptions.getIntOption(HostOption.SEEK_MODE, SEEK_MODE_DEFAULT) == SEEK_MODE_DEFAULT)
+            return;
+        index.load(key, source, new FijkKeyframeIndex.Callback() {
+            @Override
+            public void onKeyframes(@NonNull final FijkKeyframeIndex.Keyframes keyframes) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (serial != mKeyframeSerial.get())
+                            return;
+                        mKeyframes = keyframes;
+                        mCacheUrl = cacheUrl;
+                        mCacheHeaders = headers;
                     }
+                });
+            }
+        });
+    }
+
+    /**
+     * Set ijkplayer enable-accurate-seek as host option seek-mode tells, before prepareAsync
+     */
+    private void applySeekMode(IjkMediaPlayer player) {
+        int mode = mHostOptions.getIntOption(HostOption.SEEK_MODE, SEEK_MODE_DEFAULT);
+        if (mode == SEEK_MODE_FAST)
+            player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", 0);
+        else if (mode == SEEK_MODE_ACCURATE)
+            player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", 1);
+    }
+
+    /**
+     * Set url as data source of player, asset / file / cached http urls are read by
+     * data sources of this plugin, others by ijkplayer itself.
+     *
+     * @return false if there's no context to open url
+     */
+    private boolean openDataSource(IjkMediaPlayer player, String url) throws IOException {
+        Uri uri = Uri.parse(url);
+        boolean openAsset = false;
+        if ("asset".equals(uri.getScheme())) {
+            openAsset = true;
+            String host = uri.getHost();
+            String path = uri.getPath() != null ? uri.getPath().substring(1) : "";
+            String asset = mEngine.lookupKeyForAsset(path, host);
+            if (!TextUtils.isEmpty(asset)) {
+                uri = Uri.parse(asset);
+            }
+        }
+        Context context = mEngine.context();
+        if (openAsset && context != null) {
+            AssetManager assetManager = context.getAssets();
+            String assetPath = uri.getPath() != null ? uri.getPath() : "";
+            IMediaDataSource dataSource;
+            try {
+                // only uncompressed assets can be opened as file descriptor
+                AssetFileDescriptor afd = assetManager.openFd(assetPath);
+                dataSource = new AssetMediaDataSource(afd);
+            } catch (FileNotFoundException e) {
+                InputStream is = assetManager.open(assetPath, AssetManager.ACCESS_RANDOM);
+                dataSource = new RawMediaDataSource(is);
+            }
+            player.setDataSource(dataSource);
+        } else if (context != null) {
+            if (TextUtils.isEmpty(uri.getScheme()) || "file".equals(uri.getScheme())) {
+                String path = uri.getPath() != null ? uri.getPath() : "";
+                boolean mapped = mHostOptions.getIntOption(HostOption.FILE_MMAP, 0) == 1;
+                final File file = new File(path);
+                IMediaDataSource dataSource = new FileMediaDataSource(file, mapped);
+                player.setDataSource(dataSource);
+                // standby players of the playlist are not indexed
+                if (player == mIjkMediaPlayer) {
+                    requestKeyframes(FijkKeyframeIndex.keyOf(file), new FijkKeyframeIndex.Source() {
+                        @Override
+                        public IMediaDataSource open() {
+                            return new FileMediaDataSource(file);
+                        }
+                    }, null, null);
+                }
+            } else if (("http".equals(uri.getScheme()) || "https".equals(uri.getScheme()))
+                    && (takePreload(uri.toString()) || mHostOptions.getIntOption(HostOption.HTTP_CACHE, 0) == 1)
+                    && mEngine.diskCache() != null) {
+                final FijkDiskCache cache = mEngine.diskCache();
+                int maxMb = mHostOptions.getIntOption(HostOption.HTTP_CACHE_MAX_MB, 0);
+                if (maxMb > 0)
+                    cache.setMaxBytes(maxMb * 1024L * 1024L);
+                final String cacheUrl = uri.toString();
+                final Map<String, String> headers = httpHeaders();
+                player.setDataSource(new CacheMediaDataSource(cache, cacheUrl, headers));
+                if (player == mIjkMediaPlayer) {
+                    requestKeyframes(FijkKeyframeIndex.keyOf(cacheUrl), new FijkKeyframeIndex.Source() {
+                        @Override
+                        public IMediaDataSource open() {
+                            return new CacheMediaDataSource(cache, cacheUrl, headers);
+                        }
+                    }, cacheUrl, headers);
                 }
+            } else if (("http".equals(uri.getScheme()) || "https".equals(uri.getScheme()))
+                    && mHostOptions.getIntOption(HostOption.HTTP_PARALLEL, 0) > 1) {
+                int connections = mHostOptions.getIntOption(HostOption.HTTP_PARALLEL, 0);
+                player.setDataSource(new RangeMediaDataSource(uri.toString(), connections, httpHeaders()));
+            } else {
+                player.setDataSource(context, uri);
             }
+        } else {
+            Log.e("FIJKPLAYER", "context null, can't setDataSource");
+            return false;
         }
+        return true;
+    }
+
+    /**
+     * Http headers of format options set so far, for data sources which do http requests themselves
+     */
+    private Map<String, String> httpHeaders() {
+        String headers = mOptionLog.stringOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "headers", null);
+        String userAgent = mOptionLog.stringOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "user_agent", null);
+        String cookies = mOptionLog.stringOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "cookies", null);
+        return HttpHeaders.of(headers, userAgent, cookies);
+    }
+
+    /**
+     * Apply host options which take effect as soon as they are set
+     */
+    private void applyHostOptions() {
+        mEventSink.setBatchInterval(mHostOptions.getIntOption(HostOption.EVENT_BATCH_INTERVAL, 0));
+        mEventSink.setCapacity(mHostOptions.getIntOption(HostOption.EVENT_QUEUE_CAPACITY, 0));
+        mEventSink.setOverflowPolicy(mHostOptions.getIntOption(HostOption.EVENT_QUEUE_OVERFLOW,
+                QueuingEventSink.OVERFLOW_DROP_SUPERSEDED));
+        mBinaryEventSink.setEnabled(mHostOptions.getIntOption(HostOption.BINARY_EVENT, 0) == 1);
     }
 
     @Override
-    public void onMethodCall(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    public void onMethodCall(@NonNull final MethodCall call, @NonNull final MethodChannel.Result result) {
+        if ("reset".equals(call.method))
+            resetSession(false);
+        // MethodChannel only catches exceptions thrown in this method, reply errors of later calls
+        final MainResult mainResult = new MainResult(result);
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handleMethodCall(call, mainResult);
+                } catch (RuntimeException e) {
+                    Log.e("FIJKPLAYER", "method " + call.method + " failed: " + e);
+                    mainResult.error("-1", call.method + " failed: " + e.getMessage(), null);
+                }
+            }
+        };
+        if (BACKGROUND_METHODS.contains(call.method)) {
+            enqueue(task);
+        } else {
+            runInOrder(task);
+        }
+    }
+
+    /**
+     * Run task on main thread, after pending background calls if any
+     */
+    private void runInOrder(final Runnable task) {
+        if (mPending.get() == 0) {
+            task.run();
+            return;
+        }
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                final CountDownLatch latch = new CountDownLatch(1);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            task.run();
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reset the native player to free its buffers under memory pressure,
+     * if it is not playing or going to play. Dart side sees the player go to idle state.
+     * Like {@link #recycle()}, options and host options are cleared, the surface is kept.
+     *
+     * @return true if the player is reset
+     */
+    boolean trimMemory() {
+        if (mJustSurface || (mState != paused && mState != completed && mState != stopped && mState != error))
+            return false;
+        resetSession(true);
+        applyHostOptions();
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                resetNative();
+                postEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, idle, -1);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Pause by {@link FijkScheduler} for decode budget
+     */
+    void schedulePause() {
+        runInOrder(new Runnable() {
+            @Override
+            public void run() {
+                if (mState == started) {
+                    mIjkMediaPlayer.pause();
+                    handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, paused, mState, null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Start by {@link FijkScheduler} when decode budget is available
+     */
+    void scheduleStart() {
+        runInOrder(new Runnable() {
+            @Override
+            public void run() {
+                if (mState == prepared || mState == paused || mState == completed) {
+                    mIjkMediaPlayer.start();
+                    handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, started, mState, null);
+                }
+            }
+        });
+    }
+
+    private void handleMethodCall(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
         switch (call.method) {
             case "setupSurface":
                 long viewId = setupSurface();
@@ -369,6 +1191,7 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
                     final Integer value = call.argument("long");
                     if (category != null && category != 0) {
                         mIjkMediaPlayer.setOption(category, key, value != null ? value.longValue() : 0);
+                        mOptionLog.add(category, key, value != null ? value.longValue() : 0);
                     } else if (category != null) {
                         // cat == 0, hostCategory
                         mHostOptions.addIntOption(key, value);
@@ -377,6 +1200,8 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
                     final String value = call.argument("str");
                     if (category != null && category != 0) {
                         mIjkMediaPlayer.setOption(category, key, value);
+                        if (value != null)
+                            mOptionLog.add(category, key, value);
                     } else if (category != null) {
                         // cat == 0, hostCategory
                         mHostOptions.addStrOption(key, value);
@@ -384,45 +1209,35 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
                 } else {
                     Log.w("FIJKPLAYER", "error arguments for setOptions");
                 }
+                applyHostOptions();
                 result.success(null);
                 break;
             case "applyOptions":
                 applyOptions(call.arguments);
+                applyHostOptions();
                 result.success(null);
                 break;
+            case "applyOptionProfile": {
+                final String name = call.argument("name");
+                FijkOptionProfile profile = name != null ? mEngine.optionProfile(name) : null;
+                if (profile != null) {
+                    profile.applyTo(mIjkMediaPlayer, mHostOptions);
+                    mOptionLog.add(profile);
+                    applyHostOptions();
+                    result.success(null);
+                } else {
+                    result.error("-1", "no option profile named " + name, null);
+                }
+                break;
+            }
             case "setDataSource":
+                mMetrics.onSetDataSource();
                 String url = call.argument("url");
-                Uri uri = Uri.parse(url);
-                boolean openAsset = false;
-                if ("asset".equals(uri.getScheme())) {
-                    openAsset = true;
-                    String host = uri.getHost();
-                    String path = uri.getPath() != null ? uri.getPath().substring(1) : "";
-                    String asset = mEngine.lookupKeyForAsset(path, host);
-                    if (!TextUtils.isEmpty(asset)) {
-                        uri = Uri.parse(asset);
-                    }
-                }
                 try {
-                    Context context = mEngine.context();
-                    if (openAsset && context != null) {
-                        AssetManager assetManager = context.getAssets();
-                        InputStream is = assetManager.open(uri.getPath() != null ? uri.getPath() : "", AssetManager.ACCESS_RANDOM);
-                        mIjkMediaPlayer.setDataSource(new RawMediaDataSource(is));
-                    } else if (context != null) {
-                        if (TextUtils.isEmpty(uri.getScheme()) || "file".equals(uri.getScheme())) {
-                            String path = uri.getPath() != null ? uri.getPath() : "";
-                            IMediaDataSource dataSource = new FileMediaDataSource(new File(path));
-                            mIjkMediaPlayer.setDataSource(dataSource);
-                        } else {
-                            mIjkMediaPlayer.setDataSource(mEngine.context(), uri);
-                        }
-                    } else {
-                        Log.e("FIJKPLAYER", "context null, can't setDataSource");
-                    }
-                    handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, initialized, -1, null);
-                    if (context == null) {
-                        handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, error, -1, null);
+                    boolean opened = openDataSource(mIjkMediaPlayer, url);
+                    postEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, initialized, -1);
+                    if (!opened) {
+                        postEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, error, -1);
                     }
                     result.success(null);
                 } catch (FileNotFoundException e) {
@@ -432,33 +1247,96 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
                 }
                 break;
             case "prepareAsync":
+                mMetrics.onPrepareAsync();
                 setup();
+                applySeekMode(mIjkMediaPlayer);
+                long bufferBytes = mEngine.scheduler().applyLimits(this, mIjkMediaPlayer);
+                mEngine.memoryGovernor().applyLimits(mIjkMediaPlayer, bufferBytes);
+                // posted before native prepareAsync, so that it is handled before onPrepared
+                postEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, asyncPreparing, -1);
                 mIjkMediaPlayer.prepareAsync();
-                handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, asyncPreparing, -1, null);
                 result.success(null);
                 break;
             case "start":
-                mIjkMediaPlayer.start();
+                if (mEngine.scheduler().admit(this)) {
+                    mIjkMediaPlayer.start();
+                    if (mState == prepared || mState == paused || mState == completed)
+                        handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, started, mState, null);
+                }
                 result.success(null);
                 break;
             case "pause":
+                mEngine.scheduler().onPause(this);
                 mIjkMediaPlayer.pause();
+                if (mState == started)
+                    handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, paused, mState, null);
                 result.success(null);
                 break;
             case "stop":
                 mIjkMediaPlayer.stop();
-                handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, stopped, -1, null);
+                postEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, stopped, -1);
                 result.success(null);
                 break;
             case "reset":
-                mIjkMediaPlayer.reset();
-                handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, idle, -1, null);
+                resetNative();
+                postEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, idle, -1);
                 result.success(null);
                 break;
+            case "snapshot": {
+                final String format = call.argument("format");
+                final Integer quality = call.argument("quality");
+                final Integer width = call.argument("width");
+                final Integer height = call.argument("height");
+                if (mHostOptions.getIntOption(HostOption.ENABLE_SNAPSHOT, 0) != 1) {
+                    onSnapshot(null, "snapshot is not enabled");
+                } else if (mSurface == null) {
+                    onSnapshot(null, "no surface");
+                } else {
+                    if (mSnapshot == null)
+                        mSnapshot = new FijkSnapshot(mEngine.bitmapPool());
+                    mSnapshot.take(mSurface,
+                            width != null ? width : mWidth, height != null ? height : mHeight,
+                            format != null ? format : FijkSnapshot.FORMAT_PNG,
+                            quality != null ? quality : 90, new FijkSnapshot.Callback() {
+                                @Override
+                                public void onSnapshot(@Nullable Map<String, Object> snapshot, @Nullable String error) {
+                                    FijkPlayer.this.onSnapshot(snapshot, error);
+                                }
+                            });
+                }
+                result.success(null);
+                break;
+            }
             case "getCurrentPosition":
                 long pos = mIjkMediaPlayer.getCurrentPosition();
                 result.success(pos);
                 break;
+            case "setPositionNotify": {
+                final Integer mode = call.argument("mode");
+                final Integer interval = call.argument("interval");
+                setPositionNotify(mode != null ? mode : POS_NOTIFY_ALWAYS, interval != null ? interval : 0);
+                result.success(null);
+                break;
+            }
+            case "notifyPosition": {
+                // send position to dart regardless of the notify policy
+                long position = mIjkMediaPlayer.getCurrentPosition();
+                HashMap<String, Object> event = new HashMap<>();
+                event.put("event", "pos");
+                event.put("pos", (int) position);
+                mEventSink.success(event);
+                result.success(position);
+                break;
+            }
+            case "onLoad":
+                mViewCount++;
+                mViewLoaded = true;
+                result.success(null);
+                break;
+            case "onUnload":
+                mViewCount = Math.max(mViewCount - 1, 0);
+                result.success(null);
+                break;
             case "setVolume":
                 final Double volume = call.argument("volume");
                 float vol = volume != null ? volume.floatValue() : 1.0f;
@@ -469,9 +1347,17 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
                 final Integer msec = call.argument("msec");
                 if (mState == completed)
                     handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, paused, -1, null);
-                mIjkMediaPlayer.seekTo(msec != null ? msec.longValue() : 0);
+                mMetrics.onSeekRequest();
+                restoreAccurateSeek();
+                seekTo(msec != null ? msec.longValue() : 0);
                 result.success(null);
                 break;
+            case "setScrubbing": {
+                final Boolean scrubbing = call.argument("scrubbing");
+                setScrubbing(scrubbing != null && scrubbing);
+                result.success(null);
+                break;
+            }
             case "setLoop":
                 final Integer loopCount = call.argument("loop");
 //            mIjkMediaPlayer.setLoopCount(loopCount != null ? loopCount : 1);
@@ -482,6 +1368,37 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
                 mIjkMediaPlayer.setSpeed(speed != null ? speed.floatValue() : 1.0f);
                 result.success(null);
                 break;
+            case "playlistEnqueue": {
+                final List<String> urls = call.argument("urls");
+                if (urls != null)
+                    playlist().enqueue(urls);
+                result.success(mPlaylist != null ? mPlaylist.remaining() : 0);
+                break;
+            }
+            case "playlistNext":
+                result.success(mPlaylist != null && mPlaylist.next());
+                break;
+            case "playlistClear":
+                if (mPlaylist != null)
+                    mPlaylist.clear();
+                result.success(null);
+                break;
+            case "getMetrics":
+                Map<String, Object> metrics = mMetrics.toMap();
+                Map<String, Object> events = new HashMap<>();
+                events.put("sent", mEventSink.sentCount());
+                events.put("dropped", mEventSink.droppedCount());
+                events.put("messages", mEventSink.messageCount());
+                events.put("queued", mEventSink.depth());
+                events.put("max_queued", mEventSink.maxDepth());
+                events.put("overflow", mEventSink.overflowCount());
+                metrics.put("events", events);
+                result.success(metrics);
+                break;
+            case "resetMetrics":
+                mMetrics.reset();
+                result.success(null);
+                break;
             default:
 
                 result.notImplemented();
@@ -491,51 +1408,84 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
 
     @Override
     public void onPrepared(IMediaPlayer iMediaPlayer) {
-        onEvent(mIjkMediaPlayer, FijkEventConstants.PREPARED, 0, 0, new HashMap<String, String>());
+        if (iMediaPlayer != mIjkMediaPlayer)
+            return;
+        onEvent(mIjkMediaPlayer, FijkEventConstants.PREPARED, 0, 0, null);
+        if (mState == asyncPreparing) {
+            handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, prepared, mState, null);
+            // native player starts by itself with start-on-prepared, set by any of the option calls
+            if (mOptionLog.intOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0) != 0)
+                handleEvent(FijkEventConstants.PLAYBACK_STATE_CHANGED, started, mState, null);
+        }
     }
 
     @Override
     public boolean onError(IMediaPlayer iMediaPlayer, int i, int i1) {
-        onEvent(mIjkMediaPlayer, FijkEventConstants.ERROR, i, i1, new HashMap<String, String>());
+        if (iMediaPlayer != mIjkMediaPlayer)
+            return false;
+        onEvent(mIjkMediaPlayer, FijkEventConstants.ERROR, i, i1, null);
         return false;
     }
 
     @Override
     public void onVideoSizeChanged(IMediaPlayer iMediaPlayer, int i, int i1, int i2, int i3) {
-        onEvent(mIjkMediaPlayer, FijkEventConstants.VIDEO_SIZE_CHANGED, i, i1, new HashMap<String, String>());
+        if (iMediaPlayer != mIjkMediaPlayer)
+            return;
+        onEvent(mIjkMediaPlayer, FijkEventConstants.VIDEO_SIZE_CHANGED, i, i1, null);
     }
 
     @Override
     public void onBufferingUpdate(IMediaPlayer iMediaPlayer, int i) {
-        onEvent(mIjkMediaPlayer, FijkEventConstants.BUFFERING_UPDATE, i, 0, new HashMap<String, String>());
+        if (iMediaPlayer != mIjkMediaPlayer)
+            return;
+        // i is the buffered percent of duration
+        int head = (int) (mIjkMediaPlayer.getDuration() * i / 100);
+        onEvent(mIjkMediaPlayer, FijkEventConstants.BUFFERING_UPDATE, head, i, null);
     }
 
     @Override
     public void onCompletion(IMediaPlayer iMediaPlayer) {
-        onEvent(mIjkMediaPlayer, FijkEventConstants.COMPLETED, 0, 0, new HashMap<String, String>());
+        if (iMediaPlayer != mIjkMediaPlayer)
+            return;
+        // the next item of playlist takes over, completion is not reported
+        if (mPlaylist != null && mPlaylist.onCompletion())
+            return;
+        onEvent(mIjkMediaPlayer, FijkEventConstants.COMPLETED, 0, 0, null);
     }
 
     @Override
     public boolean onInfo(IMediaPlayer iMediaPlayer, int i, int i1) {
+        if (iMediaPlayer != mIjkMediaPlayer)
+            return false;
         switch (i) {
             case IMediaPlayer.MEDIA_INFO_BUFFERING_START:
-                onEvent(mIjkMediaPlayer, FijkEventConstants.BUFFERING_START, 0, 0, new HashMap<String, String>());
+                onEvent(mIjkMediaPlayer, FijkEventConstants.BUFFERING_START, 0, 0, null);
                 break;
 
             case IMediaPlayer.MEDIA_INFO_BUFFERING_END:
-                onEvent(mIjkMediaPlayer, FijkEventConstants.BUFFERING_END, 0, 0, new HashMap<String, String>());
+                onEvent(mIjkMediaPlayer, FijkEventConstants.BUFFERING_END, 0, 0, null);
                 break;
 
             case IMediaPlayer.MEDIA_INFO_AUDIO_RENDERING_START:
-                onEvent(mIjkMediaPlayer, FijkEventConstants.AUDIO_RENDERING_START, 0, 0, new HashMap<String, String>());
+                onEvent(mIjkMediaPlayer, FijkEventConstants.AUDIO_RENDERING_START, 0, 0, null);
                 break;
 
             case IMediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START:
-                onEvent(mIjkMediaPlayer, FijkEventConstants.VIDEO_RENDERING_START, 0, 0, new HashMap<String, String>());
+                onEvent(mIjkMediaPlayer, FijkEventConstants.VIDEO_RENDERING_START, 0, 0, null);
+                break;
+
+            case IMediaPlayer.MEDIA_INFO_VIDEO_ROTATION_CHANGED:
+                // i1 is the rotation degree
+                onEvent(mIjkMediaPlayer, FijkEventConstants.VIDEO_ROTATION_CHANGED, i1, 0, null);
+                break;
+
+            case IMediaPlayer.MEDIA_INFO_MEDIA_ACCURATE_SEEK_COMPLETE:
+                // i1 is the position seek to
+                onEvent(mIjkMediaPlayer, FijkEventConstants.ACCURATE_SEEK_COMPLETE, i1, 0, null);
                 break;
 
             default:
-                onEvent(mIjkMediaPlayer, FijkEventConstants.FIND_STREAM_INFO, i, i1, new HashMap<String, String>());
+                onEvent(mIjkMediaPlayer, FijkEventConstants.FIND_STREAM_INFO, i, i1, null);
                 break;
         }
 
@@ -544,6 +1494,10 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler,
 
     @Override
     public void onSeekComplete(IMediaPlayer iMediaPlayer) {
-        onEvent(mIjkMediaPlayer, FijkEventConstants.SEEK_COMPLETE, (int)iMediaPlayer.getCurrentPosition(), 0, new HashMap<String, String>());
+        if (iMediaPlayer != mIjkMediaPlayer)
+            return;
+        if (onSeekDone())
+            return;
+        onEvent(mIjkMediaPlayer, FijkEventConstants.SEEK_COMPLETE, (int)iMediaPlayer.getCurrentPosition(), 0, null);
     }
 }
@@ -0,0 +1,161 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded pool of idle {@link FijkPlayer}s.
+ *
+ * <p>Released players are recycled into the pool instead of destroying the native player and
+ * channels, while fewer than maxIdle players are idle. After a player is handed out, the pool is
+ * refilled to minIdle on a later main loop turn, so the createPlayer reply is not delayed.
+ * Both bounds are 0 by default, which keeps the create / release behavior of no pool.
+ *
+ * <p>This class is not thread-safe. All calls must be done on the main thread.
+ */
+final class FijkPlayerPool {
+
+    final private FijkEngine mEngine;
+    final private ArrayDeque<FijkPlayer> mIdle = new ArrayDeque<>();
+    final private Handler mHandler = new Handler(Looper.getMainLooper());
+    private int mMinIdle = 0;
+    private int mMaxIdle = 0;
+    private boolean mFillScheduled = false;
+
+    private long mAcquireCount = 0;
+    private long mHitCount = 0;
+    private long mCreateCount = 0;
+    private long mCreateNanos = 0;
+    private long mMaxCreateNanos = 0;
+
+    final private Runnable mFillRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFillScheduled = false;
+            while (mIdle.size() < mMinIdle) {
+                mIdle.push(create());
+            }
+        }
+    };
+
+    FijkPlayerPool(@NonNull FijkEngine engine) {
+        mEngine = engine;
+    }
+
+    void configure(int minIdle, int maxIdle) {
+        mMaxIdle = Math.max(maxIdle, 0);
+        mMinIdle = Math.min(Math.max(minIdle, 0), mMaxIdle);
+        while (mIdle.size() > mMaxIdle) {
+            mIdle.pop().release();
+        }
+        scheduleFill();
+    }
+
+    @NonNull
+    FijkPlayer acquire() {
+        mAcquireCount++;
+        FijkPlayer player = mIdle.poll();
+        if (player != null) {
+            mHitCount++;
+        } else {
+            player = create();
+        }
+        scheduleFill();
+        return player;
+    }
+
+    void recycle(@NonNull FijkPlayer player) {
+        if (mIdle.size() < mMaxIdle) {
+            player.recycle();
+            mIdle.push(player);
+        } else {
+            player.release();
+        }
+    }
+
+    /**
+     * Create one idle player for the first acquire if the pool is empty and keeps idle players
+     *
+     * @return the created player, or null if there's an idle player already or maxIdle is 0
+     */
+    @Nullable
+    FijkPlayer warmUp() {
+        if (!mIdle.isEmpty() || mMaxIdle == 0)
+            return null;
+        FijkPlayer player = create();
+        mIdle.push(player);
+        return player;
+    }
+
+    /**
+     * Release all idle players
+     */
+    void clear() {
+        mHandler.removeCallbacks(mFillRunnable);
+        mFillScheduled = false;
+        while (!mIdle.isEmpty()) {
+            mIdle.pop().release();
+        }
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("minIdle", mMinIdle);
+        stats.put("maxIdle", mMaxIdle);
+        stats.put("idle", mIdle.size());
+        stats.put("acquire", mAcquireCount);
+        stats.put("hit", mHitCount);
+        stats.put("hitRate", mAcquireCount > 0 ? (double) mHitCount / mAcquireCount : 0.0);
+        stats.put("created", mCreateCount);
+        stats.put("createAvgUs", mCreateCount > 0 ? mCreateNanos / mCreateCount / 1000 : 0L);
+        stats.put("createMaxUs", mMaxCreateNanos / 1000);
+        return stats;
+    }
+
+    private FijkPlayer create() {
+        long start = System.nanoTime();
+        FijkPlayer player = new FijkPlayer(mEngine, false);
+        long cost = System.nanoTime() - start;
+        mCreateCount++;
+        mCreateNanos += cost;
+        mMaxCreateNanos = Math.max(mMaxCreateNanos, cost);
+        return player;
+    }
+
+    private void scheduleFill() {
+        if (!mFillScheduled && mIdle.size() < mMinIdle) {
+            mFillScheduled = true;
+            mHandler.post(mFillRunnable);
+        }
+    }
+}
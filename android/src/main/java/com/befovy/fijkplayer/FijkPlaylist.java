@@ -0,0 +1,283 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import tv.danmaku.ijk.media.player.IMediaPlayer;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * Queue of sources played one after another by a {@link FijkPlayer}.
+ *
+ * <p>The head of the queue is prepared on a standby native player while the current item plays.
+ * When the current item completes, or next is requested, the prepared standby player takes over
+ * the texture of FijkPlayer and starts, without reset / setDataSource / prepare round trips.
+ * Item transitions are sent as "playlist" events.
+ *
+ * <p>All methods must be called on main thread.
+ */
+final class FijkPlaylist {
+
+    interface Host {
+        /**
+         * Create a native player for url, configured as the current player, and start preparing.
+         * Called on the player thread.
+         */
+        @NonNull
+        IjkMediaPlayer prepareStandby(@NonNull String url, @NonNull StandbyListener listener) throws IOException;
+
+        /**
+         * Replace current native player with the prepared standby player, and start it.
+         * listener keeps the rotation and size the standby player reported while preparing.
+         */
+        void swapTo(@NonNull IjkMediaPlayer player, @NonNull StandbyListener listener);
+
+        void releaseStandby(@NonNull IjkMediaPlayer player);
+
+        /**
+         * Run task on the player thread, in order with other player calls
+         */
+        void runInBackground(@NonNull Runnable task);
+
+        void sendEvent(@NonNull Map<String, Object> event);
+
+        /**
+         * Report completion of current item, when no next item can be played after it
+         */
+        void complete();
+    }
+
+    /**
+     * Listener of one standby player, events of a cancelled standby are ignored.
+     * Rotation and video size reported before the swap are kept for the swap.
+     */
+    final class StandbyListener implements IMediaPlayer.OnPreparedListener, IMediaPlayer.OnErrorListener,
+            IMediaPlayer.OnInfoListener, IMediaPlayer.OnVideoSizeChangedListener {
+        final String url;
+        boolean prepared = false;
+        boolean cancelled = false;
+        int rotation = 0;
+        int width = 0;
+        int height = 0;
+
+        private StandbyListener(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void onPrepared(IMediaPlayer iMediaPlayer) {
+            prepared = true;
+            onStandbyPrepared(this);
+        }
+
+        @Override
+        public boolean onError(IMediaPlayer iMediaPlayer, int what, int extra) {
+            onStandbyError(this, "error " + what + ", " + extra);
+            return true;
+        }
+
+        @Override
+        public boolean onInfo(IMediaPlayer iMediaPlayer, int what, int extra) {
+            if (what == IMediaPlayer.MEDIA_INFO_VIDEO_ROTATION_CHANGED)
+                rotation = extra;
+            return false;
+        }
+
+        @Override
+        public void onVideoSizeChanged(IMediaPlayer iMediaPlayer, int width, int height, int sarNum, int sarDen) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    final private Host mHost;
+    final private Handler mMainHandler = new Handler(Looper.getMainLooper());
+    final private ArrayDeque<String> mQueue = new ArrayDeque<>();
+
+    private StandbyListener mStandbyListener;
+    private IjkMediaPlayer mStandby;
+    private boolean mSwapPending = false;
+    // current item has completed and waits for the next one
+    private boolean mCompleted = false;
+    private int mIndex = 0;
+
+    FijkPlaylist(@NonNull Host host) {
+        mHost = host;
+    }
+
+    void enqueue(@NonNull List<String> urls) {
+        mQueue.addAll(urls);
+        prepareNext();
+    }
+
+    /**
+     * Remove all queued items and release the standby player
+     */
+    void clear() {
+        mQueue.clear();
+        mSwapPending = false;
+        mCompleted = false;
+        mIndex = 0;
+        if (mStandbyListener != null) {
+            mStandbyListener.cancelled = true;
+            mStandbyListener = null;
+        }
+        if (mStandby != null) {
+            mHost.releaseStandby(mStandby);
+            mStandby = null;
+        }
+    }
+
+    /**
+     * Switch to the next item as soon as it's prepared
+     *
+     * @return false if there's no next item
+     */
+    boolean next() {
+        if (mStandbyListener == null && mQueue.isEmpty())
+            return false;
+        mSwapPending = true;
+        if (mStandbyListener == null) {
+            prepareNext();
+        } else if (mStandby != null && mStandbyListener.prepared) {
+            swap();
+        }
+        return true;
+    }
+
+    /**
+     * Called when current item completes
+     *
+     * @return true if playlist continues with the next item, and completion should not be reported
+     */
+    boolean onCompletion() {
+        mCompleted = next();
+        return mCompleted;
+    }
+
+    int remaining() {
+        return mQueue.size() + (mStandbyListener != null ? 1 : 0);
+    }
+
+    private void prepareNext() {
+        if (mStandbyListener != null || mQueue.isEmpty())
+            return;
+        final StandbyListener listener = new StandbyListener(mQueue.poll());
+        mStandbyListener = listener;
+        mHost.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                IjkMediaPlayer player = null;
+                String error = null;
+                try {
+                    player = mHost.prepareStandby(listener.url, listener);
+                } catch (IOException e) {
+                    error = e.getMessage();
+                }
+                final IjkMediaPlayer prepared = player;
+                final String failure = error;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (prepared == null) {
+                            onStandbyError(listener, failure);
+                        } else if (listener.cancelled) {
+                            mHost.releaseStandby(prepared);
+                        } else {
+                            mStandby = prepared;
+                            if (listener.prepared)
+                                onStandbyPrepared(listener);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void onStandbyPrepared(StandbyListener listener) {
+        if (listener != mStandbyListener || mStandby == null)
+            return;
+        sendEvent("item_ready", listener.url, null);
+        if (mSwapPending)
+            swap();
+    }
+
+    private void onStandbyError(StandbyListener listener, @Nullable String error) {
+        if (listener != mStandbyListener)
+            return;
+        Log.w("FIJKPLAYER", "playlist item failed " + listener.url + ": " + error);
+        mStandbyListener = null;
+        if (mStandby != null) {
+            mHost.releaseStandby(mStandby);
+            mStandby = null;
+        }
+        sendEvent("item_error", listener.url, error);
+        prepareNext();
+        if (mSwapPending && mStandbyListener == null) {
+            mSwapPending = false;
+            if (mCompleted) {
+                mCompleted = false;
+                mHost.complete();
+            }
+        }
+    }
+
+    private void swap() {
+        IjkMediaPlayer player = mStandby;
+        StandbyListener listener = mStandbyListener;
+        String url = listener.url;
+        mStandby = null;
+        mStandbyListener = null;
+        mSwapPending = false;
+        mCompleted = false;
+        mIndex++;
+        mHost.swapTo(player, listener);
+        sendEvent("item_changed", url, null);
+        prepareNext();
+    }
+
+    private void sendEvent(String action, String url, @Nullable String error) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("event", "playlist");
+        event.put("action", action);
+        event.put("url", url);
+        event.put("index", mIndex);
+        event.put("remaining", remaining());
+        if (error != null)
+            event.put("error", error);
+        mHost.sendEvent(event);
+    }
+}
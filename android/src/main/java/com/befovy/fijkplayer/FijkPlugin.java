@@ -24,6 +24,7 @@ package com.befovy.fijkplayer;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
@@ -34,16 +35,20 @@ import android.os.Build;
 import android.provider.Settings;
 import android.text.TextUtils;
 import android.util.Log;
-import android.util.SparseArray;
 import android.view.KeyEvent;
 import android.view.WindowManager;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.File;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
@@ -54,14 +59,16 @@ import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.plugin.common.PluginRegistry;
 import io.flutter.plugin.common.PluginRegistry.Registrar;
+import io.flutter.view.FlutterNativeView;
 import io.flutter.view.TextureRegistry;
 import tv.danmaku.ijk.media.player.IjkMediaPlayer;
 
 /**
  * FijkPlugin
  */
-public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAware, FijkEngine, FijkVolume.VolumeKeyListener, AudioManager.OnAudioFocusChangeListener {
+public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAware, FijkEngine, FijkVolume.VolumeKeyListener, AudioManager.OnAudioFocusChangeListener, ComponentCallbacks2 {
 
     // show system volume changed UI if no playable player
     // hide system volume changed UI if some players are in playable state
@@ -75,19 +82,53 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
     // always show system volume changed UI
     private static final int ALWAYS_SHOW_UI = 3;
 
-    final private SparseArray<FijkPlayer> fijkPlayers = new SparseArray<>();
+    final private FijkRegistry<FijkPlayer> fijkPlayers = new FijkRegistry<>();
+
+    final private FijkPlayerPool mPlayerPool = new FijkPlayerPool(this);
+
+    final private FijkWarmUp mWarmUp = new FijkWarmUp(mPlayerPool);
+
+    // option profiles registered by name, read by players when applying a profile
+    final private Map<String, FijkOptionProfile> mOptionProfiles = new ConcurrentHashMap<>();
+
+    final private FijkBitmapPool mBitmapPool = new FijkBitmapPool(FijkBitmapPool.DEFAULT_MAX_BYTES);
+
+    final private FijkTexturePool mTexturePool = new FijkTexturePool(this);
 
     private final QueuingEventSink mEventSink = new QueuingEventSink();
 
+    final private FijkScheduler mScheduler = new FijkScheduler(new EventChannel.EventSink() {
+        // scheduler events are sent on main thread, only while dart listens as other plugin events
+        @Override
+        public void success(Object event) {
+            if (eventListening)
+                mEventSink.success(event);
+        }
+
+        @Override
+        public void error(String code, String message, Object details) {
+            if (eventListening)
+                mEventSink.error(code, message, details);
+        }
+
+        @Override
+        public void endOfStream() {
+        }
+    });
+
+    final private FijkMemoryGovernor mMemoryGovernor = new FijkMemoryGovernor();
+
     private WeakReference<Activity> mActivity;
     private WeakReference<Context> mContext;
+    // application context this plugin is registered to as ComponentCallbacks
+    private Context mCallbacksContext;
     private Registrar mRegistrar;
     private FlutterPluginBinding mBinding;
 
     // Count of playable players
-    private int playableCnt = 0;
+    final private AtomicInteger playableCnt = new AtomicInteger(0);
     // Count of playing players
-    private int playingCnt = 0;
+    final private AtomicInteger playingCnt = new AtomicInteger(0);
     private int volumeUIMode = ALWAYS_SHOW_UI;
     private float volStep = 1.0f / 16.0f;
     private boolean eventListening = false;
@@ -95,6 +136,10 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
     private EventChannel mEventChannel;
     private Object mAudioFocusRequest;
     private boolean mAudioFocusRequested = false;
+    private FijkDiskCache mDiskCache;
+    private FijkPreloader mPreloader;
+    private FijkKeyframeIndex mKeyframeIndex;
+    private FijkThumbnailer mThumbnailer;
 
 
     /**
@@ -106,10 +151,7 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
         FijkPlugin plugin = new FijkPlugin();
         plugin.initWithRegistrar(registrar);
         channel.setMethodCallHandler(plugin);
-
-        final FijkPlayer player = new FijkPlayer(plugin, true);
-        player.setupSurface();
-        player.release();
+        plugin.warmUp();
     }
 
     @Override
@@ -117,10 +159,7 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
         final MethodChannel channel = new MethodChannel(binding.getBinaryMessenger(), "befovy.com/fijk");
         initWithBinding(binding);
         channel.setMethodCallHandler(this);
-
-        final FijkPlayer player = new FijkPlayer(this, true);
-        player.setupSurface();
-        player.release();
+        warmUp();
 
         AudioManager audioManager = audioManager();
         if (audioManager != null) {
@@ -129,8 +168,40 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
         }
     }
 
+    /**
+     * Warm up in background if enabled in manifest,
+     * otherwise create and release a surface on main thread as before
+     */
+    private void warmUp() {
+        Context context = context();
+        if (context != null && FijkWarmUp.isEnabled(context)) {
+            mWarmUp.start();
+        } else {
+            final FijkPlayer player = new FijkPlayer(this, true);
+            player.setupSurface();
+            player.release();
+        }
+    }
+
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
+        detach();
+    }
+
+    /**
+     * Release pooled resources and stop listening to memory callbacks,
+     * when the engine detaches or the flutter view of v1 embedding is destroyed
+     */
+    private void detach() {
+        mPlayerPool.clear();
+        mTexturePool.clear();
+        mBitmapPool.clear();
+        if (mPreloader != null)
+            mPreloader.cancelAll();
+        if (mCallbacksContext != null) {
+            mCallbacksContext.unregisterComponentCallbacks(this);
+            mCallbacksContext = null;
+        }
         mContext = null;
     }
 
@@ -173,6 +244,12 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
         return null;
     }
 
+    @Override
+    @NonNull
+    public IjkMediaPlayer createMediaPlayer() {
+        return new IjkMediaPlayer();
+    }
+
     @Override
     @Nullable
     public BinaryMessenger messenger() {
@@ -193,6 +270,78 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
             return null;
     }
 
+    @Override
+    @Nullable
+    public synchronized FijkDiskCache diskCache() {
+        if (mDiskCache == null) {
+            Context context = context();
+            if (context != null) {
+                File dir = new File(context.getCacheDir(), "fijkplayer");
+                mDiskCache = new FijkDiskCache(dir, FijkDiskCache.DEFAULT_MAX_BYTES);
+            }
+        }
+        return mDiskCache;
+    }
+
+    @Override
+    @Nullable
+    public synchronized FijkPreloader preloader() {
+        if (mPreloader == null) {
+            FijkDiskCache cache = diskCache();
+            if (cache != null)
+                mPreloader = new FijkPreloader(cache);
+        }
+        return mPreloader;
+    }
+
+    @Override
+    @Nullable
+    public synchronized FijkKeyframeIndex keyframeIndex() {
+        if (mKeyframeIndex == null) {
+            FijkDiskCache cache = diskCache();
+            if (cache != null)
+                mKeyframeIndex = new FijkKeyframeIndex(new File(cache.dir(), FijkKeyframeIndex.DIR_NAME));
+        }
+        return mKeyframeIndex;
+    }
+
+    @Override
+    @Nullable
+    public FijkOptionProfile optionProfile(@NonNull String name) {
+        return mOptionProfiles.get(name);
+    }
+
+    @NonNull
+    private synchronized FijkThumbnailer thumbnailer() {
+        if (mThumbnailer == null)
+            mThumbnailer = new FijkThumbnailer(this);
+        return mThumbnailer;
+    }
+
+    @Override
+    @NonNull
+    public FijkBitmapPool bitmapPool() {
+        return mBitmapPool;
+    }
+
+    @Override
+    @NonNull
+    public FijkTexturePool texturePool() {
+        return mTexturePool;
+    }
+
+    @Override
+    @NonNull
+    public FijkScheduler scheduler() {
+        return mScheduler;
+    }
+
+    @Override
+    @NonNull
+    public FijkMemoryGovernor memoryGovernor() {
+        return mMemoryGovernor;
+    }
+
     @Nullable
     private Activity activity() {
         if (mRegistrar != null) {
@@ -229,12 +378,24 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
     private void initWithRegistrar(@NonNull Registrar registrar) {
         mRegistrar = registrar;
         mContext = new WeakReference<>(registrar.activeContext());
+        mCallbacksContext = registrar.context().getApplicationContext();
+        mCallbacksContext.registerComponentCallbacks(this);
+        // v1 embedding never calls onDetachedFromEngine
+        registrar.addViewDestroyListener(new PluginRegistry.ViewDestroyListener() {
+            @Override
+            public boolean onViewDestroy(FlutterNativeView view) {
+                detach();
+                return false;
+            }
+        });
         init(registrar.messenger());
     }
 
     private void initWithBinding(@NonNull FlutterPluginBinding binding) {
         mBinding = binding;
         mContext = new WeakReference<>(binding.getApplicationContext());
+        mCallbacksContext = binding.getApplicationContext();
+        mCallbacksContext.registerComponentCallbacks(this);
         init(binding.getBinaryMessenger());
     }
 
@@ -281,9 +442,10 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
                 result.success(null);
                 break;
             case "createPlayer": {
-                FijkPlayer fijkPlayer = new FijkPlayer(this, false);
+                FijkPlayer fijkPlayer = mPlayerPool.acquire();
                 int playerId = fijkPlayer.getPlayerId();
-                fijkPlayers.append(playerId, fijkPlayer);
+                fijkPlayers.put(playerId, fijkPlayer);
+                mScheduler.add(fijkPlayer);
                 result.success(playerId);
                 break;
             }
@@ -292,14 +454,121 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
                 final Integer arg = call.argument("pid");
                 if (arg != null)
                     pid = arg;
-                FijkPlayer fijkPlayer = fijkPlayers.get(pid);
+                FijkPlayer fijkPlayer = fijkPlayers.remove(pid);
                 if (fijkPlayer != null) {
-                    fijkPlayer.release();
-                    fijkPlayers.delete(pid);
+                    mScheduler.remove(fijkPlayer);
+                    mPlayerPool.recycle(fijkPlayer);
                 }
                 result.success(null);
                 break;
             }
+            case "playerPool": {
+                final Integer minIdle = call.argument("min");
+                final Integer maxIdle = call.argument("max");
+                mPlayerPool.configure(minIdle != null ? minIdle : 0, maxIdle != null ? maxIdle : 0);
+                final Integer maxTextures = call.argument("textures");
+                if (maxTextures != null)
+                    mTexturePool.setMaxIdle(maxTextures);
+                result.success(null);
+                break;
+            }
+            case "playerPoolStats": {
+                Map<String, Object> stats = mPlayerPool.stats();
+                stats.put("texture", mTexturePool.stats());
+                result.success(stats);
+                break;
+            }
+            case "players":
+                result.success(players());
+                break;
+            case "registerOptionProfile": {
+                final String name = call.argument("name");
+                if (name == null) {
+                    result.error("-1", "option profile name is null", null);
+                    break;
+                }
+                try {
+                    FijkOptionProfile profile = FijkOptionProfile.compile(call.argument("options"), true);
+                    mOptionProfiles.put(name, profile);
+                    result.success(profile.size());
+                } catch (IllegalArgumentException e) {
+                    result.error("-1", e.getMessage(), null);
+                }
+                break;
+            }
+            case "unregisterOptionProfile": {
+                final String name = call.argument("name");
+                if (name != null)
+                    mOptionProfiles.remove(name);
+                result.success(null);
+                break;
+            }
+            case "preload": {
+                final String url = call.argument("url");
+                final Number bytes = call.argument("bytes");
+                final Number ms = call.argument("ms");
+                FijkPreloader preloader = preloader();
+                if (url != null && preloader != null) {
+                    preloader.preload(url, FijkPreloader.bytesOf(
+                            bytes != null ? bytes.longValue() : 0, ms != null ? ms.longValue() : 0));
+                }
+                result.success(null);
+                break;
+            }
+            case "cancelPreload": {
+                final String url = call.argument("url");
+                if (mPreloader != null) {
+                    if (url != null)
+                        mPreloader.cancel(url);
+                    else
+                        mPreloader.cancelAll();
+                }
+                result.success(null);
+                break;
+            }
+            case "warmUp":
+                mWarmUp.start();
+                result.success(null);
+                break;
+            case "warmUpStats":
+                result.success(mWarmUp.stats());
+                break;
+            case "decodeBudget": {
+                final Integer maxActive = call.argument("maxActive");
+                final Number maxBufferBytes = call.argument("maxBufferBytes");
+                final Integer lowPriorityFps = call.argument("lowPriorityFps");
+                mScheduler.configure(maxActive != null ? maxActive : 0,
+                        maxBufferBytes != null ? maxBufferBytes.longValue() : 0,
+                        lowPriorityFps != null ? lowPriorityFps : 0);
+                result.success(null);
+                break;
+            }
+            case "playerPriority": {
+                final Integer pid = call.argument("pid");
+                final Integer priority = call.argument("priority");
+                if (pid != null)
+                    mScheduler.setPriority(pid, priority != null ? priority : 0);
+                result.success(null);
+                break;
+            }
+            case "thumbnails": {
+                final String url = call.argument("url");
+                final List<Number> times = call.argument("times");
+                final Number interval = call.argument("interval");
+                final Integer count = call.argument("count");
+                final Integer width = call.argument("width");
+                final Integer height = call.argument("height");
+                final Integer columns = call.argument("columns");
+                final Integer quality = call.argument("quality");
+                if (url == null) {
+                    result.error("-1", "thumbnail url is null", null);
+                    break;
+                }
+                thumbnailer().extract(url, times, interval != null ? interval.longValue() : 0,
+                        count != null ? count : 0, width != null ? width : 0, height != null ? height : 0,
+                        columns != null ? columns : 0, quality != null ? quality : 80, result);
+                break;
+            }
             case "logLevel": {
                 int level = 500;
                 final Integer l = call.argument("level");
@@ -444,12 +713,73 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
 
     @Override
     public void onPlayingChange(int delta) {
-        playingCnt += delta;
+        playingCnt.addAndGet(delta);
     }
 
     @Override
     public void onPlayableChange(int delta) {
-        playableCnt += delta;
+        playableCnt.addAndGet(delta);
+    }
+
+    /**
+     * Snapshot of all created players, can be called from any thread
+     */
+    @NonNull
+    List<Map<String, Object>> players() {
+        List<FijkPlayer> values = fijkPlayers.values();
+        List<Map<String, Object>> list = new ArrayList<>(values.size());
+        for (FijkPlayer player : values) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("id", player.getPlayerId());
+            map.put("state", player.getState());
+            list.add(map);
+        }
+        return list;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        int pressure = mMemoryGovernor.onTrimMemory(level);
+        if (pressure == FijkMemoryGovernor.PRESSURE_NONE)
+            return;
+        // moderate pressure only lowers buffers of players prepared later, caches are kept
+        sendMemoryEvent(level, "limit_buffer", -1);
+        if (pressure == FijkMemoryGovernor.PRESSURE_SEVERE) {
+            if (mPreloader != null)
+                mPreloader.cancelAll();
+            mBitmapPool.clear();
+            mTexturePool.clear();
+            if (mThumbnailer != null)
+                mThumbnailer.clearCache();
+            sendMemoryEvent(level, "clear_caches", -1);
+            mPlayerPool.clear();
+            sendMemoryEvent(level, "clear_player_pool", -1);
+            for (FijkPlayer player : fijkPlayers.values()) {
+                if (player.trimMemory())
+                    sendMemoryEvent(level, "reset_player", player.getPlayerId());
+            }
+        }
+    }
+
+    private void sendMemoryEvent(int level, String action, int playerId) {
+        if (eventListening) {
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "memory");
+            event.put("level", level);
+            event.put("action", action);
+            if (playerId >= 0)
+                event.put("pid", playerId);
+            mEventSink.success(event);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
     }
 
     @Override
@@ -644,9 +974,9 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
         int flag = 0;
         if (volumeUIMode == ALWAYS_SHOW_UI) {
             flag = AudioManager.FLAG_SHOW_UI;
-        } else if (volumeUIMode == NO_UI_IF_PLAYING && playingCnt == 0) {
+        } else if (volumeUIMode == NO_UI_IF_PLAYING && playingCnt.get() == 0) {
             flag = AudioManager.FLAG_SHOW_UI;
-        } else if (volumeUIMode == NO_UI_IF_PLAYABLE && playableCnt == 0) {
+        } else if (volumeUIMode == NO_UI_IF_PLAYABLE && playableCnt.get() == 0) {
             flag = AudioManager.FLAG_SHOW_UI;
         }
         return flag;
@@ -0,0 +1,207 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the head of upcoming http(s) media into {@link FijkDiskCache} in background,
+ * before any player is asked to play it.
+ *
+ * <p>At most {@link #MAX_CONCURRENT} preloads run at the same time, others wait in queue.
+ * A player which sets a preloaded url as data source takes the preload with {@link #take}, the
+ * player then reads the head from the disk cache and fetches the rest itself.
+ *
+ * <p>At most {@link #MAX_PRELOADS} preloads are kept until they are taken, the oldest one is
+ * cancelled when another url is preloaded. Cancelling a running preload disconnects its http
+ * connection, so it stops even while blocked on a socket read.
+ */
+final class FijkPreloader {
+
+    final static int MAX_CONCURRENT = 2;
+    final static int MAX_PRELOADS = 32;
+
+    // used when preload size is given in milliseconds
+    final static int DEFAULT_BITRATE_KBPS = 2000;
+
+    final private static int QUEUED = 0;
+    final private static int RUNNING = 1;
+    final private static int DONE = 2;
+    final private static int FAILED = 3;
+    final private static int CANCELLED = 4;
+
+    final private FijkDiskCache mCache;
+    final private ThreadPoolExecutor mExecutor;
+    // url -> preload not taken by a player yet, in the order they are started
+    final private Map<String, PreloadTask> mPreloads = new LinkedHashMap<String, PreloadTask>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreloadTask> eldest) {
+            if (size() <= MAX_PRELOADS)
+                return false;
+            eldest.getValue().cancel();
+            return true;
+        }
+    };
+
+    FijkPreloader(@NonNull FijkDiskCache cache) {
+        mCache = cache;
+        mExecutor = new ThreadPoolExecutor(MAX_CONCURRENT, MAX_CONCURRENT,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            final private AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "fijk-preload-" + count.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    static long bytesOf(long bytes, long ms) {
+        if (bytes > 0)
+            return bytes;
+        return Math.max(ms, 0) * DEFAULT_BITRATE_KBPS / 8;
+    }
+
+    void preload(@NonNull String url, long bytes) {
+        if (bytes <= 0)
+            return;
+        PreloadTask preload;
+        synchronized (mPreloads) {
+            PreloadTask previous = mPreloads.get(url);
+            if (previous != null && previous.state <= DONE)
+                return;
+            preload = new PreloadTask(url, bytes);
+            mPreloads.put(url, preload);
+        }
+        mExecutor.execute(preload.task);
+    }
+
+    /**
+     * Called by a player which is going to play url.
+     * A running preload of url is cancelled, the player fetches the rest itself.
+     *
+     * @return true if url has been preloaded, or its preload is running,
+     * false if it's not started yet, failed or cancelled
+     */
+    boolean take(@NonNull String url) {
+        PreloadTask preload;
+        synchronized (mPreloads) {
+            preload = mPreloads.remove(url);
+        }
+        if (preload == null)
+            return false;
+        int state = preload.state;
+        preload.cancel();
+        return state == RUNNING || state == DONE;
+    }
+
+    void cancel(@NonNull String url) {
+        PreloadTask preload;
+        synchronized (mPreloads) {
+            preload = mPreloads.remove(url);
+        }
+        if (preload != null)
+            preload.cancel();
+    }
+
+    void cancelAll() {
+        List<PreloadTask> preloads;
+        synchronized (mPreloads) {
+            preloads = new ArrayList<>(mPreloads.values());
+            mPreloads.clear();
+        }
+        for (PreloadTask preload : preloads) {
+            preload.cancel();
+        }
+    }
+
+    private class PreloadTask implements Runnable {
+        final String url;
+        final long bytes;
+        final FutureTask<Void> task;
+        volatile int state = QUEUED;
+        private volatile CacheMediaDataSource dataSource;
+
+        PreloadTask(String url, long bytes) {
+            this.url = url;
+            this.bytes = bytes;
+            this.task = new FutureTask<>(this, null);
+        }
+
+        /**
+         * Stop this preload, a finished preload keeps its state
+         */
+        void cancel() {
+            synchronized (mPreloads) {
+                if (state < DONE)
+                    state = CANCELLED;
+            }
+            task.cancel(true);
+            mExecutor.remove(task);
+            CacheMediaDataSource source = dataSource;
+            if (source != null)
+                source.abort();
+        }
+
+        @Override
+        public void run() {
+            synchronized (mPreloads) {
+                if (state != QUEUED)
+                    return;
+                state = RUNNING;
+            }
+            CacheMediaDataSource source = new CacheMediaDataSource(mCache, url);
+            dataSource = source;
+            // cancel may have missed the source, it's set before state is checked
+            if (state == CANCELLED)
+                source.abort();
+            boolean done = source.prefetch(bytes);
+            dataSource = null;
+            source.close();
+            synchronized (mPreloads) {
+                if (state == RUNNING)
+                    state = done ? DONE : FAILED;
+                if (state == FAILED && mPreloads.get(url) == this)
+                    mPreloads.remove(url);
+            }
+            Log.i("FIJKPLAYER", "preload " + (done ? "done " : "stopped ") + url);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent map from int id to value, safe to use from any thread without locks.
+ *
+ * <p>Player ids are small increasing ints, so values are kept in a two-level table indexed by id
+ * instead of hashing boxed keys. Segments are created on first use with a CAS, and dropped from
+ * the table when their last value is removed, so ids which only grow don't leave empty segments
+ * behind. Ids out of the table range are kept in an overflow {@link ConcurrentHashMap}.
+ *
+ * <p>{@link #values()} and {@link #size()} are weakly consistent, as of the iterators of
+ * java.util.concurrent collections.
+ */
+final class FijkRegistry<T> {
+
+    final private static int SEGMENT_SHIFT = 10;
+    final private static int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    final private static int SEGMENT_COUNT = 1 << 12;
+
+    final private AtomicReferenceArray<Segment<T>> mSegments = new AtomicReferenceArray<>(SEGMENT_COUNT);
+    final private Map<Integer, T> mOverflow = new ConcurrentHashMap<>();
+    final private AtomicInteger mSize = new AtomicInteger(0);
+
+    private static class Segment<T> {
+        final AtomicReferenceArray<T> slots = new AtomicReferenceArray<>(SEGMENT_SIZE);
+        // count of values and puts in progress, -1 once the segment is dropped from the table
+        final AtomicInteger count = new AtomicInteger(0);
+    }
+
+    private static boolean inTable(int id) {
+        return id >= 0 && (id >>> SEGMENT_SHIFT) < SEGMENT_COUNT;
+    }
+
+    /**
+     * Associate value with id
+     *
+     * @return previous value of id, or null
+     */
+    @Nullable
+    T put(int id, @NonNull T value) {
+        T prev;
+        if (inTable(id)) {
+            final int index = id >>> SEGMENT_SHIFT;
+            Segment<T> segment;
+            while (true) {
+                segment = mSegments.get(index);
+                if (segment == null) {
+                    mSegments.compareAndSet(index, null, new Segment<T>());
+                    continue;
+                }
+                int count = segment.count.get();
+                if (count < 0) {
+                    // dropped by remove, help to clear it from the table
+                    mSegments.compareAndSet(index, segment, null);
+                    continue;
+                }
+                // count the value before it's stored, so the segment can't be dropped under it
+                if (segment.count.compareAndSet(count, count + 1))
+                    break;
+            }
+            prev = segment.slots.getAndSet(id & (SEGMENT_SIZE - 1), value);
+            if (prev != null)
+                segment.count.decrementAndGet();
+        } else {
+            prev = mOverflow.put(id, value);
+        }
+        if (prev == null)
+            mSize.incrementAndGet();
+        return prev;
+    }
+
+    @Nullable
+    T get(int id) {
+        if (inTable(id)) {
+            Segment<T> segment = mSegments.get(id >>> SEGMENT_SHIFT);
+            return segment != null ? segment.slots.get(id & (SEGMENT_SIZE - 1)) : null;
+        }
+        return mOverflow.get(id);
+    }
+
+    /**
+     * Remove the value of id
+     *
+     * @return removed value, or null if id is absent. Only one of concurrent callers gets the value.
+     */
+    @Nullable
+    T remove(int id) {
+        T prev;
+        if (inTable(id)) {
+            final int index = id >>> SEGMENT_SHIFT;
+            Segment<T> segment = mSegments.get(index);
+            prev = segment != null ? segment.slots.getAndSet(id & (SEGMENT_SIZE - 1), null) : null;
+            // drop the segment with its last value, unless a put comes in first
+            if (prev != null && segment.count.decrementAndGet() == 0 && segment.count.compareAndSet(0, -1))
+                mSegments.compareAndSet(index, segment, null);
+        } else {
+            prev = mOverflow.remove(id);
+        }
+        if (prev != null)
+            mSize.decrementAndGet();
+        return prev;
+    }
+
+    int size() {
+        return mSize.get();
+    }
+
+    /**
+     * @return count of segments in the table
+     */
+    int segmentCount() {
+        int count = 0;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            if (mSegments.get(i) != null)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Snapshot of values in id order, overflow values at last
+     */
+    @NonNull
+    List<T> values() {
+        final List<T> list = new ArrayList<>(Math.max(mSize.get(), 0));
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            Segment<T> segment = mSegments.get(i);
+            if (segment == null)
+                continue;
+            for (int j = 0; j < SEGMENT_SIZE; j++) {
+                T value = segment.slots.get(j);
+                if (value != null)
+                    list.add(value);
+            }
+        }
+        list.addAll(mOverflow.values());
+        return list;
+    }
+}
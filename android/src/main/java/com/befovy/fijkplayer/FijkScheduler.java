@@ -0,0 +1,337 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.flutter.plugin.common.EventChannel;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * Global decode budget shared by all players of a plugin.
+ *
+ * <p>At most maxActive players decode at the same time. When a player starts over the budget,
+ * the active player of the lowest priority is suspended (paused) and resumed later when a slot
+ * is free, or the starting player waits itself if it has the lowest priority. Among players of
+ * the same priority, the most recently started wins. A waiting player of higher priority than
+ * an active one takes its slot when priorities change.
+ * maxBufferBytes is a global cap on max-buffer-size of all prepared players. A preparing player
+ * gets an even share of it, or what is left by other players if that is less, but no less than
+ * 256KB. Players of negative priority are prepared with max-fps lowPriorityFps. ijkplayer reads
+ * max-fps at prepare, so a priority change of a prepared player takes effect at its next prepare.
+ * Every decision is sent as a "scheduler" event on the plugin event channel.
+ *
+ * <p>All budgets are 0 by default, which means no limit.
+ * Methods are called on main thread, except {@link #applyLimits}.
+ */
+final class FijkScheduler {
+
+    final private static long MIN_BUFFER_BYTES = 256 * 1024;
+
+    private static final class Entry {
+        final FijkPlayer player;
+        // counted in the budget, set before the native player really starts
+        boolean active = false;
+        // wants to play, but suspended or not started by scheduler
+        boolean waiting = false;
+        long order = 0;
+
+        Entry(FijkPlayer player) {
+            this.player = player;
+        }
+    }
+
+    final private EventChannel.EventSink mEventSink;
+    final private Handler mMainHandler = new Handler(Looper.getMainLooper());
+    final private Map<Integer, Entry> mEntries = new HashMap<>();
+    // read by applyLimits from player threads
+    final private Map<Integer, Integer> mPriorities = new ConcurrentHashMap<>();
+    final private AtomicInteger mLiveCount = new AtomicInteger(0);
+    // max-buffer-size granted to prepared players, guarded by itself
+    final private Map<Integer, Long> mGranted = new HashMap<>();
+    private volatile int mMaxActive = 0;
+    private volatile long mMaxBufferBytes = 0;
+    private volatile int mLowPriorityFps = 0;
+    private long mOrder = 0;
+
+    FijkScheduler(@NonNull EventChannel.EventSink eventSink) {
+        mEventSink = eventSink;
+    }
+
+    void configure(int maxActive, long maxBufferBytes, int lowPriorityFps) {
+        mMaxActive = Math.max(maxActive, 0);
+        mMaxBufferBytes = Math.max(maxBufferBytes, 0);
+        mLowPriorityFps = Math.max(lowPriorityFps, 0);
+        enforce();
+    }
+
+    void add(@NonNull FijkPlayer player) {
+        if (mEntries.put(player.getPlayerId(), new Entry(player)) == null)
+            mLiveCount.incrementAndGet();
+    }
+
+    void remove(@NonNull FijkPlayer player) {
+        mPriorities.remove(player.getPlayerId());
+        releaseLimits(player);
+        Entry entry = mEntries.remove(player.getPlayerId());
+        if (entry != null) {
+            mLiveCount.decrementAndGet();
+            if (entry.active)
+                promote();
+        }
+    }
+
+    void setPriority(int playerId, int priority) {
+        mPriorities.put(playerId, priority);
+        enforce();
+    }
+
+    private int priority(int playerId) {
+        Integer priority = mPriorities.get(playerId);
+        return priority != null ? priority : 0;
+    }
+
+    /**
+     * Called when start is requested for player
+     *
+     * @return true if player can start now, false if it waits for a free slot
+     */
+    boolean admit(@NonNull FijkPlayer player) {
+        Entry entry = mEntries.get(player.getPlayerId());
+        if (entry == null)
+            return true;
+        entry.waiting = false;
+        entry.order = ++mOrder;
+        if (mMaxActive <= 0 || entry.active || activeCount() < mMaxActive) {
+            entry.active = true;
+            return true;
+        }
+        Entry lowest = lowestActive();
+        if (lowest != null && outranks(entry, lowest)) {
+            suspend(lowest);
+            entry.active = true;
+            return true;
+        }
+        entry.waiting = true;
+        sendEvent(entry, "wait");
+        return false;
+    }
+
+    /**
+     * Player paused by user, it's no longer waiting to be resumed
+     */
+    void onPause(@NonNull FijkPlayer player) {
+        Entry entry = mEntries.get(player.getPlayerId());
+        if (entry != null)
+            entry.waiting = false;
+    }
+
+    /**
+     * Native player entered started state, maybe without admit (start-on-prepared)
+     */
+    void onStarted(@NonNull FijkPlayer player) {
+        Entry entry = mEntries.get(player.getPlayerId());
+        if (entry == null)
+            return;
+        if (!entry.active) {
+            entry.active = true;
+            entry.order = ++mOrder;
+        }
+        entry.waiting = false;
+        enforce();
+    }
+
+    /**
+     * Native player left started state
+     */
+    void onStopped(@NonNull FijkPlayer player) {
+        Entry entry = mEntries.get(player.getPlayerId());
+        if (entry == null || !entry.active)
+            return;
+        entry.active = false;
+        promote();
+    }
+
+    /**
+     * Set buffer and frame rate limits of player before it prepares, called on the player thread
+     *
+     * @return max-buffer-size set for player, or 0
+     */
+    long applyLimits(@NonNull FijkPlayer player, @NonNull IjkMediaPlayer mediaPlayer) {
+        final int playerId = player.getPlayerId();
+        final long maxBufferBytes = mMaxBufferBytes;
+        final int lowPriorityFps = mLowPriorityFps;
+        long bufferBytes = 0;
+        int fps = 0;
+        if (maxBufferBytes > 0) {
+            bufferBytes = grant(playerId, maxBufferBytes);
+            mediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "max-buffer-size", bufferBytes);
+        }
+        if (lowPriorityFps > 0 && priority(playerId) < 0) {
+            fps = lowPriorityFps;
+            mediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "max-fps", fps);
+        }
+        if (bufferBytes > 0 || fps > 0) {
+            final Map<String, Object> event = event(playerId, "limit");
+            event.put("bufferBytes", bufferBytes);
+            event.put("fps", fps);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mEventSink.success(event);
+                }
+            });
+        }
+        return bufferBytes;
+    }
+
+    /**
+     * Give back max-buffer-size granted to player, its native player is reset or released.
+     * Called on any thread.
+     */
+    void releaseLimits(@NonNull FijkPlayer player) {
+        synchronized (mGranted) {
+            mGranted.remove(player.getPlayerId());
+        }
+    }
+
+    private long grant(int playerId, long maxBufferBytes) {
+        synchronized (mGranted) {
+            mGranted.remove(playerId);
+            long granted = 0;
+            for (long bytes : mGranted.values())
+                granted += bytes;
+            long share = Math.min(maxBufferBytes / Math.max(mLiveCount.get(), 1), maxBufferBytes - granted);
+            share = Math.max(share, MIN_BUFFER_BYTES);
+            mGranted.put(playerId, share);
+            return share;
+        }
+    }
+
+    private void enforce() {
+        if (mMaxActive > 0) {
+            while (activeCount() > mMaxActive) {
+                Entry lowest = lowestActive();
+                if (lowest == null)
+                    break;
+                suspend(lowest);
+            }
+            // preempt active players of lower priority than a waiting one
+            while (true) {
+                Entry highest = highestWaiting();
+                Entry lowest = lowestActive();
+                if (highest == null || lowest == null
+                        || priority(highest.player.getPlayerId()) <= priority(lowest.player.getPlayerId()))
+                    break;
+                suspend(lowest);
+                resume(highest);
+            }
+        }
+        promote();
+    }
+
+    private void promote() {
+        while (mMaxActive <= 0 || activeCount() < mMaxActive) {
+            Entry highest = highestWaiting();
+            if (highest == null)
+                break;
+            resume(highest);
+        }
+    }
+
+    private void resume(Entry entry) {
+        entry.waiting = false;
+        entry.active = true;
+        entry.player.scheduleStart();
+        sendEvent(entry, "resume");
+    }
+
+    private void suspend(Entry entry) {
+        entry.active = false;
+        entry.waiting = true;
+        entry.player.schedulePause();
+        sendEvent(entry, "suspend");
+    }
+
+    private int activeCount() {
+        int count = 0;
+        for (Entry entry : mEntries.values()) {
+            if (entry.active)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * a outranks b if it has higher priority, or the same priority and started later
+     */
+    private boolean outranks(Entry a, Entry b) {
+        int pa = priority(a.player.getPlayerId());
+        int pb = priority(b.player.getPlayerId());
+        return pa > pb || (pa == pb && a.order > b.order);
+    }
+
+    @Nullable
+    private Entry lowestActive() {
+        Entry lowest = null;
+        for (Entry entry : mEntries.values()) {
+            if (entry.active && (lowest == null || outranks(lowest, entry)))
+                lowest = entry;
+        }
+        return lowest;
+    }
+
+    @Nullable
+    private Entry highestWaiting() {
+        Entry highest = null;
+        for (Entry entry : mEntries.values()) {
+            if (entry.waiting && (highest == null || outranks(entry, highest)))
+                highest = entry;
+        }
+        return highest;
+    }
+
+    private Map<String, Object> event(int playerId, String action) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("event", "scheduler");
+        event.put("pid", playerId);
+        event.put("action", action);
+        return event;
+    }
+
+    private void sendEvent(Entry entry, String action) {
+        Map<String, Object> event = event(entry.player.getPlayerId(), action);
+        event.put("priority", priority(entry.player.getPlayerId()));
+        mEventSink.success(event);
+    }
+}
@@ -0,0 +1,154 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.view.PixelCopy;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Capture the last frame rendered to a player's surface.
+ *
+ * <p>Pixels are copied into a pooled bitmap by {@link PixelCopy}, and encoded on a shared
+ * background thread, as png, jpeg or raw rgba bytes. The bitmap goes back to the pool after
+ * encoding, so repeated captures of the same size do not allocate bitmaps.
+ */
+final class FijkSnapshot {
+
+    interface Callback {
+        /**
+         * Called on main thread
+         *
+         * @param snapshot map with data, width, height and format, or null if failed
+         * @param error    reason of failure
+         */
+        void onSnapshot(@Nullable Map<String, Object> snapshot, @Nullable String error);
+    }
+
+    final static String FORMAT_PNG = "png";
+    final static String FORMAT_JPEG = "jpeg";
+    final static String FORMAT_RGBA = "rgba";
+
+    private static Handler sWorkHandler;
+
+    final private FijkBitmapPool mBitmapPool;
+    final private Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // only touched on work thread
+    final private ByteArrayOutputStream mOutput = new ByteArrayOutputStream();
+
+    FijkSnapshot(@NonNull FijkBitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    private static synchronized Handler workHandler() {
+        if (sWorkHandler == null) {
+            HandlerThread thread = new HandlerThread("fijk-snapshot", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sWorkHandler = new Handler(thread.getLooper());
+        }
+        return sWorkHandler;
+    }
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+    }
+
+    /**
+     * Capture surface into a width x height image, scaled if the size is different from the frame
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    void take(@NonNull Surface surface, int width, int height, @NonNull final String format,
+              final int quality, @NonNull final Callback callback) {
+        if (!isSupported()) {
+            callback.onSnapshot(null, "snapshot requires android 7.0");
+            return;
+        }
+        if (width <= 0 || height <= 0) {
+            callback.onSnapshot(null, "no video frame");
+            return;
+        }
+        final Bitmap bitmap = mBitmapPool.acquire(width, height);
+        try {
+            PixelCopy.request(surface, bitmap, new PixelCopy.OnPixelCopyFinishedListener() {
+                @Override
+                public void onPixelCopyFinished(int copyResult) {
+                    if (copyResult == PixelCopy.SUCCESS) {
+                        deliver(encode(bitmap, format, quality), null, callback);
+                    } else {
+                        deliver(null, "pixel copy failed " + copyResult, callback);
+                    }
+                    mBitmapPool.release(bitmap);
+                }
+            }, workHandler());
+        } catch (IllegalArgumentException e) {
+            // surface is released or invalid
+            mBitmapPool.release(bitmap);
+            callback.onSnapshot(null, e.getMessage());
+        }
+    }
+
+    private Map<String, Object> encode(Bitmap bitmap, String format, int quality) {
+        byte[] data;
+        if (FORMAT_RGBA.equals(format)) {
+            data = new byte[bitmap.getWidth() * bitmap.getHeight() * 4];
+            // ARGB_8888 is stored as R, G, B, A bytes in memory
+            bitmap.copyPixelsToBuffer(ByteBuffer.wrap(data));
+        } else {
+            mOutput.reset();
+            Bitmap.CompressFormat compressFormat = FORMAT_JPEG.equals(format) ?
+                    Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG;
+            bitmap.compress(compressFormat, quality, mOutput);
+            data = mOutput.toByteArray();
+        }
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("data", data);
+        snapshot.put("width", bitmap.getWidth());
+        snapshot.put("height", bitmap.getHeight());
+        snapshot.put("format", format);
+        return snapshot;
+    }
+
+    private void deliver(final Map<String, Object> snapshot, final String error, final Callback callback) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onSnapshot(snapshot, error);
+            }
+        });
+    }
+}
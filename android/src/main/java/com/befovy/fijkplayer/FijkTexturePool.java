@@ -0,0 +1,152 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.graphics.SurfaceTexture;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.view.TextureRegistry;
+
+/**
+ * Bounded pool of flutter textures and the {@link Surface}s rendering to them.
+ *
+ * <p>Textures of released players are kept while fewer than maxIdle textures are idle, and
+ * handed out to new players, the most recently recycled first. A player gets its texture before
+ * the video size is known, so the texture is not picked by size, its buffers are resized on the
+ * first video size of the new player, and only if the size differs.
+ * A reused texture keeps its id, so player churn does not reallocate textures.
+ * It also keeps the last frame of its previous player, FijkView shows the texture only after
+ * video rendering of the new player started.
+ *
+ * <p>This class is not thread-safe. All calls must be done on the main thread.
+ */
+final class FijkTexturePool {
+
+    final static int DEFAULT_MAX_IDLE = 2;
+
+    static final class Texture {
+        final TextureRegistry.SurfaceTextureEntry entry;
+        final SurfaceTexture surfaceTexture;
+        final Surface surface;
+        private int width = 0;
+        private int height = 0;
+
+        private Texture(@NonNull TextureRegistry.SurfaceTextureEntry entry) {
+            this.entry = entry;
+            this.surfaceTexture = entry.surfaceTexture();
+            this.surface = new Surface(surfaceTexture);
+        }
+
+        long id() {
+            return entry.id();
+        }
+
+        /**
+         * Size the texture buffers for the content, called when video size changed
+         */
+        void resize(int width, int height) {
+            if (width > 0 && height > 0 && (width != this.width || height != this.height)) {
+                this.width = width;
+                this.height = height;
+                surfaceTexture.setDefaultBufferSize(width, height);
+            }
+        }
+
+        private void release() {
+            entry.release();
+            surfaceTexture.release();
+            surface.release();
+        }
+    }
+
+    final private FijkEngine mEngine;
+    final private ArrayDeque<Texture> mIdle = new ArrayDeque<>();
+    private int mMaxIdle = DEFAULT_MAX_IDLE;
+
+    private long mAcquireCount = 0;
+    private long mHitCount = 0;
+
+    FijkTexturePool(@NonNull FijkEngine engine) {
+        mEngine = engine;
+    }
+
+    /**
+     * Get the most recently recycled idle texture, or create a new one
+     *
+     * @return null if no flutter texture registry
+     */
+    @Nullable
+    Texture acquire() {
+        mAcquireCount++;
+        Texture texture = mIdle.pollFirst();
+        if (texture != null) {
+            mHitCount++;
+            return texture;
+        }
+        TextureRegistry.SurfaceTextureEntry entry = mEngine.createSurfaceEntry();
+        return entry != null ? new Texture(entry) : null;
+    }
+
+    /**
+     * Give back a texture no longer rendered to, it's released if the pool is full
+     */
+    void recycle(@NonNull Texture texture) {
+        if (mIdle.size() < mMaxIdle) {
+            mIdle.addFirst(texture);
+        } else {
+            texture.release();
+        }
+    }
+
+    void setMaxIdle(int maxIdle) {
+        mMaxIdle = Math.max(maxIdle, 0);
+        while (mIdle.size() > mMaxIdle) {
+            mIdle.removeLast().release();
+        }
+    }
+
+    void clear() {
+        while (!mIdle.isEmpty()) {
+            mIdle.removeLast().release();
+        }
+    }
+
+    @NonNull
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxIdle", mMaxIdle);
+        stats.put("idle", mIdle.size());
+        stats.put("acquire", mAcquireCount);
+        stats.put("hit", mHitCount);
+        stats.put("hitRate", mAcquireCount > 0 ? (double) mHitCount / mAcquireCount : 0.0);
+        return stats;
+    }
+}
@@ -0,0 +1,292 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.flutter.plugin.common.MethodChannel;
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * Headless extractor of preview frames, without creating a player.
+ *
+ * <p>Frames are decoded by {@link MediaMetadataRetriever} at the key frame closest to each
+ * requested time, scaled to the requested size, and kept in a memory LRU cache keyed by url,
+ * time and size. A batch of frames is returned as a list of jpeg images, or as one jpeg sprite
+ * sheet in a grid, in one reply.
+ *
+ * <p>On Android 6.0 and above, data is read by the same {@link IMediaDataSource}s as players,
+ * so assets are supported and http(s) media shares the disk cache with players.
+ */
+final class FijkThumbnailer {
+
+    final private static int MAX_CONCURRENT = 2;
+    final private static int MAX_QUEUED = 8;
+    final private static int MAX_FRAMES = 100;
+    final private static int DEFAULT_CACHE_BYTES = 8 * 1024 * 1024;
+
+    final private FijkEngine mEngine;
+    final private ThreadPoolExecutor mExecutor;
+    final private LruCache<String, Bitmap> mFrames;
+
+    FijkThumbnailer(@NonNull FijkEngine engine) {
+        mEngine = engine;
+        mExecutor = new ThreadPoolExecutor(MAX_CONCURRENT, MAX_CONCURRENT,
+                30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory() {
+            final private AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "fijk-thumbnail-" + count.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+        mFrames = new LruCache<String, Bitmap>(DEFAULT_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Extract frames in background, result is replied on main thread.
+     *
+     * @param times    frame times in milliseconds, if null, frames are taken every interval
+     *                 milliseconds from 0, count frames or to the end of media
+     * @param columns  columns of sprite sheet, frames are returned as separate images if 0
+     */
+    void extract(@NonNull final String url, @Nullable final List<Number> times,
+                 final long interval, final int count, final int width, final int height,
+                 final int columns, final int quality, @NonNull MethodChannel.Result result) {
+        final MethodChannel.Result mainResult = new MainResult(result);
+        if (width <= 0 || height <= 0) {
+            result.error("-1", "invalid thumbnail size " + width + "x" + height, null);
+            return;
+        }
+        if (times == null && interval <= 0) {
+            result.error("-1", "times or interval is required", null);
+            return;
+        }
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+                    try {
+                        setDataSource(retriever, url);
+                        List<Long> frameTimes = frameTimes(retriever, times, interval, count);
+                        List<Bitmap> frames = new ArrayList<>(frameTimes.size());
+                        for (long ms : frameTimes) {
+                            frames.add(frameAt(retriever, url, ms, width, height));
+                        }
+                        mainResult.success(encode(frames, frameTimes, width, height, columns, quality));
+                    } catch (Exception e) {
+                        Log.w("FIJKPLAYER", "thumbnail failed " + url + ", " + e.getMessage());
+                        mainResult.error("-1", "thumbnail failed: " + e.getMessage(), null);
+                    } finally {
+                        retriever.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.error("-1", "too many thumbnail requests", null);
+        }
+    }
+
+    void clearCache() {
+        mFrames.evictAll();
+    }
+
+    void setDataSource(MediaMetadataRetriever retriever, String url) throws IOException {
+        Uri uri = Uri.parse(url);
+        Context context = mEngine.context();
+        String scheme = uri.getScheme();
+        if ("asset".equals(scheme)) {
+            String host = uri.getHost();
+            String path = uri.getPath() != null ? uri.getPath().substring(1) : "";
+            String asset = mEngine.lookupKeyForAsset(path, host);
+            if (context == null)
+                throw new IOException("context null");
+            AssetManager assetManager = context.getAssets();
+            String assetPath = !TextUtils.isEmpty(asset) ? asset : path;
+            try {
+                AssetFileDescriptor afd = assetManager.openFd(assetPath);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    retriever.setDataSource(new MediaDataSourceAdapter(new AssetMediaDataSource(afd)));
+                } else {
+                    try {
+                        retriever.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+                    } finally {
+                        afd.close();
+                    }
+                }
+            } catch (FileNotFoundException e) {
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M)
+                    throw e;
+                InputStream is = assetManager.open(assetPath, AssetManager.ACCESS_RANDOM);
+                retriever.setDataSource(new MediaDataSourceAdapter(new RawMediaDataSource(is)));
+            }
+        } else if (TextUtils.isEmpty(scheme) || "file".equals(scheme)) {
+            retriever.setDataSource(uri.getPath());
+        } else if ("http".equals(scheme) || "https".equals(scheme)) {
+            FijkDiskCache cache = mEngine.diskCache();
+            if (cache != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                retriever.setDataSource(new MediaDataSourceAdapter(new CacheMediaDataSource(cache, url)));
+            } else {
+                retriever.setDataSource(url, new HashMap<String, String>());
+            }
+        } else {
+            retriever.setDataSource(url, new HashMap<String, String>());
+        }
+    }
+
+    private static List<Long> frameTimes(MediaMetadataRetriever retriever, @Nullable List<Number> times,
+                                         long interval, int count) {
+        List<Long> frameTimes = new ArrayList<>();
+        if (times != null) {
+            for (Number time : times) {
+                if (frameTimes.size() >= MAX_FRAMES)
+                    break;
+                frameTimes.add(time.longValue());
+            }
+            return frameTimes;
+        }
+        long duration = -1;
+        String d = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+        if (d != null) {
+            try {
+                duration = Long.parseLong(d);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        int max = count > 0 ? Math.min(count, MAX_FRAMES) : MAX_FRAMES;
+        for (long ms = 0; frameTimes.size() < max && (duration < 0 || ms < duration); ms += interval) {
+            frameTimes.add(ms);
+            if (duration < 0 && count <= 0)
+                break;
+        }
+        return frameTimes;
+    }
+
+    @Nullable
+    private Bitmap frameAt(MediaMetadataRetriever retriever, String url, long ms, int width, int height) {
+        final String key = url + "#" + ms + "@" + width + "x" + height;
+        Bitmap frame = mFrames.get(key);
+        if (frame != null)
+            return frame;
+        final long us = ms * 1000;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            frame = retriever.getScaledFrameAtTime(us, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, width, height);
+        } else {
+            Bitmap full = retriever.getFrameAtTime(us, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            if (full != null) {
+                frame = Bitmap.createScaledBitmap(full, width, height, true);
+                if (frame != full)
+                    full.recycle();
+            }
+        }
+        if (frame != null)
+            mFrames.put(key, frame);
+        return frame;
+    }
+
+    private Map<String, Object> encode(List<Bitmap> frames, List<Long> times, int width, int height,
+                                       int columns, int quality) {
+        Map<String, Object> map = new HashMap<>();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        map.put("times", times);
+        if (columns > 0) {
+            // all frames in one sprite sheet, missing frames are left blank
+            int rows = (frames.size() + columns - 1) / columns;
+            int sheetWidth = width * Math.min(columns, Math.max(frames.size(), 1));
+            int sheetHeight = height * Math.max(rows, 1);
+            FijkBitmapPool pool = mEngine.bitmapPool();
+            Bitmap sheet = pool.acquire(sheetWidth, sheetHeight);
+            sheet.eraseColor(0);
+            Canvas canvas = new Canvas(sheet);
+            Rect dst = new Rect(0, 0, width, height);
+            for (int i = 0; i < frames.size(); i++) {
+                Bitmap frame = frames.get(i);
+                if (frame == null || frame.isRecycled())
+                    continue;
+                int left = (i % columns) * width;
+                int top = (i / columns) * height;
+                dst.set(left, top, left + width, top + height);
+                canvas.drawBitmap(frame, null, dst, null);
+            }
+            sheet.compress(Bitmap.CompressFormat.JPEG, quality, output);
+            pool.release(sheet);
+            map.put("data", output.toByteArray());
+            map.put("columns", Math.min(columns, Math.max(frames.size(), 1)));
+            map.put("rows", rows);
+        } else {
+            List<byte[]> images = new ArrayList<>(frames.size());
+            for (Bitmap frame : frames) {
+                if (frame == null || frame.isRecycled()) {
+                    images.add(null);
+                    continue;
+                }
+                output.reset();
+                frame.compress(Bitmap.CompressFormat.JPEG, quality, output);
+                images.add(output.toByteArray());
+            }
+            map.put("frames", images);
+        }
+        map.put("width", width);
+        map.put("height", height);
+        return map;
+    }
+}
@@ -0,0 +1,130 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * Opt-in warm up of the plugin, so that cold start and the first createPlayer don't pay for
+ * loading ijkplayer native libraries.
+ *
+ * <p>Native libraries are loaded on a background thread, then a player with its surface is
+ * created on main thread and kept in the player pool for the first createPlayer.
+ * No player is created if the pool keeps no idle players, see method call playerPool.
+ * Enable it at plugin attach time with application meta-data in AndroidManifest.xml
+ * <pre>
+ * &lt;meta-data android:name="com.befovy.fijkplayer.warm_up" android:value="true" /&gt;
+ * </pre>
+ * or call warmUp from dart later.
+ */
+final class FijkWarmUp {
+
+    final static String META_DATA_WARM_UP = "com.befovy.fijkplayer.warm_up";
+
+    final private FijkPlayerPool mPlayerPool;
+    final private Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private boolean mStarted = false;
+
+    private volatile long mLibraryNanos = -1;
+    private long mPlayerNanos = -1;
+    private long mSurfaceNanos = -1;
+    private long mTotalNanos = -1;
+
+    FijkWarmUp(@NonNull FijkPlayerPool playerPool) {
+        mPlayerPool = playerPool;
+    }
+
+    static boolean isEnabled(@NonNull Context context) {
+        try {
+            ApplicationInfo info = context.getPackageManager().getApplicationInfo(
+                    context.getPackageName(), PackageManager.GET_META_DATA);
+            Bundle metaData = info.metaData;
+            return metaData != null && metaData.getBoolean(META_DATA_WARM_UP, false);
+        } catch (PackageManager.NameNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Start warm up, only the first call takes effect. Must be called on main thread.
+     */
+    void start() {
+        if (mStarted)
+            return;
+        mStarted = true;
+        final long start = System.nanoTime();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long begin = System.nanoTime();
+                IjkMediaPlayer.loadLibrariesOnce(null);
+                mLibraryNanos = System.nanoTime() - begin;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        long begin = System.nanoTime();
+                        FijkPlayer player = mPlayerPool.warmUp();
+                        mPlayerNanos = System.nanoTime() - begin;
+                        if (player != null) {
+                            begin = System.nanoTime();
+                            player.setupSurface();
+                            mSurfaceNanos = System.nanoTime() - begin;
+                        }
+                        mTotalNanos = System.nanoTime() - start;
+                        Log.i("FIJKPLAYER", "warm up done in " + mTotalNanos / 1000 + "us, library "
+                                + mLibraryNanos / 1000 + "us");
+                    }
+                });
+            }
+        }, "fijk-warm-up");
+        thread.start();
+    }
+
+    /**
+     * Costs of each stage in microseconds, -1 if not done
+     */
+    @NonNull
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("started", mStarted);
+        stats.put("libraryUs", mLibraryNanos > 0 ? mLibraryNanos / 1000 : mLibraryNanos);
+        stats.put("playerUs", mPlayerNanos > 0 ? mPlayerNanos / 1000 : mPlayerNanos);
+        stats.put("surfaceUs", mSurfaceNanos > 0 ? mSurfaceNanos / 1000 : mSurfaceNanos);
+        stats.put("totalUs", mTotalNanos > 0 ? mTotalNanos / 1000 : mTotalNanos);
+        return stats;
+    }
+}
@@ -28,17 +28,68 @@ import android.util.Log;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
 
+/**
+ * {@link IMediaDataSource} for local files.
+ *
+ * <p>By default every {@link #readAt} is served by {@link RandomAccessFile#seek} and
+ * {@link RandomAccessFile#read}. When created with {@code mapped = true}, the file is
+ * memory mapped in windows of {@link #MAP_WINDOW} bytes, aligned to the window size, and reads are
+ * copied straight out of the {@link MappedByteBuffer}. The last {@link #KEPT_WINDOWS} windows are
+ * kept, so reads going back and forth across a window boundary reuse them.
+ *
+ * <p>A mapping is only unmapped when it is garbage collected. Playback which has read through a
+ * whole window, reading on from where the last read ended, maps the next one and resets the seek
+ * budget. Any other window is mapped for a seek, at most {@link #MAX_SEEK_MAPS} of them between two
+ * such playback steps. Further seeks are served by plain reads rather than leaving more windows
+ * behind, until playback moves on again. If mapping fails, the data source falls back to plain
+ * reads for good.
+ */
 class FileMediaDataSource implements IMediaDataSource {
+
+    final static int MAP_WINDOW = 16 * 1024 * 1024;
+    final static int KEPT_WINDOWS = 2;
+    final static int MAX_SEEK_MAPS = 16;
+
     private RandomAccessFile mFile;
+    private FileChannel mChannel;
     private long mFileSize;
+    private boolean mMapEnabled;
+    final private long mWindowSize;
+    // kept windows and their index in file, most recently used first
+    final private MappedByteBuffer[] mWindows = new MappedByteBuffer[KEPT_WINDOWS];
+    final private long[] mWindowIndex = new long[KEPT_WINDOWS];
+    // windows mapped for seeks since playback last moved on to the next window
+    private int mSeekMaps = 0;
+    // end of the last read, mapped or not, and the window where reading on from there started
+    private long mReadEnd = 0;
+    private long mReadFrom = 0;
 
     public FileMediaDataSource(File file) {
+        this(file, false);
+    }
+
+    FileMediaDataSource(File file, boolean mapped) {
+        this(file, mapped ? MAP_WINDOW : 0);
+    }
+
+    /**
+     * @param mapWindow size of memory mapped windows, 0 to read without mapping
+     */
+    FileMediaDataSource(File file, int mapWindow) {
+        mWindowSize = mapWindow;
+        Arrays.fill(mWindowIndex, -1);
         try {
             mFile = new RandomAccessFile(file, "r");
             mFileSize = mFile.length();
+            mMapEnabled = mapWindow > 0;
+            if (mMapEnabled)
+                mChannel = mFile.getChannel();
         } catch (IOException e) {
             mFile = null;
             mFileSize = -1;
@@ -52,15 +103,105 @@ class FileMediaDataSource implements IMediaDataSource {
             return 0;
         int length = -1;
         if (mFile != null) {
+            length = mMapEnabled ? readMapped(position, buffer, offset, size) : 0;
+            // no window for the position, plain read
+            if (length == 0) {
+                try {
+                    if (mFile.getFilePointer() != position)
+                        mFile.seek(position);
+                    length = mFile.read(buffer, offset, size);
+                } catch (IOException e) {
+                    Log.e("DataSource", "failed to read" + e.getMessage());
+                }
+            }
+            if (length > 0)
+                mReadEnd = position + length;
+        }
+        return length;
+    }
+
+    /**
+     * @return true if reads are still served from memory mapped windows
+     */
+    boolean isMapped() {
+        return mMapEnabled;
+    }
+
+    /**
+     * @return windows mapped for seeks since playback last moved on
+     */
+    int seekMaps() {
+        return mSeekMaps;
+    }
+
+    /**
+     * @return bytes copied, or -1 at end of file.
+     * If a window is not mapped, the bytes copied so far are returned.
+     */
+    private int readMapped(long position, byte[] buffer, int offset, int size) {
+        if (position >= mFileSize)
+            return -1;
+        int copied = 0;
+        if (position != mReadEnd)
+            mReadFrom = position / mWindowSize;
+        while (copied < size && position < mFileSize) {
+            long index = position / mWindowSize;
+            // reading on into a window after a whole one is playback, anything else is a seek
+            MappedByteBuffer window = window(index, position == index * mWindowSize && index - mReadFrom >= 2);
+            if (window == null)
+                return copied;
+            int inWindow = (int) (position - index * mWindowSize);
+            int n = Math.min(size - copied, window.limit() - inWindow);
+            window.position(inWindow);
+            window.get(buffer, offset + copied, n);
+            copied += n;
+            position += n;
+        }
+        return copied;
+    }
+
+    /**
+     * @return the window at index, mapped if it's not kept, null if it's not mapped
+     */
+    private MappedByteBuffer window(long index, boolean playback) {
+        int kept = 0;
+        while (kept < KEPT_WINDOWS && mWindowIndex[kept] != index)
+            kept++;
+        if (kept == KEPT_WINDOWS) {
+            if (playback) {
+                mSeekMaps = 0;
+            } else if (mSeekMaps < MAX_SEEK_MAPS) {
+                mSeekMaps++;
+            } else {
+                return null;
+            }
+            long start = index * mWindowSize;
+            long length = Math.min(mWindowSize, mFileSize - start);
             try {
-                if (mFile.getFilePointer() != position)
-                    mFile.seek(position);
-                length = mFile.read(buffer, 0, size);
+                kept = KEPT_WINDOWS - 1;
+                mWindows[kept] = mChannel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                mWindowIndex[kept] = index;
             } catch (IOException e) {
-                Log.e("DataSource", "failed to read" + e.getMessage());
+                Log.e("DataSource", "failed to map, fall back to read" + e.getMessage());
+                stopMapping();
+                return null;
             }
         }
-        return length;
+        // move the window to front
+        MappedByteBuffer window = mWindows[kept];
+        for (int i = kept; i > 0; i--) {
+            mWindows[i] = mWindows[i - 1];
+            mWindowIndex[i] = mWindowIndex[i - 1];
+        }
+        mWindows[0] = window;
+        mWindowIndex[0] = index;
+        return window;
+    }
+
+    private void stopMapping() {
+        mMapEnabled = false;
+        Arrays.fill(mWindows, null);
+        Arrays.fill(mWindowIndex, -1);
     }
 
     @Override
@@ -70,6 +211,8 @@ class FileMediaDataSource implements IMediaDataSource {
 
     @Override
     public void close() {
+        stopMapping();
+        mChannel = null;
         if (mFile != null) {
             try {
                 mFile.close();
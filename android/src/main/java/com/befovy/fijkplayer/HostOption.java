@@ -34,6 +34,24 @@ final class HostOption {
 
     final static String ENABLE_SNAPSHOT = "enable-snapshot";
 
+    final static String FILE_MMAP = "file-mmap";
+
+    final static String HTTP_CACHE = "http-cache";
+
+    final static String HTTP_CACHE_MAX_MB = "http-cache-max-mb";
+
+    final static String HTTP_PARALLEL = "http-parallel";
+
+    final static String EVENT_BATCH_INTERVAL = "event-batch-interval";
+
+    final static String BINARY_EVENT = "binary-event";
+
+    final static String SEEK_MODE = "seek-mode";
+
+    final static String EVENT_QUEUE_CAPACITY = "event-queue-capacity";
+
+    final static String EVENT_QUEUE_OVERFLOW = "event-queue-overflow";
+
     final private Map<String, Integer> mIntOption;
 
     final private Map<String, String> mStrOption;
@@ -45,6 +63,11 @@ final class HostOption {
     }
 
 
+    void clear() {
+        mIntOption.clear();
+        mStrOption.clear();
+    }
+
     void addIntOption(String key, Integer value) {
         mIntOption.put(key, value);
     }
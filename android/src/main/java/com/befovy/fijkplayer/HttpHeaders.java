@@ -0,0 +1,70 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Http headers of ijkplayer format options, for data sources which do http requests themselves.
+ *
+ * <p>ijkplayer takes extra headers from option {@code headers} as {@code "Name: value\r\n"} lines,
+ * and has separate options {@code user_agent} and {@code cookies}.
+ */
+final class HttpHeaders {
+
+    private HttpHeaders() {
+    }
+
+    @NonNull
+    static Map<String, String> of(@Nullable String headers, @Nullable String userAgent, @Nullable String cookies) {
+        Map<String, String> map = new LinkedHashMap<>();
+        if (headers != null) {
+            for (String line : headers.split("\r?\n")) {
+                int colon = line.indexOf(':');
+                if (colon <= 0)
+                    continue;
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.length() > 0)
+                    map.put(name, value);
+            }
+        }
+        if (userAgent != null && userAgent.length() > 0)
+            map.put("User-Agent", userAgent);
+        if (cookies != null && cookies.length() > 0)
+            map.put("Cookie", cookies);
+        return map.isEmpty() ? Collections.<String, String>emptyMap() : map;
+    }
+
+    static void apply(@NonNull HttpURLConnection conn, @NonNull Map<String, String> headers) {
+        for (Map.Entry<String, String> header : headers.entrySet())
+            conn.setRequestProperty(header.getKey(), header.getValue());
+    }
+}
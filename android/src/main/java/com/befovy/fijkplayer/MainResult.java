@@ -0,0 +1,99 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * {@link MethodChannel.Result} which can be completed from any thread,
+ * the reply is always delivered on the main thread, at once if it is completed on the main thread.
+ * Only the first reply is delivered, later ones are dropped.
+ */
+final class MainResult implements MethodChannel.Result {
+
+    final private static Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    final private MethodChannel.Result mResult;
+    final private AtomicBoolean mReplied = new AtomicBoolean(false);
+
+    MainResult(@NonNull MethodChannel.Result result) {
+        mResult = result;
+    }
+
+    @Override
+    public void success(@Nullable final Object o) {
+        if (mReplied.getAndSet(true))
+            return;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mResult.success(o);
+            return;
+        }
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mResult.success(o);
+            }
+        });
+    }
+
+    @Override
+    public void error(final String code, @Nullable final String message, @Nullable final Object details) {
+        if (mReplied.getAndSet(true))
+            return;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mResult.error(code, message, details);
+            return;
+        }
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mResult.error(code, message, details);
+            }
+        });
+    }
+
+    @Override
+    public void notImplemented() {
+        if (mReplied.getAndSet(true))
+            return;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mResult.notImplemented();
+            return;
+        }
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mResult.notImplemented();
+            }
+        });
+    }
+}
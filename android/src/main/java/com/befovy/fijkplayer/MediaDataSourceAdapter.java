@@ -0,0 +1,63 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.annotation.TargetApi;
+import android.media.MediaDataSource;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * Expose an ijkplayer {@link IMediaDataSource} as android {@link MediaDataSource},
+ * so that the same data sources can be read by MediaMetadataRetriever
+ */
+@TargetApi(Build.VERSION_CODES.M)
+final class MediaDataSourceAdapter extends MediaDataSource {
+
+    final private IMediaDataSource mDataSource;
+
+    MediaDataSourceAdapter(@NonNull IMediaDataSource dataSource) {
+        mDataSource = dataSource;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        return mDataSource.readAt(position, buffer, offset, size);
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return mDataSource.getSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mDataSource.close();
+    }
+}
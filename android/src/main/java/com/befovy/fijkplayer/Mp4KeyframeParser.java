@@ -0,0 +1,297 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * Reads the keyframes of the first video track of an MP4 / MOV file from its sample tables.
+ *
+ * <p>Top level boxes are walked through {@link IMediaDataSource#readAt} until moov is found, moov
+ * is then read at once and parsed in memory. Sync samples listed by stss are located with stts
+ * (decode time), stsc, stco / co64 and stsz (byte offset), and shifted by the edit list.
+ * Fragmented files keep their samples in moof boxes and are not supported.
+ */
+final class Mp4KeyframeParser {
+
+    // moov larger than this is not read, it holds the sample tables of many hours of video
+    final static int MAX_MOOV_SIZE = 32 * 1024 * 1024;
+    // top level boxes walked before giving up on finding moov
+    final private static int MAX_TOP_BOXES = 64;
+
+    final private static int MOOV = fourcc("moov");
+    final private static int MVHD = fourcc("mvhd");
+    final private static int MVEX = fourcc("mvex");
+    final private static int TRAK = fourcc("trak");
+    final private static int EDTS = fourcc("edts");
+    final private static int ELST = fourcc("elst");
+    final private static int MDIA = fourcc("mdia");
+    final private static int MDHD = fourcc("mdhd");
+    final private static int HDLR = fourcc("hdlr");
+    final private static int VIDE = fourcc("vide");
+    final private static int MINF = fourcc("minf");
+    final private static int STBL = fourcc("stbl");
+    final private static int STTS = fourcc("stts");
+    final private static int STSS = fourcc("stss");
+    final private static int STSC = fourcc("stsc");
+    final private static int STSZ = fourcc("stsz");
+    final private static int STCO = fourcc("stco");
+    final private static int CO64 = fourcc("co64");
+
+    private Mp4KeyframeParser() {
+    }
+
+    /**
+     * @return keyframes of the first video track, empty if every sample is a keyframe,
+     * or null if source is not a supported MP4
+     * @throws IOException if source fails to read a box it has
+     */
+    @Nullable
+    static FijkKeyframeIndex.Keyframes parse(@NonNull IMediaDataSource source) throws IOException {
+        long size = source.getSize();
+        byte[] header = new byte[8];
+        long position = 0;
+        for (int i = 0; i < MAX_TOP_BOXES; i++) {
+            if (size >= 0 && position + 8 > size)
+                return null;
+            readFully(source, position, header, 8);
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            long boxSize = buffer.getInt(0) & 0xffffffffL;
+            int type = buffer.getInt(4);
+            int headerSize = 8;
+            if (boxSize == 1) {
+                readFully(source, position + 8, header, 8);
+                boxSize = buffer.getLong(0);
+                headerSize = 16;
+            } else if (boxSize == 0) {
+                // last box, up to the end of file
+                if (size < 0)
+                    return null;
+                boxSize = size - position;
+            }
+            if (boxSize < headerSize)
+                return null;
+            if (type == MOOV) {
+                if (boxSize - headerSize > MAX_MOOV_SIZE)
+                    return null;
+                byte[] moov = new byte[(int) (boxSize - headerSize)];
+                readFully(source, position + headerSize, moov, moov.length);
+                try {
+                    return parseMoov(ByteBuffer.wrap(moov));
+                } catch (IndexOutOfBoundsException e) {
+                    // a table runs over the end of its box
+                    return null;
+                }
+            }
+            position += boxSize;
+        }
+        return null;
+    }
+
+    @Nullable
+    private static FijkKeyframeIndex.Keyframes parseMoov(ByteBuffer moov) {
+        int end = moov.capacity();
+        if (find(moov, 0, end, MVEX) != null)
+            return null;
+        int[] mvhd = find(moov, 0, end, MVHD);
+        if (mvhd == null)
+            return null;
+        long movieTimescale = moov.getInt(mvhd[0] + (version(moov, mvhd) == 1 ? 20 : 12)) & 0xffffffffL;
+        for (int[] trak = find(moov, 0, end, TRAK); trak != null; trak = find(moov, trak[1], end, TRAK)) {
+            int[] mdia = find(moov, trak[0], trak[1], MDIA);
+            int[] hdlr = mdia != null ? find(moov, mdia[0], mdia[1], HDLR) : null;
+            if (hdlr != null && moov.getInt(hdlr[0] + 8) == VIDE)
+                return parseTrack(moov, trak, mdia, movieTimescale);
+        }
+        return null;
+    }
+
+    @Nullable
+    private static FijkKeyframeIndex.Keyframes parseTrack(ByteBuffer moov, int[] trak, int[] mdia, long movieTimescale) {
+        int[] mdhd = find(moov, mdia[0], mdia[1], MDHD);
+        int[] minf = find(moov, mdia[0], mdia[1], MINF);
+        int[] stbl = minf != null ? find(moov, minf[0], minf[1], STBL) : null;
+        if (mdhd == null || stbl == null)
+            return null;
+        long timescale = moov.getInt(mdhd[0] + (version(moov, mdhd) == 1 ? 20 : 12)) & 0xffffffffL;
+        if (timescale == 0)
+            return null;
+
+        // the first edit which is not empty maps media time mediaStart to movie time delay
+        long delayMs = 0;
+        long mediaStart = 0;
+        int[] edts = find(moov, trak[0], trak[1], EDTS);
+        int[] elst = edts != null ? find(moov, edts[0], edts[1], ELST) : null;
+        if (elst != null) {
+            boolean v1 = version(moov, elst) == 1;
+            int entrySize = v1 ? 20 : 12;
+            int count = count(moov, elst, entrySize);
+            long emptyDuration = 0;
+            for (int i = 0; i < count; i++) {
+                int entry = elst[0] + 8 + i * entrySize;
+                long duration = v1 ? moov.getLong(entry) : moov.getInt(entry) & 0xffffffffL;
+                long mediaTime = v1 ? moov.getLong(entry + 8) : moov.getInt(entry + 4);
+                if (mediaTime < 0) {
+                    emptyDuration += duration;
+                } else {
+                    mediaStart = mediaTime;
+                    break;
+                }
+            }
+            if (movieTimescale > 0)
+                delayMs = emptyDuration * 1000 / movieTimescale;
+        }
+
+        int[] stss = find(moov, stbl[0], stbl[1], STSS);
+        int[] stts = find(moov, stbl[0], stbl[1], STTS);
+        int[] stsc = find(moov, stbl[0], stbl[1], STSC);
+        int[] stsz = find(moov, stbl[0], stbl[1], STSZ);
+        int[] stco = find(moov, stbl[0], stbl[1], STCO);
+        boolean co64 = stco == null;
+        if (co64)
+            stco = find(moov, stbl[0], stbl[1], CO64);
+        if (stss == null)
+            return FijkKeyframeIndex.Keyframes.EMPTY;
+        if (stts == null || stsc == null || stsz == null || stco == null)
+            return null;
+
+        int syncCount = count(moov, stss, 4);
+        int sttsCount = count(moov, stts, 8);
+        int stscCount = count(moov, stsc, 12);
+        int chunkCount = count(moov, stco, co64 ? 8 : 4);
+        int fixedSize = moov.getInt(stsz[0] + 4);
+        long sampleCount = moov.getInt(stsz[0] + 8) & 0xffffffffL;
+        if (fixedSize == 0 && count(moov, stsz, 4, 12) < sampleCount)
+            return null;
+        if (syncCount > FijkKeyframeIndex.MAX_KEYFRAMES || sttsCount == 0 || stscCount == 0)
+            return null;
+
+        int[] timeMs = new int[syncCount];
+        long[] offsets = new long[syncCount];
+        int found = 0;
+        int syncIndex = 0;
+        long nextSync = syncCount > 0 ? moov.getInt(stss[0] + 8) & 0xffffffffL : -1;
+        // cursors of stts and stsc
+        int sttsIndex = 0;
+        long sttsLeft = moov.getInt(stts[0] + 8) & 0xffffffffL;
+        long dts = 0;
+        int stscIndex = 0;
+        long sample = 1;
+        for (int chunk = 1; chunk <= chunkCount && nextSync >= 0 && sample <= sampleCount; chunk++) {
+            while (stscIndex + 1 < stscCount && (moov.getInt(stsc[0] + 8 + (stscIndex + 1) * 12) & 0xffffffffL) <= chunk)
+                stscIndex++;
+            long samplesInChunk = moov.getInt(stsc[0] + 8 + stscIndex * 12 + 4) & 0xffffffffL;
+            long offset = co64 ? moov.getLong(stco[0] + 8 + (chunk - 1) * 8)
+                    : moov.getInt(stco[0] + 8 + (chunk - 1) * 4) & 0xffffffffL;
+            for (long s = 0; s < samplesInChunk && nextSync >= 0 && sample <= sampleCount; s++, sample++) {
+                while (sttsLeft == 0 && sttsIndex + 1 < sttsCount)
+                    sttsLeft = moov.getInt(stts[0] + 8 + ++sttsIndex * 8) & 0xffffffffL;
+                // stss is sorted, skip broken entries pointing backwards
+                while (nextSync >= 0 && nextSync < sample)
+                    nextSync = ++syncIndex < syncCount ? moov.getInt(stss[0] + 8 + syncIndex * 4) & 0xffffffffL : -1;
+                if (nextSync == sample) {
+                    long ms = delayMs + (dts - mediaStart) * 1000 / timescale;
+                    timeMs[found] = (int) Math.max(0, Math.min(Integer.MAX_VALUE, ms));
+                    offsets[found] = offset;
+                    found++;
+                    nextSync = ++syncIndex < syncCount ? moov.getInt(stss[0] + 8 + syncIndex * 4) & 0xffffffffL : -1;
+                }
+                offset += fixedSize != 0 ? fixedSize & 0xffffffffL
+                        : moov.getInt(stsz[0] + 12 + (int) (sample - 1) * 4) & 0xffffffffL;
+                dts += moov.getInt(stts[0] + 8 + sttsIndex * 8 + 4) & 0xffffffffL;
+                sttsLeft--;
+            }
+        }
+        return new FijkKeyframeIndex.Keyframes(Arrays.copyOf(timeMs, found), Arrays.copyOf(offsets, found));
+    }
+
+    /**
+     * Find the first child box of type in [start, end)
+     *
+     * @return start and end of the payload, or null if not found
+     */
+    @Nullable
+    private static int[] find(ByteBuffer data, int start, int end, int type) {
+        int position = start;
+        while (position + 8 <= end) {
+            long size = data.getInt(position) & 0xffffffffL;
+            int headerSize = 8;
+            if (size == 1) {
+                if (position + 16 > end)
+                    return null;
+                size = data.getLong(position + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+            if (size < headerSize || size > end - position)
+                return null;
+            if (data.getInt(position + 4) == type)
+                return new int[]{position + headerSize, position + (int) size};
+            position += (int) size;
+        }
+        return null;
+    }
+
+    private static int version(ByteBuffer data, int[] box) {
+        return data.get(box[0]) & 0xff;
+    }
+
+    /**
+     * Entry count of a full box table, which follows version, flags and the count
+     */
+    private static int count(ByteBuffer data, int[] box, int entrySize) {
+        return count(data, box, entrySize, 8);
+    }
+
+    /**
+     * Entry count at tableStart - 4, capped by the entries the box can hold
+     */
+    private static int count(ByteBuffer data, int[] box, int entrySize, int tableStart) {
+        long count = data.getInt(box[0] + tableStart - 4) & 0xffffffffL;
+        long fits = Math.max(0, box[1] - box[0] - tableStart) / entrySize;
+        return (int) Math.min(count, fits);
+    }
+
+    private static void readFully(IMediaDataSource source, long position, byte[] buffer, int size) throws IOException {
+        int read = 0;
+        while (read < size) {
+            int n = source.readAt(position + read, buffer, read, size - read);
+            if (n <= 0)
+                throw new IOException("short read at " + (position + read));
+            read += n;
+        }
+    }
+
+    private static int fourcc(String type) {
+        return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+    }
+}
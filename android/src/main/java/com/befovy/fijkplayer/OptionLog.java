@@ -0,0 +1,125 @@
+//MIT License
+//
+//Copyright (c) [2019] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * ijkplayer options set on a player since its last reset, in the order they are set,
+ * to set them again on another native player.
+ *
+ * <p>Entries are kept in growing arrays, so recording an option doesn't allocate once the
+ * arrays are large enough. Host options are not recorded, they belong to the FijkPlayer.
+ *
+ * <p>This class is thread-safe.
+ */
+final class OptionLog {
+
+    private int mCount = 0;
+    private int[] mCategories = new int[16];
+    private String[] mNames = new String[16];
+    private long[] mIntValues = new long[16];
+    // null for int options
+    private String[] mStrValues = new String[16];
+
+    synchronized void add(int category, @NonNull String name, long value) {
+        append(category, name, value, null);
+    }
+
+    synchronized void add(int category, @NonNull String name, @NonNull String value) {
+        append(category, name, 0, value);
+    }
+
+    /**
+     * Record the ijkplayer options of profile
+     */
+    synchronized void add(@NonNull FijkOptionProfile profile) {
+        for (int i = 0; i < profile.size(); i++) {
+            if (!profile.isHostOption(i))
+                append(profile.categoryAt(i), profile.nameAt(i), profile.intValueAt(i), profile.strValueAt(i));
+        }
+    }
+
+    private void append(int category, String name, long intValue, String strValue) {
+        if (mCount == mNames.length) {
+            int capacity = mCount * 2;
+            mCategories = Arrays.copyOf(mCategories, capacity);
+            mNames = Arrays.copyOf(mNames, capacity);
+            mIntValues = Arrays.copyOf(mIntValues, capacity);
+            mStrValues = Arrays.copyOf(mStrValues, capacity);
+        }
+        mCategories[mCount] = category;
+        mNames[mCount] = name;
+        mIntValues[mCount] = intValue;
+        mStrValues[mCount] = strValue;
+        mCount++;
+    }
+
+    synchronized void clear() {
+        Arrays.fill(mNames, 0, mCount, null);
+        Arrays.fill(mStrValues, 0, mCount, null);
+        mCount = 0;
+    }
+
+    /**
+     * Set all recorded options on player, in the order they were recorded
+     */
+    synchronized void applyTo(@NonNull IjkMediaPlayer player) {
+        for (int i = 0; i < mCount; i++) {
+            if (mStrValues[i] != null)
+                player.setOption(mCategories[i], mNames[i], mStrValues[i]);
+            else
+                player.setOption(mCategories[i], mNames[i], mIntValues[i]);
+        }
+    }
+
+    /**
+     * @return value of the last String option of category and name, or def if none
+     */
+    synchronized String stringOption(int category, @NonNull String name, String def) {
+        for (int i = mCount - 1; i >= 0; i--) {
+            if (mStrValues[i] != null && mCategories[i] == category && name.equals(mNames[i]))
+                return mStrValues[i];
+        }
+        return def;
+    }
+
+    /**
+     * @return value of the last int option of category and name, or def if none
+     */
+    synchronized long intOption(int category, @NonNull String name, long def) {
+        for (int i = mCount - 1; i >= 0; i--) {
+            if (mStrValues[i] == null && mCategories[i] == category && name.equals(mNames[i]))
+                return mIntValues[i];
+        }
+        return def;
+    }
+
+    synchronized int size() {
+        return mCount;
+    }
+}
@@ -22,7 +22,13 @@
 
 package com.befovy.fijkplayer;
 
+import android.os.Handler;
+import android.os.Looper;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import io.flutter.plugin.common.EventChannel;
 
@@ -32,20 +38,185 @@ import io.flutter.plugin.common.EventChannel;
  * <p>It delivers messages immediately when downstream is available, but it queues messages before
  * the delegate event sink is set with setDelegate.
  *
+ * <p>When a batch interval is set with setBatchInterval, success events are held for one interval
+ * and then delivered as a single {@code {"event": "batch", "events": [...]}} message.
+ * Within the interval, a {@code pos}, {@code buffering} or {@code size_changed} event replaces
+ * the pending event of the same type, other events keep their order.
+ * Errors and end of stream flush the pending events immediately.
+ *
+ * <p>Queued events are kept in a ring buffer of {@link #DEFAULT_CAPACITY} events, see
+ * setCapacity. When it is full, an event is dropped as the overflow policy tells, so a player
+ * nobody listens to does not accumulate events for as long as it lives.
+ *
  * <p>This class is not thread-safe. All calls must be done on the same thread or synchronized
  * externally.
  */
 final class QueuingEventSink implements EventChannel.EventSink {
 
+    final static int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Drop the oldest queued event
+     */
+    final static int OVERFLOW_DROP_OLDEST = 0;
+    /**
+     * Drop the queued event of the same coalescing type as the new one,
+     * or the oldest queued coalescing event, or the oldest event if there's none
+     */
+    final static int OVERFLOW_DROP_SUPERSEDED = 1;
+    /**
+     * Drop new coalescing events, other events are critical and never dropped,
+     * the queue grows beyond its capacity for them if no coalescing event can be dropped
+     */
+    final static int OVERFLOW_KEEP_CRITICAL = 2;
+
+    // event types which can be replaced by a later event of the same type
+    final private static String[] COALESCE_EVENTS =
+            {"pos", "buffering", "size_changed"};
+
     private EventChannel.EventSink delegate;
-    private final ArrayList<Object> eventQueue = new ArrayList<>();
+
+    // ring buffer of queued events, null slots are events replaced or dropped in the middle
+    private Object[] ring = new Object[16];
+    private int head = 0;
+    private int count = 0;
+    // sequence number of the event at head, each queued event has a sequence number
+    private long headSeq = 0;
+    private int holes = 0;
+    private int capacity = DEFAULT_CAPACITY;
+    private int overflowPolicy = OVERFLOW_DROP_SUPERSEDED;
+    // sequence number of the pending event for each coalescing type, -1 if none
+    private final long[] coalesceSeq = new long[COALESCE_EVENTS.length];
     private boolean done = false;
 
+    private long batchInterval = 0;
+    private Handler handler;
+    private boolean flushScheduled = false;
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            maybeFlush();
+        }
+    };
+
+    private long sentCount = 0;
+    private long droppedCount = 0;
+    private long messageCount = 0;
+    private long overflowCount = 0;
+    private int maxDepth = 0;
+
+    QueuingEventSink() {
+        Arrays.fill(coalesceSeq, -1);
+    }
+
     public void setDelegate(EventChannel.EventSink delegate) {
         this.delegate = delegate;
         maybeFlush();
     }
 
+    /**
+     * @param interval batch interval in milliseconds, 0 or negative value disable batching
+     */
+    void setBatchInterval(long interval) {
+        interval = Math.max(interval, 0);
+        if (interval == batchInterval)
+            return;
+        batchInterval = interval;
+        if (interval == 0) {
+            if (handler != null)
+                handler.removeCallbacks(flushRunnable);
+            flushScheduled = false;
+            maybeFlush();
+        } else if (handler == null) {
+            handler = new Handler(Looper.getMainLooper());
+        }
+    }
+
+    /**
+     * @param capacity max count of queued events, 0 or negative value restores the default
+     */
+    void setCapacity(int capacity) {
+        this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        while (depth() > this.capacity) {
+            if (!dropForOverflow(null))
+                break;
+        }
+    }
+
+    /**
+     * @param policy one of OVERFLOW_DROP_OLDEST, OVERFLOW_DROP_SUPERSEDED and OVERFLOW_KEEP_CRITICAL
+     */
+    void setOverflowPolicy(int policy) {
+        if (policy < OVERFLOW_DROP_OLDEST || policy > OVERFLOW_KEEP_CRITICAL)
+            policy = OVERFLOW_DROP_SUPERSEDED;
+        overflowPolicy = policy;
+    }
+
+    /**
+     * Drop all queued events and disable batching, used when the owner player is recycled
+     */
+    void reset() {
+        if (handler != null)
+            handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        batchInterval = 0;
+        capacity = DEFAULT_CAPACITY;
+        overflowPolicy = OVERFLOW_DROP_SUPERSEDED;
+        clearQueue();
+        done = false;
+    }
+
+    /**
+     * @return count of events delivered to the delegate
+     */
+    long sentCount() {
+        return sentCount;
+    }
+
+    /**
+     * @return count of events replaced by a newer event of the same type
+     */
+    long droppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return count of messages delivered to the delegate, a batch is one message
+     */
+    long messageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return count of events dropped because the queue is full
+     */
+    long overflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * @return count of events waiting in queue
+     */
+    int depth() {
+        return count - holes;
+    }
+
+    /**
+     * @return true if an event would be delivered to the delegate right now, as it is,
+     * so it can be sent on another channel without changing the order of events
+     */
+    boolean passThrough() {
+        return delegate != null && batchInterval == 0 && depth() == 0 && !done;
+    }
+
+    /**
+     * @return max count of events waiting in queue since this sink is created
+     */
+    int maxDepth() {
+        return maxDepth;
+    }
+
     @Override
     public void endOfStream() {
         enqueue(new EndOfStreamEvent());
@@ -62,31 +233,211 @@ final class QueuingEventSink implements EventChannel.EventSink {
     @Override
     public void success(Object event) {
         enqueue(event);
-        maybeFlush();
+        if (batchInterval > 0) {
+            scheduleFlush();
+        } else {
+            maybeFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, batchInterval);
+        }
+    }
+
+    private static int coalesceType(Object event) {
+        if (event instanceof Map) {
+            Object type = ((Map) event).get("event");
+            for (int i = 0; i < COALESCE_EVENTS.length; i++) {
+                if (COALESCE_EVENTS[i].equals(type))
+                    return i;
+            }
+        }
+        return -1;
     }
 
     private void enqueue(Object event) {
         if (done) {
             return;
         }
-        eventQueue.add(event);
+        int type = coalesceType(event);
+        if (type >= 0 && batchInterval > 0 && coalesceSeq[type] >= 0) {
+            drop(coalesceSeq[type]);
+            droppedCount++;
+        }
+        if (depth() >= capacity && !dropForOverflow(event))
+            return;
+        if (holes > 0 && count == ring.length)
+            compact();
+        if (count == ring.length)
+            ring = Arrays.copyOf(unwrap(), ring.length * 2);
+        long seq = headSeq + count;
+        ring[(head + count) % ring.length] = event;
+        count++;
+        if (type >= 0)
+            coalesceSeq[type] = seq;
+        maxDepth = Math.max(maxDepth, depth());
+    }
+
+    /**
+     * Make room for event as the overflow policy tells
+     *
+     * @param event the event to be queued, null when the capacity is reduced
+     * @return false if event should be dropped instead
+     */
+    private boolean dropForOverflow(Object event) {
+        int type = event != null ? coalesceType(event) : -1;
+        long seq = -1;
+        switch (overflowPolicy) {
+            case OVERFLOW_DROP_OLDEST:
+                seq = oldest(false);
+                break;
+            case OVERFLOW_DROP_SUPERSEDED:
+                seq = type >= 0 ? coalesceSeq[type] : -1;
+                if (seq < 0)
+                    seq = oldest(true);
+                if (seq < 0)
+                    seq = oldest(false);
+                break;
+            case OVERFLOW_KEEP_CRITICAL:
+                if (type >= 0) {
+                    overflowCount++;
+                    return false;
+                }
+                // grow beyond capacity if only critical events are queued
+                seq = oldest(true);
+                break;
+        }
+        if (seq < 0)
+            return event != null && overflowPolicy == OVERFLOW_KEEP_CRITICAL;
+        drop(seq);
+        overflowCount++;
+        return true;
+    }
+
+    /**
+     * @return sequence number of the oldest queued event, or the oldest coalescing event, -1 if none
+     */
+    private long oldest(boolean coalescing) {
+        for (int i = 0; i < count; i++) {
+            Object event = ring[(head + i) % ring.length];
+            if (event != null && (!coalescing || coalesceType(event) >= 0))
+                return headSeq + i;
+        }
+        return -1;
+    }
+
+    private void drop(long seq) {
+        int index = (head + (int) (seq - headSeq)) % ring.length;
+        int type = coalesceType(ring[index]);
+        if (type >= 0 && coalesceSeq[type] == seq)
+            coalesceSeq[type] = -1;
+        ring[index] = null;
+        holes++;
+        // drop holes at head, so they don't take room
+        while (count > 0 && ring[head] == null) {
+            head = (head + 1) % ring.length;
+            headSeq++;
+            count--;
+            holes--;
+        }
+    }
+
+    /**
+     * Move queued events over the holes in ring, keeping their order
+     */
+    private void compact() {
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            int from = (head + i) % ring.length;
+            Object event = ring[from];
+            if (event == null)
+                continue;
+            int type = coalesceType(event);
+            if (type >= 0 && coalesceSeq[type] == headSeq + i)
+                coalesceSeq[type] = headSeq + live;
+            ring[from] = null;
+            ring[(head + live) % ring.length] = event;
+            live++;
+        }
+        count = live;
+        holes = 0;
+    }
+
+    /**
+     * @return queued events from head, in a new array of ring length
+     */
+    private Object[] unwrap() {
+        Object[] events = new Object[ring.length];
+        for (int i = 0; i < count; i++) {
+            events[i] = ring[(head + i) % ring.length];
+        }
+        head = 0;
+        return events;
+    }
+
+    private void clearQueue() {
+        for (int i = 0; i < count; i++) {
+            ring[(head + i) % ring.length] = null;
+        }
+        headSeq += count;
+        head = 0;
+        count = 0;
+        holes = 0;
+        Arrays.fill(coalesceSeq, -1);
     }
 
     private void maybeFlush() {
         if (delegate == null) {
             return;
         }
-        for (Object event : eventQueue) {
-            if (event instanceof EndOfStreamEvent) {
-                delegate.endOfStream();
-            } else if (event instanceof ErrorEvent) {
-                ErrorEvent errorEvent = (ErrorEvent) event;
-                delegate.error(errorEvent.code, errorEvent.message, errorEvent.details);
+        ArrayList<Object> batch = null;
+        for (int i = 0; i < count; i++) {
+            Object event = ring[(head + i) % ring.length];
+            if (event == null) {
+                // superseded by a later event of the same type
+                continue;
+            }
+            if (event instanceof EndOfStreamEvent || event instanceof ErrorEvent) {
+                sendBatch(batch);
+                batch = null;
+                if (event instanceof EndOfStreamEvent) {
+                    delegate.endOfStream();
+                } else {
+                    ErrorEvent errorEvent = (ErrorEvent) event;
+                    delegate.error(errorEvent.code, errorEvent.message, errorEvent.details);
+                }
+                messageCount++;
+            } else if (batchInterval > 0) {
+                if (batch == null)
+                    batch = new ArrayList<>();
+                batch.add(event);
+                continue;
             } else {
                 delegate.success(event);
+                messageCount++;
             }
+            sentCount++;
+        }
+        sendBatch(batch);
+        clearQueue();
+    }
+
+    private void sendBatch(ArrayList<Object> batch) {
+        if (batch == null || batch.isEmpty())
+            return;
+        if (batch.size() == 1) {
+            delegate.success(batch.get(0));
+        } else {
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "batch");
+            event.put("events", batch);
+            delegate.success(event);
         }
-        eventQueue.clear();
+        sentCount += batch.size();
+        messageCount++;
     }
 
     private static class EndOfStreamEvent {
@@ -0,0 +1,455 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * {@link IMediaDataSource} for http(s) urls which fetches chunks of {@link #CHUNK_SIZE} bytes with
+ * several http Range requests in parallel.
+ *
+ * <p>Chunks are kept in a memory window from {@link #KEEP_BEHIND} chunks before the chunk of the
+ * last readAt position to {@link #READ_AHEAD} chunks after it. Chunks are fetched in order from
+ * the read position, so after a seek, queued fetches out of the new window are cancelled and the
+ * chunks at the new position are fetched first. A failed or short fetch is tried again up to
+ * {@link #MAX_ATTEMPTS} times.
+ *
+ * <p>If the server ignores Range, chunks are read one by one from a single sequential response,
+ * which is only opened again for a backward seek.
+ */
+class RangeMediaDataSource implements IMediaDataSource {
+
+    final static int CHUNK_SIZE = 256 * 1024;
+    final static int READ_AHEAD = 8;
+    final static int KEEP_BEHIND = 1;
+    final static int MAX_ATTEMPTS = 3;
+
+    final private static int CONNECT_TIMEOUT = 10000;
+    final private static int READ_TIMEOUT = 15000;
+
+    final private String mUrl;
+    final private Map<String, String> mHeaders;
+    final private ThreadPoolExecutor mExecutor;
+    // chunk index -> fetched or fetching chunk in window, guarded by this
+    final private Map<Integer, Chunk> mChunks = new HashMap<>();
+    final private ArrayDeque<byte[]> mFreeBuffers = new ArrayDeque<>();
+    private long mLength = -1;
+    private boolean mRangeSupported = true;
+    private int mPlayhead = 0;
+    private boolean mClosed = false;
+
+    // sequential response when the server ignores Range, guarded by mStreamLock
+    final private Object mStreamLock = new Object();
+    private volatile HttpURLConnection mStreamConn;
+    private InputStream mStream;
+    private long mStreamPos = 0;
+
+    private static class Chunk {
+        final int index;
+        byte[] data;
+        // -1 if fetch failed
+        int length = 0;
+        boolean done = false;
+        Future<?> task;
+
+        Chunk(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * @param connections max count of parallel Range requests
+     */
+    RangeMediaDataSource(@NonNull String url, int connections) {
+        this(url, connections, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * @param headers extra http headers of every request, see {@link HttpHeaders}
+     */
+    RangeMediaDataSource(@NonNull String url, int connections, @NonNull Map<String, String> headers) {
+        mUrl = url;
+        mHeaders = headers;
+        connections = Math.max(connections, 1);
+        mExecutor = new ThreadPoolExecutor(connections, connections,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            final private AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                return new Thread(r, "fijk-range-" + count.incrementAndGet());
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) {
+        if (size <= 0)
+            return size;
+        int index = (int) (position / CHUNK_SIZE);
+        synchronized (this) {
+            Chunk chunk = await(index);
+            if (chunk == null)
+                return -1;
+            int from = (int) (position - (long) index * CHUNK_SIZE);
+            if (from >= chunk.length)
+                return -1;
+            int n = Math.min(size, chunk.length - from);
+            System.arraycopy(chunk.data, from, buffer, offset, n);
+            return n;
+        }
+    }
+
+    @Override
+    public synchronized long getSize() {
+        if (mLength < 0)
+            await(0);
+        return mLength;
+    }
+
+    /**
+     * Move the window to index and wait for the chunk at index, must hold the lock of this
+     *
+     * @return null if the chunk is out of media, failed or this source is closed
+     */
+    private Chunk await(int index) {
+        if (mClosed || (mLength >= 0 && (long) index * CHUNK_SIZE >= mLength))
+            return null;
+        moveTo(index);
+        Chunk chunk = mChunks.get(index);
+        try {
+            while (!chunk.done && !mClosed)
+                wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (mClosed)
+            return null;
+        if (chunk.length < 0) {
+            // fetch again on next read
+            mChunks.remove(index);
+            return null;
+        }
+        return chunk;
+    }
+
+    private void moveTo(int index) {
+        mPlayhead = index;
+        int last = index + (mRangeSupported ? READ_AHEAD : 0);
+        Iterator<Chunk> it = mChunks.values().iterator();
+        boolean cancelled = false;
+        while (it.hasNext()) {
+            Chunk chunk = it.next();
+            if (chunk.index >= index - KEEP_BEHIND && chunk.index <= last)
+                continue;
+            it.remove();
+            if (chunk.done) {
+                recycle(chunk.data);
+            } else {
+                // a running fetch recycles its buffer when it finds the chunk out of window
+                cancelled |= chunk.task.cancel(false);
+            }
+        }
+        if (cancelled)
+            mExecutor.purge();
+        for (int i = index; i <= last; i++) {
+            if (mLength >= 0 && (long) i * CHUNK_SIZE >= mLength)
+                break;
+            if (!mChunks.containsKey(i))
+                submit(i);
+        }
+    }
+
+    private void submit(int index) {
+        final Chunk chunk = new Chunk(index);
+        chunk.data = mFreeBuffers.isEmpty() ? new byte[CHUNK_SIZE] : mFreeBuffers.poll();
+        FutureTask<Void> task = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                int length = -1;
+                for (int attempt = 0; attempt < MAX_ATTEMPTS && length < 0 && inWindow(chunk); attempt++) {
+                    try {
+                        length = fetch(chunk.index, chunk.data);
+                    } catch (IOException e) {
+                        Log.e("DataSource", "range fetch failed " + e.getMessage());
+                    }
+                }
+                synchronized (RangeMediaDataSource.this) {
+                    chunk.length = length;
+                    chunk.done = true;
+                    if (mChunks.get(chunk.index) != chunk)
+                        recycle(chunk.data);
+                    RangeMediaDataSource.this.notifyAll();
+                }
+            }
+        }, null);
+        chunk.task = task;
+        mChunks.put(index, chunk);
+        mExecutor.execute(task);
+    }
+
+    private synchronized boolean inWindow(Chunk chunk) {
+        return !mClosed && mChunks.get(chunk.index) == chunk;
+    }
+
+    private void recycle(byte[] data) {
+        if (data != null && mFreeBuffers.size() < READ_AHEAD + KEEP_BEHIND + 1)
+            mFreeBuffers.add(data);
+    }
+
+    /**
+     * Fetch the chunk at index into data, called on fetch threads
+     *
+     * @return count of bytes fetched, less than CHUNK_SIZE only for the last chunk, -1 if failed
+     */
+    private int fetch(int index, byte[] data) throws IOException {
+        long start = (long) index * CHUNK_SIZE;
+        synchronized (this) {
+            if (!mRangeSupported)
+                return fetchSequential(start, data);
+        }
+        HttpURLConnection conn = open();
+        conn.setRequestProperty("Range", "bytes=" + start + "-" + (start + CHUNK_SIZE - 1));
+        InputStream is = null;
+        try {
+            int code = conn.getResponseCode();
+            long length = -1;
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                // Content-Range: bytes start-end/total
+                String range = conn.getHeaderField("Content-Range");
+                int slash = range != null ? range.lastIndexOf('/') : -1;
+                if (slash >= 0 && slash < range.length() - 1 && range.charAt(slash + 1) != '*')
+                    length = parseLong(range.substring(slash + 1));
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                setLength(parseLong(conn.getHeaderField("Content-Length")));
+                synchronized (this) {
+                    // only the chunk being read is fetched from now on
+                    mRangeSupported = false;
+                    moveTo(mPlayhead);
+                    if (!mChunks.containsKey(index))
+                        return -1;
+                }
+                if (adopt(conn)) {
+                    conn = null;
+                    return fetchSequential(start, data);
+                }
+                // another fetch already reads the sequential response
+                return -1;
+            } else if (code == 416) {
+                setLength(start);
+                return 0;
+            } else {
+                Log.e("DataSource", "range fetch failed, code " + code);
+                return -1;
+            }
+            if (length >= 0)
+                setLength(length);
+
+            is = conn.getInputStream();
+            int filled = readFully(is, data);
+            if (filled < 0)
+                return -1;
+            if (filled < expected(start))
+                return -1;
+            if (filled < data.length && length < 0)
+                setLength(start + filled);
+            return filled;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (conn != null)
+                conn.disconnect();
+        }
+    }
+
+    private HttpURLConnection open() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(mUrl).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        HttpHeaders.apply(conn, mHeaders);
+        return conn;
+    }
+
+    /**
+     * @return bytes a complete fetch of chunk at start must have, 0 if length is unknown
+     */
+    private synchronized long expected(long start) {
+        return mLength >= 0 ? Math.min(CHUNK_SIZE, mLength - start) : 0;
+    }
+
+    /**
+     * Keep the response of conn as the sequential response if there's none
+     */
+    private boolean adopt(HttpURLConnection conn) throws IOException {
+        synchronized (mStreamLock) {
+            if (mStreamConn != null)
+                return false;
+            mStream = conn.getInputStream();
+            mStreamConn = conn;
+            mStreamPos = 0;
+            return true;
+        }
+    }
+
+    /**
+     * Read the chunk at start from the sequential response, it's opened again to go backward
+     */
+    private int fetchSequential(long start, byte[] data) throws IOException {
+        synchronized (mStreamLock) {
+            if (mStreamConn != null && mStreamPos > start)
+                closeStream();
+            if (mStreamConn == null) {
+                HttpURLConnection conn = open();
+                int code = conn.getResponseCode();
+                if (code != HttpURLConnection.HTTP_OK) {
+                    conn.disconnect();
+                    Log.e("DataSource", "range fetch failed, code " + code);
+                    return -1;
+                }
+                mStream = conn.getInputStream();
+                mStreamConn = conn;
+                mStreamPos = 0;
+            }
+            try {
+                skipFully(mStream, start - mStreamPos);
+                mStreamPos = start;
+                int filled = readFully(mStream, data);
+                if (filled < 0 || filled < expected(start)) {
+                    closeStream();
+                    return -1;
+                }
+                mStreamPos += filled;
+                if (filled < data.length)
+                    setLength(start + filled);
+                return filled;
+            } catch (IOException e) {
+                closeStream();
+                throw e;
+            }
+        }
+    }
+
+    private void closeStream() {
+        synchronized (mStreamLock) {
+            if (mStream != null) {
+                try {
+                    mStream.close();
+                } catch (IOException ignored) {
+                }
+                mStream = null;
+            }
+            if (mStreamConn != null) {
+                mStreamConn.disconnect();
+                mStreamConn = null;
+            }
+        }
+    }
+
+    /**
+     * @return count of bytes read until data is full or end of stream, -1 if interrupted
+     */
+    private static int readFully(InputStream is, byte[] data) throws IOException {
+        int filled = 0;
+        while (filled < data.length) {
+            if (Thread.currentThread().isInterrupted())
+                return -1;
+            int n = is.read(data, filled, data.length - filled);
+            if (n < 0)
+                break;
+            filled += n;
+        }
+        return filled;
+    }
+
+    private synchronized void setLength(long length) {
+        if (length >= 0)
+            mLength = length;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null)
+            return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void skipFully(InputStream is, long bytes) throws IOException {
+        while (bytes > 0) {
+            long n = is.skip(bytes);
+            if (n <= 0) {
+                if (is.read() < 0)
+                    throw new IOException("unexpected end of stream");
+                n = 1;
+            }
+            bytes -= n;
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (mClosed)
+                return;
+            mClosed = true;
+            mChunks.clear();
+            mFreeBuffers.clear();
+            notifyAll();
+        }
+        mExecutor.shutdownNow();
+        // unblock a fetch reading the sequential response, interrupt does not stop socket reads
+        HttpURLConnection conn = mStreamConn;
+        if (conn != null)
+            conn.disconnect();
+    }
+}
@@ -26,48 +26,181 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
 
+/**
+ * {@link IMediaDataSource} for assets which can only be opened as an {@link InputStream},
+ * such as compressed assets.
+ *
+ * <p>The stream is read in blocks of {@link #BLOCK_SIZE} bytes which are kept in a bounded LRU
+ * cache indexed by block number. Reads which hit the cache never touch the stream. On a miss the
+ * stream is only reset when the block lies behind the stream position, the bytes before the block
+ * are skipped without being cached, so a far seek does not evict the blocks around the playhead.
+ * Arrays of evicted blocks are reused for the next blocks read.
+ *
+ * <p>A compressed asset has no {@link android.content.res.AssetFileDescriptor} to take its length
+ * from, and {@link InputStream#available} is not the length of a stream. The size is measured once,
+ * when it's first asked for, by skipping to the end of the stream.
+ */
 class RawMediaDataSource implements IMediaDataSource {
+
+    final static int BLOCK_SIZE = 64 * 1024;
+    final static int MAX_CACHED_BLOCKS = 64;
+
     private InputStream mIs;
+    // stream position, aligned to BLOCK_SIZE or at end of stream
     private long mPosition = 0;
+    // end of stream once it is reached, -1 before
+    private long mEnd = -1;
+    private long mSize;
+
+    final private ArrayDeque<byte[]> mFreeBlocks = new ArrayDeque<>();
+    final private Map<Long, byte[]> mBlocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            if (size() <= MAX_CACHED_BLOCKS)
+                return false;
+            mFreeBlocks.push(eldest.getValue());
+            return true;
+        }
+    };
 
     public RawMediaDataSource(InputStream is) {
         mIs = is;
+        mSize = -1;
+        // reset goes back to the mark, make it the start of stream
+        if (mIs.markSupported())
+            mIs.mark(Integer.MAX_VALUE);
     }
 
     @Override
     public int readAt(long position, byte[] buffer, int offset, int size) {
         if (size <= 0)
             return size;
-        int length = -1;
+        if (mIs == null || (mSize >= 0 && position >= mSize))
+            return -1;
+        int copied = 0;
         try {
-            if (mPosition != position) {
-                mIs.reset();
-                mPosition = mIs.skip(position);
+            while (copied < size) {
+                long index = position / BLOCK_SIZE;
+                byte[] block = block(index);
+                if (block == null)
+                    break;
+                int length = blockLength(index);
+                int inBlock = (int) (position - index * BLOCK_SIZE);
+                if (inBlock >= length)
+                    break;
+                int n = Math.min(size - copied, length - inBlock);
+                System.arraycopy(block, inBlock, buffer, offset + copied, n);
+                copied += n;
+                position += n;
+                if (length < BLOCK_SIZE)
+                    break;
             }
-            length = mIs.read(buffer, offset, size);
-            mPosition += length;
         } catch (IOException e) {
             Log.e("DataSource", "failed to read" + e.getMessage());
         }
+        return copied > 0 ? copied : -1;
+    }
+
+    /**
+     * @return count of valid bytes in block, only the last block of stream is shorter than
+     * BLOCK_SIZE
+     */
+    private int blockLength(long index) {
+        long start = index * BLOCK_SIZE;
+        if (mEnd < 0)
+            return BLOCK_SIZE;
+        return (int) Math.max(Math.min(BLOCK_SIZE, mEnd - start), 0);
+    }
+
+    private byte[] block(long index) throws IOException {
+        byte[] block = mBlocks.get(index);
+        if (block != null)
+            return block;
+        long start = index * BLOCK_SIZE;
+        if (mEnd >= 0 && start >= mEnd)
+            return null;
+        if (mPosition > start) {
+            mIs.reset();
+            mPosition = 0;
+        }
+        if (mPosition < start) {
+            mPosition += skip(start - mPosition);
+            if (mPosition < start) {
+                mEnd = mPosition;
+                return null;
+            }
+        }
+        block = mFreeBlocks.poll();
+        if (block == null)
+            block = new byte[BLOCK_SIZE];
+        int length = readBlock(block);
+        mPosition += length;
+        if (length < BLOCK_SIZE)
+            mEnd = mPosition;
+        if (length == 0) {
+            mFreeBlocks.push(block);
+            return null;
+        }
+        mBlocks.put(index, block);
+        return block;
+    }
+
+    /**
+     * @return count of bytes skipped, less than count only at end of stream
+     */
+    private long skip(long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long n = mIs.skip(remaining);
+            if (n <= 0) {
+                // skip may return 0 before end of stream, read to tell
+                if (mIs.read() < 0)
+                    break;
+                n = 1;
+            }
+            remaining -= n;
+        }
+        return count - remaining;
+    }
+
+    private int readBlock(byte[] block) throws IOException {
+        int length = 0;
+        while (length < BLOCK_SIZE) {
+            int n = mIs.read(block, length, BLOCK_SIZE - length);
+            if (n < 0)
+                break;
+            length += n;
+        }
         return length;
     }
 
     @Override
     public long getSize() {
-        long size = -1;
-        try {
-            size = mIs.available();
-        } catch (IOException e) {
-            Log.e("DataSource", "failed to get size" + e.getMessage());
+        // without mark, the stream could not go back to the start after measuring
+        if (mSize < 0 && mEnd < 0 && mIs != null && mIs.markSupported()) {
+            // cached blocks stay, the next read behind the end resets the stream
+            try {
+                mPosition += skip(Long.MAX_VALUE - mPosition);
+                mEnd = mPosition;
+            } catch (IOException e) {
+                Log.e("DataSource", "failed to get size" + e.getMessage());
+            }
         }
-        return size;
+        if (mSize < 0 && mEnd >= 0)
+            mSize = mEnd;
+        return mSize;
     }
 
     @Override
     public void close() {
+        mBlocks.clear();
+        mFreeBlocks.clear();
         if (mIs != null) {
             try {
                 mIs.close();
@@ -77,6 +210,4 @@ class RawMediaDataSource implements IMediaDataSource {
             }
         }
     }
-
 }
-
@@ -0,0 +1,149 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the JMH benchmarks of this package and compares their scores with the stored baselines.
+ *
+ * <p>Skipped unless run with {@code -Dfijk.benchmark=true}, e.g.
+ * {@code ./gradlew testDebugUnitTest --tests '*BenchmarkBaselineTest' -Dfijk.benchmark=true}.
+ * A benchmark fails if its average time is more than {@code fijk.benchmark.tolerance}
+ * (default 0.5, that is 50%) above its baseline. Add {@code -Dfijk.benchmark.record=true}
+ * to write the scores as new baselines, scores depend on the machine so record them on the
+ * machine which runs the check.
+ *
+ * <p>Benchmarks run in this JVM, the forked JVM of JMH would miss the classpath of the test
+ * task and its stubbed android classes.
+ */
+public class BenchmarkBaselineTest {
+
+    final private static String BASELINES = "src/test/resources/benchmark-baselines.properties";
+    final private static String UNIT = "ns/op";
+
+    /**
+     * @return key of result in baselines, benchmark class and method, then its param values
+     */
+    private static String keyOf(RunResult result) {
+        String benchmark = result.getParams().getBenchmark();
+        String pkg = BenchmarkBaselineTest.class.getPackage().getName();
+        StringBuilder key = new StringBuilder(benchmark.substring(pkg.length() + 1));
+        for (String param : result.getParams().getParamsKeys()) {
+            key.append('.').append(result.getParams().getParam(param));
+        }
+        return key.toString();
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties baselines = new Properties();
+        if (file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                baselines.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return baselines;
+    }
+
+    private static void store(File file, Map<String, Double> scores) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("# JMH average time in " + UNIT + ", written by BenchmarkBaselineTest with -Dfijk.benchmark.record=true\n");
+            out.write("# " + System.getProperty("os.name") + " " + System.getProperty("os.arch")
+                    + ", " + Runtime.getRuntime().availableProcessors() + " cpu, java " + System.getProperty("java.version") + "\n");
+            for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                out.write(entry.getKey() + "=" + String.format(Locale.US, "%.1f", entry.getValue()) + "\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void scoresWithinBaselines() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("fijk.benchmark"));
+        File file = new File(System.getProperty("fijk.benchmark.baselines", BASELINES));
+        boolean record = Boolean.getBoolean("fijk.benchmark.record");
+        double tolerance = Double.parseDouble(System.getProperty("fijk.benchmark.tolerance", "0.5"));
+
+        Options options = new OptionsBuilder()
+                .include(getClass().getPackage().getName().replace(".", "\\.") + "\\..*Benchmark\\..*")
+                .forks(0)
+                .shouldFailOnError(true)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        assertTrue("no benchmark run", results.size() > 0);
+
+        Map<String, Double> scores = new TreeMap<>();
+        for (RunResult result : results) {
+            assertEquals(keyOf(result), UNIT, result.getPrimaryResult().getScoreUnit());
+            scores.put(keyOf(result), result.getPrimaryResult().getScore());
+        }
+        if (record) {
+            store(file, scores);
+            return;
+        }
+
+        Properties baselines = load(file);
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            String baseline = baselines.getProperty(entry.getKey());
+            if (baseline == null) {
+                System.out.println("no baseline of " + entry.getKey() + ", record it with -Dfijk.benchmark.record=true");
+                continue;
+            }
+            double limit = Double.parseDouble(baseline) * (1 + tolerance);
+            if (entry.getValue() > limit) {
+                regressions.add(String.format(Locale.US, "%s: %.1f %s, baseline %s",
+                        entry.getKey(), entry.getValue(), UNIT, baseline));
+            }
+        }
+        assertTrue("slower than baselines:\n" + regressions, regressions.isEmpty());
+    }
+}
@@ -0,0 +1,224 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import android.os.Looper;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+import tv.danmaku.ijk.media.player.IMediaPlayer;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class BinaryEventSinkTest {
+
+    final private static String CHANNEL = "befovy.com/fijkplayer/binary/1";
+
+    final private List<Object> mEvents = new ArrayList<>();
+    final private EventChannel.EventSink mDelegate = new EventChannel.EventSink() {
+        @Override
+        public void success(Object o) {
+            mEvents.add(o);
+        }
+
+        @Override
+        public void error(String s, String s1, Object o) {
+            mEvents.add(s);
+        }
+
+        @Override
+        public void endOfStream() {
+        }
+    };
+
+    private FakeBinaryMessenger mMessenger;
+    private QueuingEventSink mEventSink;
+    private BinaryEventSink mSink;
+
+    @Before
+    public void setUp() {
+        mMessenger = new FakeBinaryMessenger();
+        mEventSink = new QueuingEventSink();
+        mSink = new BinaryEventSink(mMessenger, CHANNEL, mEventSink);
+        mSink.setEnabled(true);
+    }
+
+    @Test
+    public void fallsBackBeforeListening() {
+        assertFalse(mSink.send(FijkEventConstants.PREPARED, 0, 0, 1000));
+        mEventSink.success("prepared");
+        mEventSink.setDelegate(mDelegate);
+        assertEquals(1, mEvents.size());
+        assertTrue(mSink.send(FijkEventConstants.CURRENT_POSITION_UPDATE, 10, 0, 0));
+        assertEquals(1, mMessenger.sentCount());
+        assertEquals(BinaryEventSink.RECORD_SIZE, mMessenger.sentBytes());
+    }
+
+    @Test
+    public void fallsBackWhileBatching() {
+        mEventSink.setDelegate(mDelegate);
+        mEventSink.setBatchInterval(100);
+        assertFalse(mSink.send(FijkEventConstants.CURRENT_POSITION_UPDATE, 10, 0, 0));
+        mEventSink.setBatchInterval(0);
+        assertTrue(mSink.send(FijkEventConstants.CURRENT_POSITION_UPDATE, 20, 0, 0));
+        assertEquals(1, mMessenger.sentCount());
+    }
+
+    @Test
+    public void fallsBackAfterEndOfStream() {
+        mEventSink.setDelegate(mDelegate);
+        mEventSink.endOfStream();
+        assertFalse(mSink.send(FijkEventConstants.CURRENT_POSITION_UPDATE, 10, 0, 0));
+        assertEquals(0, mMessenger.sentCount());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    @Test
+    public void sendDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+
+        mEventSink.setDelegate(mDelegate);
+        final int count = 100000;
+        // warm up, so the measured loop runs compiled code
+        for (int i = 0; i < count; i++) {
+            mSink.send(FijkEventConstants.CURRENT_POSITION_UPDATE, i, 0, 0);
+        }
+        long tid = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < count; i++) {
+            mSink.send(FijkEventConstants.CURRENT_POSITION_UPDATE, i, 0, 0);
+        }
+        long allocated = threads.getThreadAllocatedBytes(tid) - before;
+        assertEquals(2L * count, mMessenger.sentCount());
+        assertTrue("allocated " + allocated + " bytes for " + count + " events",
+                allocated < count);
+    }
+
+    /**
+     * Listener callbacks of the native player, through handleEvent of FijkPlayer, to the binary channel
+     */
+    @Test
+    public void playerEventsDoNotAllocate() throws InterruptedException {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+
+        // stub only mocks don't keep the calls made to them
+        FakeEngine engine = new FakeEngine(RuntimeEnvironment.application, null, true);
+        FijkPlayer player = new FijkPlayer(engine, false);
+        IjkMediaPlayer mediaPlayer = engine.mediaPlayer();
+        FakeBinaryMessenger messenger = engine.fakeMessenger();
+        ByteBuffer listen = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall("listen", null));
+        listen.rewind();
+        messenger.handler("befovy.com/fijkplayer/event/" + player.getPlayerId()).onMessage(listen,
+                new BinaryMessenger.BinaryReply() {
+                    @Override
+                    public void reply(ByteBuffer reply) {
+                    }
+                });
+        Map<String, Object> option = new HashMap<>();
+        option.put("cat", 0);
+        option.put("key", HostOption.BINARY_EVENT);
+        option.put("long", 1);
+        FakeResult result = new FakeResult();
+        player.onMethodCall(new MethodCall("setOption", option), result);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!result.replied() && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(1);
+        }
+        assertTrue(result.replied());
+        assertNull(result.errorCode);
+
+        final int count = 20000;
+        for (int i = 0; i < count; i++) {
+            bufferingCallbacks(player, mediaPlayer, i);
+        }
+        long sent = messenger.sentCount();
+        long tid = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < count; i++) {
+            bufferingCallbacks(player, mediaPlayer, i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(tid) - before;
+        // one record for each callback, a buffering update is a single record
+        assertEquals(3L * count, messenger.sentCount() - sent);
+
+        // a mocked native player allocates on each call, a real one doesn't, so take it off
+        before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < count; i++) {
+            nativeCalls(mediaPlayer);
+        }
+        long mocked = threads.getThreadAllocatedBytes(tid) - before;
+        player.release();
+        assertTrue("allocated " + allocated + " bytes, " + mocked + " by mock, for " + count + " callbacks",
+                allocated - mocked < count);
+    }
+
+    private static void bufferingCallbacks(FijkPlayer player, IjkMediaPlayer mediaPlayer, int i) {
+        player.onInfo(mediaPlayer, IMediaPlayer.MEDIA_INFO_BUFFERING_START, 0);
+        player.onBufferingUpdate(mediaPlayer, i % 100);
+        player.onInfo(mediaPlayer, IMediaPlayer.MEDIA_INFO_BUFFERING_END, 0);
+    }
+
+    /**
+     * Same calls to the native player as bufferingCallbacks
+     */
+    private static void nativeCalls(IjkMediaPlayer mediaPlayer) {
+        mediaPlayer.getDuration();
+        mediaPlayer.getVideoCachedBytes();
+        mediaPlayer.getAudioCachedBytes();
+        mediaPlayer.getVideoCachedDuration();
+        mediaPlayer.getAudioCachedDuration();
+    }
+}
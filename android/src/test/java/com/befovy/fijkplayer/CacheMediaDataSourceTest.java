@@ -0,0 +1,218 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CacheMediaDataSourceTest {
+
+    final private static int SIZE = 3 * 1024 * 1024 + 4321;
+
+    private StubHttpServer mServer;
+    private File mDir;
+    private FijkDiskCache mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubHttpServer(SIZE);
+        mDir = File.createTempFile("fijk-cache", "");
+        assertTrue(mDir.delete() && mDir.mkdirs());
+        mCache = new FijkDiskCache(mDir, FijkDiskCache.DEFAULT_MAX_BYTES);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files)
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mDir.delete();
+    }
+
+    private static byte[] readAll(CacheMediaDataSource source) {
+        byte[] out = new byte[(int) source.getSize()];
+        byte[] buffer = new byte[32 * 1024];
+        int position = 0;
+        while (position < out.length) {
+            int n = source.readAt(position, buffer, 0, buffer.length);
+            if (n <= 0)
+                break;
+            System.arraycopy(buffer, 0, out, position, n);
+            position += n;
+        }
+        return Arrays.copyOf(out, position);
+    }
+
+    @Test
+    public void secondReadIsServedFromCache() {
+        CacheMediaDataSource source = new CacheMediaDataSource(mCache, mServer.url());
+        assertArrayEquals(mServer.media, readAll(source));
+        source.close();
+        long sent = mServer.bytesSent.get();
+
+        source = new CacheMediaDataSource(mCache, mServer.url());
+        assertArrayEquals(mServer.media, readAll(source));
+        source.close();
+        // only the revalidation request of 1 byte
+        assertEquals(sent + 1, mServer.bytesSent.get());
+    }
+
+    @Test
+    public void serverIgnoringRangeIsReadSequentially() {
+        mServer.ignoreRange = true;
+        CacheMediaDataSource source = new CacheMediaDataSource(mCache, mServer.url());
+        assertArrayEquals(mServer.media, readAll(source));
+        byte[] buffer = new byte[1000];
+        int n = source.readAt(100, buffer, 0, buffer.length);
+        assertArrayEquals(Arrays.copyOfRange(mServer.media, 100, 100 + n), Arrays.copyOf(buffer, n));
+        source.close();
+        assertTrue("bytes " + mServer.bytesSent.get(), mServer.bytesSent.get() < 2L * SIZE);
+    }
+
+    @Test
+    public void changedMediaIsFetchedAgain() {
+        CacheMediaDataSource source = new CacheMediaDataSource(mCache, mServer.url());
+        byte[] buffer = new byte[1000];
+        assertEquals(buffer.length, source.readAt(0, buffer, 0, buffer.length));
+        source.close();
+
+        new Random(42).nextBytes(mServer.media);
+        mServer.etag = "\"v2\"";
+        source = new CacheMediaDataSource(mCache, mServer.url());
+        assertArrayEquals(mServer.media, readAll(source));
+        source.close();
+    }
+
+    @Test
+    public void changedLengthDropsCache() {
+        FijkDiskCache.Entry entry = mCache.open(mServer.url());
+        assertTrue(mCache.validate(entry, 1000, null, "a"));
+        mCache.putChunk(entry, 0);
+        assertTrue(mCache.validate(entry, 1000, null, "a"));
+        assertTrue(mCache.hasChunk(entry, 0));
+        assertTrue(!mCache.validate(entry, 2000, null, "a"));
+        assertTrue(!mCache.hasChunk(entry, 0));
+        assertEquals(0, mCache.totalBytes());
+        mCache.close(entry);
+    }
+
+    @Test
+    public void validatorsArePersisted() throws IOException {
+        FijkDiskCache.Entry entry = mCache.open(mServer.url());
+        // entries without data file are not loaded
+        assertTrue(mCache.dataFile(entry).createNewFile());
+        mCache.validate(entry, 1000, "\"e\"", null);
+        mCache.putChunk(entry, 0);
+        mCache.close(entry);
+
+        FijkDiskCache cache = new FijkDiskCache(mDir, FijkDiskCache.DEFAULT_MAX_BYTES);
+        entry = cache.open(mServer.url());
+        assertTrue(cache.hasChunk(entry, 0));
+        assertTrue(!cache.validate(entry, 1000, "\"f\"", null));
+        cache.close(entry);
+    }
+
+    @Test
+    public void forwardsHeaders() {
+        CacheMediaDataSource source = new CacheMediaDataSource(mCache, mServer.url(),
+                HttpHeaders.of("X-Token: abc", "fijk-test", null));
+        source.getSize();
+        source.close();
+        assertEquals("abc", mServer.headers.get("x-token"));
+        assertEquals("fijk-test", mServer.headers.get("user-agent"));
+    }
+
+    @Test
+    public void failedOpenReleasesEntry() {
+        CacheMediaDataSource source = new CacheMediaDataSource(mCache, mServer.url());
+        // data file can't be created without the cache dir
+        assertTrue(mDir.delete());
+        byte[] buffer = new byte[1000];
+        for (int i = 0; i < 3; i++) {
+            assertEquals(-1, source.readAt(0, buffer, 0, buffer.length));
+        }
+        FijkDiskCache.Entry entry = mCache.open(mServer.url());
+        assertEquals(1, entry.refs);
+        mCache.close(entry);
+        source.close();
+    }
+
+    @Test
+    public void prefetchRange() {
+        CacheMediaDataSource source = new CacheMediaDataSource(mCache, mServer.url());
+        long position = 8L * FijkDiskCache.CHUNK_SIZE + 100;
+        assertTrue(source.prefetch(position, FijkDiskCache.CHUNK_SIZE));
+        source.close();
+
+        FijkDiskCache.Entry entry = mCache.open(mServer.url());
+        assertTrue(mCache.hasChunk(entry, 8));
+        assertTrue(mCache.hasChunk(entry, 9));
+        // only the first fetch of open and the range are cached
+        assertFalse(mCache.hasChunk(entry, CacheMediaDataSource.FETCH_CHUNKS));
+        mCache.close(entry);
+    }
+
+    @Test
+    public void abortStopsBlockedPrefetch() throws InterruptedException {
+        mServer.latencyMs = 10000;
+        final CacheMediaDataSource source = new CacheMediaDataSource(mCache, mServer.url());
+        final boolean[] result = {true};
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = source.prefetch(SIZE);
+            }
+        });
+        thread.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mServer.requests.get() < 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        // interrupt alone does not stop a blocking socket read
+        thread.interrupt();
+        Thread.sleep(100);
+        assertTrue(thread.isAlive());
+        source.abort();
+        thread.join(2000);
+        assertFalse(thread.isAlive());
+        assertFalse(result[0]);
+        assertEquals(-1, source.readAt(0, new byte[16], 0, 16));
+        source.close();
+    }
+}
@@ -0,0 +1,74 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * BinaryMessenger which keeps the handlers and counts the messages sent to dart
+ */
+final class FakeBinaryMessenger implements BinaryMessenger {
+
+    final private Map<String, BinaryMessageHandler> mHandlers = new HashMap<>();
+    private long mSentCount = 0;
+    private long mSentBytes = 0;
+
+    @Override
+    public synchronized void send(String channel, ByteBuffer message) {
+        send(channel, message, null);
+    }
+
+    @Override
+    public synchronized void send(String channel, ByteBuffer message, BinaryReply callback) {
+        mSentCount++;
+        if (message != null)
+            mSentBytes += message.position() > 0 ? message.position() : message.remaining();
+        if (callback != null)
+            callback.reply(null);
+    }
+
+    @Override
+    public synchronized void setMessageHandler(String channel, BinaryMessageHandler handler) {
+        if (handler == null)
+            mHandlers.remove(channel);
+        else
+            mHandlers.put(channel, handler);
+    }
+
+    synchronized BinaryMessageHandler handler(String channel) {
+        return mHandlers.get(channel);
+    }
+
+    synchronized long sentCount() {
+        return mSentCount;
+    }
+
+    synchronized long sentBytes() {
+        return mSentBytes;
+    }
+}
@@ -0,0 +1,206 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.view.TextureRegistry;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * FijkEngine for tests, native players are mockito mocks and textures come from an optional
+ * {@link FakeTextureRegistry}
+ */
+class FakeEngine implements FijkEngine {
+
+    final private Context mContext;
+    final private FakeTextureRegistry mTextures;
+    // stub only mocks don't record invocations, used by benchmarks which call the player millions of times
+    final private boolean mStubOnly;
+    final private FakeBinaryMessenger mMessenger = new FakeBinaryMessenger();
+    final private List<IjkMediaPlayer> mMediaPlayers = new ArrayList<>();
+    final private FijkBitmapPool mBitmapPool = new FijkBitmapPool(FijkBitmapPool.DEFAULT_MAX_BYTES);
+    final private FijkTexturePool mTexturePool = new FijkTexturePool(this);
+    final private FijkScheduler mScheduler = new FijkScheduler(new EventChannel.EventSink() {
+        @Override
+        public void success(Object o) {
+        }
+
+        @Override
+        public void error(String s, String s1, Object o) {
+        }
+
+        @Override
+        public void endOfStream() {
+        }
+    });
+    final private FijkMemoryGovernor mMemoryGovernor = new FijkMemoryGovernor();
+
+    private int mPlayingCnt = 0;
+    private int mPlayableCnt = 0;
+
+    FakeEngine(@Nullable Context context) {
+        this(context, null, false);
+    }
+
+    FakeEngine(@Nullable Context context, @Nullable FakeTextureRegistry textures, boolean stubOnly) {
+        mContext = context;
+        mTextures = textures;
+        mStubOnly = stubOnly;
+    }
+
+    @Nullable
+    @Override
+    public TextureRegistry.SurfaceTextureEntry createSurfaceEntry() {
+        return mTextures != null ? mTextures.createSurfaceTexture() : null;
+    }
+
+    @NonNull
+    @Override
+    public IjkMediaPlayer createMediaPlayer() {
+        IjkMediaPlayer mediaPlayer = mStubOnly
+                ? Mockito.mock(IjkMediaPlayer.class, Mockito.withSettings().stubOnly())
+                : Mockito.mock(IjkMediaPlayer.class);
+        synchronized (mMediaPlayers) {
+            mMediaPlayers.add(mediaPlayer);
+        }
+        return mediaPlayer;
+    }
+
+    /**
+     * @return the last native player created
+     */
+    IjkMediaPlayer mediaPlayer() {
+        synchronized (mMediaPlayers) {
+            return mMediaPlayers.get(mMediaPlayers.size() - 1);
+        }
+    }
+
+    @NonNull
+    FakeBinaryMessenger fakeMessenger() {
+        return mMessenger;
+    }
+
+    @Nullable
+    @Override
+    public BinaryMessenger messenger() {
+        return mMessenger;
+    }
+
+    @Nullable
+    @Override
+    public Context context() {
+        return mContext;
+    }
+
+    @Nullable
+    @Override
+    public FijkDiskCache diskCache() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public FijkPreloader preloader() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public FijkKeyframeIndex keyframeIndex() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public FijkOptionProfile optionProfile(@NonNull String name) {
+        return null;
+    }
+
+    @NonNull
+    @Override
+    public FijkBitmapPool bitmapPool() {
+        return mBitmapPool;
+    }
+
+    @NonNull
+    @Override
+    public FijkTexturePool texturePool() {
+        return mTexturePool;
+    }
+
+    @NonNull
+    @Override
+    public FijkScheduler scheduler() {
+        return mScheduler;
+    }
+
+    @NonNull
+    @Override
+    public FijkMemoryGovernor memoryGovernor() {
+        return mMemoryGovernor;
+    }
+
+    @Nullable
+    @Override
+    public String lookupKeyForAsset(@NonNull String asset, @Nullable String packageName) {
+        return asset;
+    }
+
+    @Override
+    public void onPlayingChange(int delta) {
+        mPlayingCnt += delta;
+    }
+
+    @Override
+    public void onPlayableChange(int delta) {
+        mPlayableCnt += delta;
+    }
+
+    int playingCnt() {
+        return mPlayingCnt;
+    }
+
+    int playableCnt() {
+        return mPlayableCnt;
+    }
+
+    @Override
+    public void setScreenOn(boolean on) {
+    }
+
+    @Override
+    public void audioFocus(boolean request) {
+    }
+}
@@ -0,0 +1,74 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * MethodChannel.Result which records the reply and the thread it was delivered on
+ */
+final class FakeResult implements MethodChannel.Result {
+
+    final private CountDownLatch mLatch = new CountDownLatch(1);
+    volatile Object value;
+    volatile String errorCode;
+    volatile boolean notImplemented = false;
+    volatile Thread thread;
+    volatile int replies = 0;
+
+    @Override
+    public void success(Object o) {
+        value = o;
+        reply();
+    }
+
+    @Override
+    public void error(String s, String s1, Object o) {
+        errorCode = s;
+        reply();
+    }
+
+    @Override
+    public void notImplemented() {
+        notImplemented = true;
+        reply();
+    }
+
+    private void reply() {
+        thread = Thread.currentThread();
+        replies++;
+        mLatch.countDown();
+    }
+
+    boolean replied() {
+        return mLatch.getCount() == 0;
+    }
+
+    boolean await(long ms) throws InterruptedException {
+        return mLatch.await(ms, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,78 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import android.graphics.SurfaceTexture;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.flutter.view.TextureRegistry;
+
+/**
+ * TextureRegistry which hands out entries of stubbed SurfaceTexture and counts the live ones
+ */
+final class FakeTextureRegistry implements TextureRegistry {
+
+    final private AtomicLong mNextId = new AtomicLong(0);
+    final private AtomicInteger mLiveCount = new AtomicInteger(0);
+
+    @Override
+    public SurfaceTextureEntry createSurfaceTexture() {
+        return registerSurfaceTexture(new SurfaceTexture(0));
+    }
+
+    public SurfaceTextureEntry registerSurfaceTexture(final SurfaceTexture surfaceTexture) {
+        final long id = mNextId.incrementAndGet();
+        mLiveCount.incrementAndGet();
+        return new SurfaceTextureEntry() {
+            private boolean mReleased = false;
+
+            @Override
+            public SurfaceTexture surfaceTexture() {
+                return surfaceTexture;
+            }
+
+            @Override
+            public long id() {
+                return id;
+            }
+
+            @Override
+            public synchronized void release() {
+                if (mReleased)
+                    return;
+                mReleased = true;
+                surfaceTexture.release();
+                mLiveCount.decrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * @return count of entries created and not released
+     */
+    int liveCount() {
+        return mLiveCount.get();
+    }
+}
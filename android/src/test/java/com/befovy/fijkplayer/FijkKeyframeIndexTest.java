@@ -0,0 +1,163 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import androidx.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FijkKeyframeIndexTest {
+
+    private File mDir;
+    private File mMedia;
+    final private AtomicInteger mOpened = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("fijk-keyframes", "");
+        //noinspection ResultOfMethodCallIgnored
+        mDir.delete();
+        mMedia = Mp4Builder.write(Mp4KeyframeParserTest.mp4());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mDir.delete();
+        //noinspection ResultOfMethodCallIgnored
+        mMedia.delete();
+    }
+
+    private FijkKeyframeIndex.Source source(final File file) {
+        return new FijkKeyframeIndex.Source() {
+            @Nullable
+            @Override
+            public IMediaDataSource open() {
+                mOpened.incrementAndGet();
+                return file != null ? new FileMediaDataSource(file) : null;
+            }
+        };
+    }
+
+    @Test
+    public void persistedAcrossInstances() {
+        String key = FijkKeyframeIndex.keyOf(mMedia);
+        FijkKeyframeIndex.Keyframes built = new FijkKeyframeIndex(mDir).get(key, source(mMedia));
+        assertNotNull(built);
+        assertEquals(1, mOpened.get());
+
+        // a new instance, as after app restart, reads the file and not the media
+        FijkKeyframeIndex.Keyframes loaded = new FijkKeyframeIndex(mDir).get(key, source(null));
+        assertNotNull(loaded);
+        assertEquals(1, mOpened.get());
+        assertEquals(built.count(), loaded.count());
+        for (int i = 0; i < built.count(); i++) {
+            assertEquals(built.timeMs(i), loaded.timeMs(i));
+            assertEquals(built.offset(i), loaded.offset(i));
+        }
+    }
+
+    @Test
+    public void keptInMemory() {
+        FijkKeyframeIndex index = new FijkKeyframeIndex(mDir);
+        FijkKeyframeIndex.Keyframes first = index.get("media", source(mMedia));
+        assertSame(first, index.get("media", source(mMedia)));
+        assertEquals(1, mOpened.get());
+    }
+
+    @Test
+    public void unreadableMediaIsTriedAgain() {
+        FijkKeyframeIndex index = new FijkKeyframeIndex(mDir);
+        assertNull(index.get("media", source(null)));
+        assertNull(index.get("media", source(null)));
+        assertEquals(2, mOpened.get());
+        assertNotNull(index.get("media", source(mMedia)));
+    }
+
+    @Test
+    public void unsupportedMediaIsPersistedEmpty() throws IOException {
+        File noise = Mp4Builder.write(new byte[1000]);
+        try {
+            assertEquals(0, new FijkKeyframeIndex(mDir).get("noise", source(noise)).count());
+            assertEquals(0, new FijkKeyframeIndex(mDir).get("noise", source(null)).count());
+            assertEquals(1, mOpened.get());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            noise.delete();
+        }
+    }
+
+    @Test
+    public void filesAreTrimmed() {
+        FijkKeyframeIndex index = new FijkKeyframeIndex(mDir);
+        for (int i = 0; i < FijkKeyframeIndex.MAX_FILES + 10; i++)
+            assertNotNull(index.get("media" + i, source(mMedia)));
+        File[] files = mDir.listFiles();
+        assertNotNull(files);
+        assertTrue(files.length <= FijkKeyframeIndex.MAX_FILES);
+    }
+
+    @Test
+    public void nearestAndFloor() {
+        FijkKeyframeIndex.Keyframes keyframes = new FijkKeyframeIndex.Keyframes(
+                new int[]{0, 2000, 4000, 4000, 6000}, new long[]{100, 5000, 9000, 9000, 12000});
+        assertEquals(0, keyframes.floor(-5));
+        assertEquals(1, keyframes.floor(3999));
+        assertEquals(2, keyframes.floor(4000));
+        assertEquals(2, keyframes.floor(5999));
+        assertEquals(4, keyframes.floor(100000));
+        assertEquals(0, keyframes.nearest(900));
+        assertEquals(2000, keyframes.nearest(1100));
+        assertEquals(4000, keyframes.nearest(4999));
+        assertEquals(6000, keyframes.nearest(5001));
+        assertEquals(6000, keyframes.nearest(100000));
+        assertEquals(4900, keyframes.rangeLength(0, 1 << 20));
+        // equal offsets are skipped, the last keyframe reads up to max
+        assertEquals(3000, keyframes.rangeLength(2, 1 << 20));
+        assertEquals(1000, keyframes.rangeLength(4, 1000));
+        assertEquals(-1, FijkKeyframeIndex.Keyframes.EMPTY.floor(0));
+        assertEquals(1234, FijkKeyframeIndex.Keyframes.EMPTY.nearest(1234));
+    }
+}
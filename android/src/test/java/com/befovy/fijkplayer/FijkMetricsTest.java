@@ -0,0 +1,192 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FijkMetricsTest {
+
+    private long mNow;
+    private FijkMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        // 0 means "not happened" in FijkMetrics, so the clock starts later
+        mNow = 1000;
+        mMetrics = new FijkMetrics(new FijkMetrics.Clock() {
+            @Override
+            public long now() {
+                return mNow;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> sub(Map<String, Object> map, String key) {
+        return (Map<String, Object>) map.get(key);
+    }
+
+    @Test
+    public void histogramBucketsByUpperBound() {
+        FijkMetrics.Histogram histogram = new FijkMetrics.Histogram();
+        histogram.record(0);
+        histogram.record(50);
+        histogram.record(51);
+        histogram.record(10000);
+        histogram.record(10001);
+
+        Map<String, Object> map = histogram.toMap();
+        assertEquals(5L, map.get("count"));
+        assertEquals(20102L, map.get("sum"));
+        assertEquals(10001L, map.get("max"));
+        assertEquals(4020L, map.get("avg"));
+        assertEquals(Arrays.asList(2L, 1L, 0L, 0L, 0L, 0L, 0L, 1L, 1L), map.get("buckets"));
+
+        histogram.reset();
+        map = histogram.toMap();
+        assertEquals(0L, map.get("count"));
+        assertEquals(0L, map.get("max"));
+        assertEquals(0L, map.get("avg"));
+        assertEquals(Arrays.asList(0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L), map.get("buckets"));
+    }
+
+    @Test
+    public void startupLatencies() {
+        mMetrics.onSetDataSource();
+        mNow += 10;
+        mMetrics.onPrepareAsync();
+        mNow += 300;
+        mMetrics.onPrepared();
+        mNow += 200;
+        mMetrics.onFirstFrame();
+        mNow += 100;
+        mMetrics.onFirstFrame();
+
+        Map<String, Object> map = mMetrics.toMap();
+        assertEquals(10L, map.get("setDataSourceToPrepareAsync"));
+        assertEquals(300L, map.get("prepareMs"));
+        assertEquals(500L, map.get("firstFrameMs"));
+        assertEquals(1L, sub(map, "prepare").get("count"));
+        assertEquals(1L, sub(map, "firstFrame").get("count"));
+        assertEquals(500L, sub(map, "firstFrame").get("sum"));
+    }
+
+    @Test
+    public void rebufferRatioOverTimePlayed() {
+        mMetrics.onSetDataSource();
+        mMetrics.onPrepareAsync();
+        // startup buffering is not a stall
+        mMetrics.onBufferingStart();
+        mNow += 500;
+        mMetrics.onBufferingEnd();
+        mMetrics.onFirstFrame();
+        mMetrics.onPlaying(true);
+
+        mNow += 700;
+        mMetrics.onBufferingStart();
+        mNow += 300;
+        mMetrics.onBufferingEnd();
+
+        // paused time counts neither as played nor as stalled
+        mMetrics.onPlaying(false);
+        mNow += 5000;
+        mMetrics.onBufferingStart();
+        mNow += 1000;
+        mMetrics.onBufferingEnd();
+        mMetrics.onPlaying(true);
+        mNow += 1000;
+
+        Map<String, Object> map = mMetrics.toMap();
+        assertEquals(1L, map.get("stallCount"));
+        assertEquals(300L, map.get("stallMs"));
+        assertEquals(2000L, map.get("playMs"));
+        assertEquals(0.15, (Double) map.get("rebufferRatio"), 1e-9);
+    }
+
+    @Test
+    public void openStallCountsUntilPause() {
+        mMetrics.onFirstFrame();
+        mMetrics.onPlaying(true);
+        mNow += 100;
+        mMetrics.onBufferingStart();
+        mNow += 100;
+
+        Map<String, Object> map = mMetrics.toMap();
+        assertEquals(1L, map.get("stallCount"));
+        assertEquals(100L, map.get("stallMs"));
+        assertEquals(0.5, (Double) map.get("rebufferRatio"), 1e-9);
+
+        mMetrics.onPlaying(false);
+        mNow += 1000;
+        mMetrics.onBufferingEnd();
+        map = mMetrics.toMap();
+        assertEquals(1L, sub(map, "stall").get("count"));
+        assertEquals(100L, map.get("stallMs"));
+        assertEquals(200L, map.get("playMs"));
+    }
+
+    @Test
+    public void resetKeepsPlayingSessionScope() {
+        mMetrics.onFirstFrame();
+        mMetrics.onPlaying(true);
+        mNow += 400;
+        mMetrics.onBufferingStart();
+        mNow += 100;
+        mMetrics.onBufferingEnd();
+        mMetrics.onSeekIssued();
+
+        mMetrics.reset();
+        Map<String, Object> map = mMetrics.toMap();
+        assertEquals(0L, map.get("stallMs"));
+        assertEquals(0L, map.get("playMs"));
+        assertEquals(0L, map.get("seeksIssued"));
+        assertFalse(map.containsKey("rebufferRatio"));
+
+        mNow += 250;
+        map = mMetrics.toMap();
+        assertEquals(250L, map.get("playMs"));
+        assertEquals(0.0, (Double) map.get("rebufferRatio"), 1e-9);
+    }
+
+    @Test
+    public void seekLatencyFromLastRequest() {
+        mMetrics.onSeekRequest();
+        mNow += 100;
+        mMetrics.onSeekRequest();
+        mNow += 30;
+        mMetrics.onSeekComplete();
+        mNow += 30;
+        mMetrics.onSeekComplete();
+
+        Map<String, Object> seek = sub(mMetrics.toMap(), "seek");
+        assertEquals(1L, seek.get("count"));
+        assertEquals(30L, seek.get("sum"));
+    }
+}
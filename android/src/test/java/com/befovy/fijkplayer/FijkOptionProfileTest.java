@@ -0,0 +1,100 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+public class FijkOptionProfileTest {
+
+    private static Map<Integer, Object> options(int category, Object... nameValues) {
+        Map<String, Object> option = new LinkedHashMap<>();
+        for (int i = 0; i < nameValues.length; i += 2)
+            option.put((String) nameValues[i], nameValues[i + 1]);
+        Map<Integer, Object> options = new LinkedHashMap<>();
+        options.put(category, option);
+        return options;
+    }
+
+    @Test
+    public void appliesInCallOrder() {
+        Map<Integer, Object> options = options(IjkMediaPlayer.OPT_CATEGORY_FORMAT,
+                "a", 1, "b", "x", "c", 2L, "d", "y");
+        FijkOptionProfile profile = FijkOptionProfile.compile(options, true);
+        assertEquals(4, profile.size());
+
+        IjkMediaPlayer player = mock(IjkMediaPlayer.class);
+        profile.applyTo(player, new HostOption());
+        InOrder order = inOrder(player);
+        order.verify(player).setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "a", 1L);
+        order.verify(player).setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "b", "x");
+        order.verify(player).setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "c", 2L);
+        order.verify(player).setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "d", "y");
+        order.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void hostIntOutOfRangeIsRejected() {
+        Map<Integer, Object> options = options(0, "too-big", 1L << 40, "fits", 7L, "str", "s");
+        try {
+            FijkOptionProfile.compile(options, true);
+            fail("host value out of int range should be rejected");
+        } catch (IllegalArgumentException ignored) {
+        }
+        FijkOptionProfile profile = FijkOptionProfile.compile(options, false);
+        assertEquals(2, profile.size());
+        HostOption host = new HostOption();
+        profile.applyTo(mock(IjkMediaPlayer.class), host);
+        assertEquals(-1, host.getIntOption("too-big", -1));
+        assertEquals(7, host.getIntOption("fits", -1));
+        assertEquals("s", host.getStrOption("str", null));
+    }
+
+    @Test
+    public void playerLongOptionIsKept() {
+        FijkOptionProfile profile = FijkOptionProfile.compile(
+                options(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "probesize", 1L << 40), true);
+        assertEquals(1, profile.size());
+    }
+
+    @Test
+    public void stringOptionIsTheLastString() {
+        FijkOptionProfile profile = FijkOptionProfile.compile(options(IjkMediaPlayer.OPT_CATEGORY_FORMAT,
+                "headers", "a", "user_agent", "ua", "cookies", 3), false);
+        assertEquals("a", profile.stringOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "headers", null));
+        assertEquals("ua", profile.stringOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "user_agent", null));
+        // an int option of the name is not a string option
+        assertEquals("def", profile.stringOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "cookies", "def"));
+        assertEquals("def", profile.stringOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "headers", "def"));
+    }
+}
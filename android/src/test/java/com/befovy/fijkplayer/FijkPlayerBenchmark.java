@@ -0,0 +1,138 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * Event dispatch and option cost of FijkPlayer, against a stub only native player.
+ * Events are the ones which don't call the native player, they go through the event channel
+ * with a dart listener to {@link FakeBinaryMessenger}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FijkPlayerBenchmark {
+
+    private FakeEngine mEngine;
+    private FijkPlayer mPlayer;
+    private IjkMediaPlayer mMediaPlayer;
+    private Map<Integer, Object> mOptions;
+    private int mPosition = 0;
+
+    @Setup
+    public void setUp() {
+        mEngine = new FakeEngine(null, new FakeTextureRegistry(), true);
+        mPlayer = new FijkPlayer(mEngine, false);
+        mMediaPlayer = mEngine.mediaPlayer();
+        listen("befovy.com/fijkplayer/event/" + mPlayer.getPlayerId());
+        mOptions = options();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPlayer.release();
+    }
+
+    /**
+     * Listen to the event channel as dart does, so events are encoded and sent to messenger
+     */
+    private void listen(String channel) {
+        ByteBuffer message = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall("listen", null));
+        message.rewind();
+        mEngine.fakeMessenger().handler(channel).onMessage(message, new BinaryMessenger.BinaryReply() {
+            @Override
+            public void reply(ByteBuffer reply) {
+            }
+        });
+    }
+
+    /**
+     * A typical options map from dart, some of each category
+     */
+    private static Map<Integer, Object> options() {
+        Map<String, Object> format = new HashMap<>();
+        format.put("fflags", "fastseek");
+        format.put("reconnect", 1);
+        format.put("user_agent", "fijkplayer");
+        Map<String, Object> codec = new HashMap<>();
+        codec.put("skip_loop_filter", 48);
+        Map<String, Object> player = new HashMap<>();
+        player.put("mediacodec", 1);
+        player.put("framedrop", 1);
+        player.put("packet-buffering", 0);
+        player.put("max-buffer-size", 1024 * 1024);
+        Map<String, Object> host = new HashMap<>();
+        host.put(HostOption.SEEK_MODE, FijkPlayer.SEEK_MODE_FAST);
+        Map<Integer, Object> options = new HashMap<>();
+        options.put(IjkMediaPlayer.OPT_CATEGORY_FORMAT, format);
+        options.put(IjkMediaPlayer.OPT_CATEGORY_CODEC, codec);
+        options.put(IjkMediaPlayer.OPT_CATEGORY_PLAYER, player);
+        // category 0 is host options
+        options.put(0, host);
+        return options;
+    }
+
+    @Benchmark
+    public void positionEvent() {
+        mPosition += 40;
+        mPlayer.onEvent(mMediaPlayer, FijkEventConstants.CURRENT_POSITION_UPDATE, mPosition, 0, null);
+    }
+
+    @Benchmark
+    public void bufferingEvent() {
+        mPosition += 40;
+        mPlayer.onEvent(mMediaPlayer, FijkEventConstants.BUFFERING_UPDATE, mPosition, 50, null);
+    }
+
+    /**
+     * Same work as applyOptions of FijkPlayer, without keeping the profile in its option log
+     */
+    @Benchmark
+    public FijkOptionProfile applyOptions() {
+        FijkOptionProfile profile = FijkOptionProfile.compile(mOptions, false);
+        profile.applyTo(mMediaPlayer, new HostOption());
+        return profile;
+    }
+}
@@ -0,0 +1,261 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.MethodCall;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Method calls of FijkPlayer against a mocked native player.
+ * Test thread is the main thread, player tasks run on the shared pool.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class FijkPlayerDispatchTest {
+
+    final private static long TIMEOUT_MS = 5000;
+
+    private FakeEngine mEngine;
+    private FijkPlayer mPlayer;
+    private IjkMediaPlayer mMediaPlayer;
+
+    @Before
+    public void setUp() {
+        mEngine = new FakeEngine(RuntimeEnvironment.application);
+        mPlayer = new FijkPlayer(mEngine, false);
+        mMediaPlayer = mEngine.mediaPlayer();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        FakeResult result = call("stop", null);
+        awaitReply(result);
+        mPlayer.release();
+    }
+
+    private FakeResult call(String method, Object arguments) {
+        FakeResult result = new FakeResult();
+        mPlayer.onMethodCall(new MethodCall(method, arguments), result);
+        return result;
+    }
+
+    private static Map<String, Object> url(String url) {
+        Map<String, Object> args = new HashMap<>();
+        args.put("url", url);
+        return args;
+    }
+
+    private static Map<String, Object> arg(String name, Object value) {
+        Map<String, Object> args = new HashMap<>();
+        args.put(name, value);
+        return args;
+    }
+
+    /**
+     * Run main looper until result replied, player threads post replies and events to it
+     */
+    private void awaitReply(FakeResult result) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!result.replied() && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(1);
+        }
+        assertTrue("no reply in " + TIMEOUT_MS + "ms", result.replied());
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    @Test
+    public void callsKeepOrder() throws Exception {
+        FakeResult r1 = call("setDataSource", url("https://example.com/a.mp4"));
+        FakeResult r2 = call("prepareAsync", null);
+        FakeResult r3 = call("start", null);
+        awaitReply(r1);
+        awaitReply(r2);
+        awaitReply(r3);
+
+        InOrder inOrder = inOrder(mMediaPlayer);
+        inOrder.verify(mMediaPlayer).setDataSource(any(Context.class), any(Uri.class));
+        inOrder.verify(mMediaPlayer).prepareAsync();
+        inOrder.verify(mMediaPlayer).start();
+
+        assertNull(r1.errorCode);
+        assertNull(r2.errorCode);
+        assertNull(r3.errorCode);
+        assertSame(Looper.getMainLooper().getThread(), r1.thread);
+        assertSame(Looper.getMainLooper().getThread(), r3.thread);
+    }
+
+    @Test
+    public void blockingCallLeavesMainThread() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                entered.countDown();
+                unblock.await();
+                return null;
+            }
+        }).when(mMediaPlayer).setDataSource(any(Context.class), any(Uri.class));
+
+        long start = System.nanoTime();
+        FakeResult result = call("setDataSource", url("https://example.com/a.mp4"));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(entered.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue("onMethodCall blocked " + elapsedMs + "ms", elapsedMs < 100);
+        assertFalse(result.replied());
+
+        unblock.countDown();
+        awaitReply(result);
+        assertNull(result.errorCode);
+        assertEquals(1, result.replies);
+    }
+
+    @Test
+    public void exceptionRepliesError() throws Exception {
+        doThrow(new IllegalStateException("native state")).when(mMediaPlayer).prepareAsync();
+        FakeResult r1 = call("setDataSource", url("https://example.com/a.mp4"));
+        FakeResult r2 = call("prepareAsync", null);
+        FakeResult r3 = call("start", null);
+        awaitReply(r1);
+        awaitReply(r2);
+        awaitReply(r3);
+
+        assertNull(r1.errorCode);
+        assertEquals("-1", r2.errorCode);
+        assertEquals(1, r2.replies);
+        // the player thread survives the exception
+        assertNull(r3.errorCode);
+    }
+
+    @Test
+    public void asyncPreparingBeforePrepared() throws Exception {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        when(mMediaPlayer.getDuration()).thenReturn(1000L);
+        // native player prepares at once, and notifies on main thread
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPlayer.onPrepared(mMediaPlayer);
+                    }
+                });
+                return null;
+            }
+        }).when(mMediaPlayer).prepareAsync();
+
+        awaitReply(call("setDataSource", url("https://example.com/a.mp4")));
+        awaitReply(call("prepareAsync", null));
+        // FijkState.prepared
+        assertEquals(3, mPlayer.getState());
+    }
+
+    @Test
+    public void startOnPreparedFromAppliedOptions() throws Exception {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        when(mMediaPlayer.getDuration()).thenReturn(1000L);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPlayer.onPrepared(mMediaPlayer);
+                    }
+                });
+                return null;
+            }
+        }).when(mMediaPlayer).prepareAsync();
+
+        Map<String, Object> player = new HashMap<>();
+        player.put("start-on-prepared", 1);
+        Map<Integer, Object> options = new HashMap<>();
+        options.put(IjkMediaPlayer.OPT_CATEGORY_PLAYER, player);
+        awaitReply(call("applyOptions", options));
+        awaitReply(call("setDataSource", url("https://example.com/a.mp4")));
+        awaitReply(call("prepareAsync", null));
+        // FijkState.started, native player started by itself
+        assertEquals(4, mPlayer.getState());
+    }
+
+    @Test
+    public void scrubSeeksFastThenReleaseSeeksAccurately() throws Exception {
+        awaitReply(call("setScrubbing", arg("scrubbing", true)));
+        awaitReply(call("seekTo", arg("msec", 1000)));
+        // held while the first seek is in flight, the later one replaces it
+        awaitReply(call("seekTo", arg("msec", 2000)));
+        awaitReply(call("seekTo", arg("msec", 3000)));
+        awaitReply(call("setScrubbing", arg("scrubbing", false)));
+        mPlayer.onSeekComplete(mMediaPlayer);
+        awaitReply(call("seekTo", arg("msec", 5000)));
+
+        InOrder inOrder = inOrder(mMediaPlayer);
+        inOrder.verify(mMediaPlayer).setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", 0L);
+        inOrder.verify(mMediaPlayer).seekTo(1000);
+        inOrder.verify(mMediaPlayer).setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", 1L);
+        inOrder.verify(mMediaPlayer).seekTo(3000);
+        // a seek out of scrub mode uses the value of player options again, 0 by default
+        inOrder.verify(mMediaPlayer).setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", 0L);
+        inOrder.verify(mMediaPlayer).seekTo(5000);
+        verify(mMediaPlayer, never()).seekTo(2000);
+    }
+}
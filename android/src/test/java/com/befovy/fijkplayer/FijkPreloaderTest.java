@@ -0,0 +1,147 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FijkPreloaderTest {
+
+    final private static int SIZE = 2 * 1024 * 1024;
+
+    private StubHttpServer mServer;
+    private File mDir;
+    private FijkDiskCache mCache;
+    private FijkPreloader mPreloader;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubHttpServer(SIZE);
+        mDir = File.createTempFile("fijk-preload", "");
+        assertTrue(mDir.delete() && mDir.mkdirs());
+        mCache = new FijkDiskCache(mDir, FijkDiskCache.DEFAULT_MAX_BYTES);
+        mPreloader = new FijkPreloader(mCache);
+    }
+
+    @After
+    public void tearDown() {
+        mPreloader.cancelAll();
+        mServer.stop();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files)
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mDir.delete();
+    }
+
+    private String url(int i) {
+        return mServer.url() + "?i=" + i;
+    }
+
+    /**
+     * Wait until count requests reached the server, each running preload makes one
+     */
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mServer.requests.get() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+
+    private boolean cached(String url, int chunks) {
+        FijkDiskCache.Entry entry = mCache.open(url);
+        try {
+            for (int i = 0; i < chunks; i++) {
+                if (!mCache.hasChunk(entry, i))
+                    return false;
+            }
+            return true;
+        } finally {
+            mCache.close(entry);
+        }
+    }
+
+    @Test
+    public void finishedPreloadIsTaken() throws InterruptedException {
+        String url = url(0);
+        mPreloader.preload(url, 2 * FijkDiskCache.CHUNK_SIZE);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!cached(url, 2) && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(mPreloader.take(url));
+        assertFalse(mPreloader.take(url));
+    }
+
+    @Test
+    public void failedPreloadIsNotTaken() throws InterruptedException {
+        String url = url(0);
+        mServer.stop();
+        mPreloader.preload(url, FijkDiskCache.CHUNK_SIZE);
+        Thread.sleep(1000);
+        assertFalse(mPreloader.take(url));
+    }
+
+    @Test
+    public void queuedPreloadIsNotTaken() throws InterruptedException {
+        mServer.latencyMs = 10000;
+        for (int i = 0; i <= FijkPreloader.MAX_CONCURRENT; i++)
+            mPreloader.preload(url(i), SIZE);
+        awaitRequests(FijkPreloader.MAX_CONCURRENT);
+        assertTrue(mPreloader.take(url(0)));
+        assertFalse(mPreloader.take(url(FijkPreloader.MAX_CONCURRENT)));
+    }
+
+    @Test
+    public void cancelDisconnectsRunningPreload() throws InterruptedException {
+        mServer.latencyMs = 10000;
+        for (int i = 0; i <= FijkPreloader.MAX_CONCURRENT; i++)
+            mPreloader.preload(url(i), SIZE);
+        awaitRequests(FijkPreloader.MAX_CONCURRENT);
+        long start = System.currentTimeMillis();
+        mPreloader.cancel(url(0));
+        // the queued preload starts as soon as the cancelled one leaves its thread
+        awaitRequests(FijkPreloader.MAX_CONCURRENT + 1);
+        assertTrue(mServer.requests.get() > FijkPreloader.MAX_CONCURRENT);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    public void preloadsAreBounded() throws InterruptedException {
+        mServer.latencyMs = 10000;
+        for (int i = 0; i <= FijkPreloader.MAX_PRELOADS; i++)
+            mPreloader.preload(url(i), SIZE);
+        awaitRequests(FijkPreloader.MAX_CONCURRENT);
+        // the oldest preload is cancelled to keep MAX_PRELOADS
+        assertFalse(mPreloader.take(url(0)));
+        assertTrue(mPreloader.take(url(1)));
+    }
+}
@@ -0,0 +1,127 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FijkRegistryTest {
+
+    @Test
+    public void growingIdsDoNotKeepSegments() {
+        FijkRegistry<Object> registry = new FijkRegistry<>();
+        Object value = new Object();
+        for (int id = 1; id < 1 << 22; id++) {
+            registry.put(id, value);
+            if (id > 8)
+                registry.remove(id - 8);
+            if (id % 1000 == 0)
+                assertTrue(registry.segmentCount() <= 2);
+        }
+        assertEquals(8, registry.size());
+    }
+
+    @Test
+    public void overflowIds() {
+        FijkRegistry<String> registry = new FijkRegistry<>();
+        registry.put(-3, "a");
+        registry.put(Integer.MAX_VALUE, "b");
+        registry.put(5, "c");
+        assertEquals("a", registry.get(-3));
+        assertEquals("b", registry.get(Integer.MAX_VALUE));
+        assertEquals(3, registry.size());
+        assertEquals("c", registry.values().get(0));
+        assertEquals("a", registry.remove(-3));
+        assertNull(registry.get(-3));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void concurrentStress() throws Throwable {
+        final FijkRegistry<Integer> registry = new FijkRegistry<>();
+        final int threads = 8;
+        // each segment has one id of every thread, so segments are dropped and created under race
+        final int idsPerThread = 4;
+        final int segmentSize = 1024;
+        final int rounds = 1000000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int owner = t;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(owner);
+                    boolean[] present = new boolean[idsPerThread];
+                    try {
+                        start.await();
+                        for (int i = 0; i < rounds; i++) {
+                            int n = random.nextInt(idsPerThread);
+                            int id = n * segmentSize + owner;
+                            if (present[n]) {
+                                assertEquals(Integer.valueOf(id), registry.get(id));
+                                assertEquals(Integer.valueOf(id), registry.remove(id));
+                                present[n] = false;
+                            } else {
+                                assertNull(registry.get(id));
+                                assertNull(registry.put(id, id));
+                                present[n] = true;
+                            }
+                        }
+                        for (int n = 0; n < idsPerThread; n++) {
+                            int id = n * segmentSize + owner;
+                            assertEquals(present[n] ? Integer.valueOf(id) : null, registry.remove(id));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        if (failure.get() != null)
+            throw failure.get();
+        assertEquals(0, registry.size());
+        assertEquals(0, registry.segmentCount());
+        assertTrue(registry.values().isEmpty());
+
+        Integer value = 42;
+        assertNull(registry.put(7, value));
+        assertSame(value, registry.get(7));
+    }
+}
@@ -0,0 +1,141 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class FijkSchedulerTest {
+
+    final private List<Map<?, ?>> mEvents = new ArrayList<>();
+    private FakeEngine mEngine;
+    private FijkScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mEngine = new FakeEngine(RuntimeEnvironment.application);
+        mScheduler = new FijkScheduler(new EventChannel.EventSink() {
+            @Override
+            public void success(Object o) {
+                mEvents.add((Map<?, ?>) o);
+            }
+
+            @Override
+            public void error(String s, String s1, Object o) {
+            }
+
+            @Override
+            public void endOfStream() {
+            }
+        });
+    }
+
+    private FijkPlayer player() {
+        FijkPlayer player = new FijkPlayer(mEngine, false);
+        mScheduler.add(player);
+        return player;
+    }
+
+    private String lastAction(FijkPlayer player) {
+        String action = null;
+        for (Map<?, ?> event : mEvents) {
+            if (Integer.valueOf(player.getPlayerId()).equals(event.get("pid")))
+                action = (String) event.get("action");
+        }
+        return action;
+    }
+
+    @Test
+    public void raisedPriorityPreempts() {
+        mScheduler.configure(1, 0, 0);
+        FijkPlayer a = player();
+        FijkPlayer b = player();
+        assertTrue(mScheduler.admit(a));
+        // same priority, the later one wins
+        assertTrue(mScheduler.admit(b));
+        assertEquals("suspend", lastAction(a));
+
+        mScheduler.setPriority(a.getPlayerId(), 1);
+        assertEquals("resume", lastAction(a));
+        assertEquals("suspend", lastAction(b));
+
+        // lowering it again does not swap back, b does not outrank a
+        mScheduler.setPriority(a.getPlayerId(), 0);
+        assertEquals("resume", lastAction(a));
+    }
+
+    @Test
+    public void waitingPlayerKeepsWaitingOnEqualPriority() {
+        mScheduler.configure(1, 0, 0);
+        FijkPlayer a = player();
+        FijkPlayer b = player();
+        mScheduler.setPriority(a.getPlayerId(), 1);
+        assertTrue(mScheduler.admit(a));
+        assertFalse(mScheduler.admit(b));
+        assertEquals("wait", lastAction(b));
+        mScheduler.setPriority(b.getPlayerId(), 1);
+        assertEquals("wait", lastAction(b));
+        mScheduler.setPriority(b.getPlayerId(), 2);
+        assertEquals("resume", lastAction(b));
+        assertEquals("suspend", lastAction(a));
+    }
+
+    @Test
+    public void bufferBudgetIsGlobal() {
+        final long max = 8 * 1024 * 1024;
+        mScheduler.configure(0, max, 0);
+        FijkPlayer a = player();
+        long first = mScheduler.applyLimits(a, mEngine.mediaPlayer());
+        assertEquals(max, first);
+
+        // a holds the whole budget, b gets the floor only
+        FijkPlayer b = player();
+        long second = mScheduler.applyLimits(b, mEngine.mediaPlayer());
+        assertEquals(256 * 1024, second);
+
+        // a prepares again and gets its even share, b gets the rest after it prepares again
+        assertEquals(max / 2, mScheduler.applyLimits(a, mEngine.mediaPlayer()));
+        assertEquals(max / 2, mScheduler.applyLimits(b, mEngine.mediaPlayer()));
+
+        mScheduler.releaseLimits(a);
+        mScheduler.remove(a);
+        assertEquals(max, mScheduler.applyLimits(b, mEngine.mediaPlayer()));
+    }
+}
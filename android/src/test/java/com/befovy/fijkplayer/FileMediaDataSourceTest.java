@@ -0,0 +1,142 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileMediaDataSourceTest {
+
+    final private static int WINDOW = 64 * 1024;
+    final private static int SIZE = 10 * WINDOW + 123;
+
+    private File mFile;
+    private byte[] mData;
+
+    @Before
+    public void setUp() throws IOException {
+        mData = new byte[SIZE];
+        new Random(SIZE).nextBytes(mData);
+        mFile = File.createTempFile("fijk-file", ".mp4");
+        FileOutputStream os = new FileOutputStream(mFile);
+        try {
+            os.write(mData);
+        } finally {
+            os.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    private void assertReads(FileMediaDataSource source, long position, int size) {
+        byte[] buffer = new byte[size];
+        int n = source.readAt(position, buffer, 0, size);
+        int expected = (int) Math.min(size, SIZE - position);
+        assertEquals(expected, n);
+        assertArrayEquals(Arrays.copyOfRange(mData, (int) position, (int) position + n),
+                Arrays.copyOf(buffer, n));
+    }
+
+    @Test
+    public void mappedSequentialRead() {
+        FileMediaDataSource source = new FileMediaDataSource(mFile, WINDOW);
+        assertEquals(SIZE, source.getSize());
+        for (long position = 0; position < SIZE; position += 10000)
+            assertReads(source, position, 10000);
+        assertEquals(-1, source.readAt(SIZE, new byte[16], 0, 16));
+        assertTrue(source.isMapped());
+        source.close();
+    }
+
+    @Test
+    public void mappedReadAcrossWindows() {
+        FileMediaDataSource source = new FileMediaDataSource(mFile, WINDOW);
+        assertReads(source, WINDOW - 100, 3 * WINDOW);
+        assertReads(source, SIZE - 50, 100);
+        assertTrue(source.isMapped());
+        source.close();
+    }
+
+    @Test
+    public void seeksAroundBoundaryReuseWindows() {
+        FileMediaDataSource source = new FileMediaDataSource(mFile, WINDOW);
+        for (int i = 0; i < 10 * FileMediaDataSource.MAX_SEEK_MAPS; i++) {
+            assertReads(source, 3 * WINDOW - 10, 20);
+            assertReads(source, 3 * WINDOW + 10, 20);
+            assertReads(source, 3 * WINDOW - 500, 20);
+        }
+        assertTrue(source.isMapped());
+        source.close();
+    }
+
+    @Test
+    public void manySeeksReadUntilPlaybackMovesOn() {
+        FileMediaDataSource source = new FileMediaDataSource(mFile, WINDOW);
+        Random random = new Random(1);
+        for (int i = 0; i < 4 * FileMediaDataSource.MAX_SEEK_MAPS; i++) {
+            long window = random.nextInt(10);
+            assertReads(source, window * WINDOW + random.nextInt(WINDOW), 4096);
+        }
+        // seeks past the budget are plain reads, mapping itself stays on
+        assertEquals(FileMediaDataSource.MAX_SEEK_MAPS, source.seekMaps());
+        assertTrue(source.isMapped());
+        assertReads(source, 5 * WINDOW - 7, 2 * WINDOW);
+
+        // playback moving on to the next window maps again and resets the budget
+        for (long position = 0; position < 4 * WINDOW; position += 10000)
+            assertReads(source, position, 10000);
+        assertEquals(0, source.seekMaps());
+        assertReads(source, 6 * WINDOW + 1, 4096);
+        assertReads(source, 8 * WINDOW + 1, 4096);
+        assertEquals(2, source.seekMaps());
+        // crossing a boundary right after a seek is still part of the seek
+        assertReads(source, 2 * WINDOW - 100, 200);
+        assertEquals(4, source.seekMaps());
+        source.close();
+    }
+
+    @Test
+    public void unmappedRead() {
+        FileMediaDataSource source = new FileMediaDataSource(mFile, false);
+        assertFalse(source.isMapped());
+        assertReads(source, 7 * WINDOW + 3, WINDOW);
+        assertReads(source, 11, 100);
+        source.close();
+    }
+}
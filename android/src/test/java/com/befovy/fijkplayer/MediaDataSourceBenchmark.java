@@ -0,0 +1,184 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import android.content.res.AssetFileDescriptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * readAt of FileMediaDataSource, with and without mapping, of AssetMediaDataSource and of RawMediaDataSource,
+ * for sequential playback reads, for reads after random seeks, and for playback after random seeks.
+ * The media spans {@link #WINDOWS} map windows of {@link #MAP_WINDOW} bytes, smaller than
+ * {@link FileMediaDataSource#MAP_WINDOW} to keep the temp file small, so a mapped source moves
+ * between windows and runs out of its seek budget as it would on a long file.
+ * The asset source reads the media at an offset inside a bigger file, as an uncompressed asset
+ * inside the apk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MediaDataSourceBenchmark {
+
+    final private static int MAP_WINDOW = 1024 * 1024;
+    final private static int WINDOWS = 8;
+    final private static int MEDIA_SIZE = WINDOWS * MAP_WINDOW;
+    final private static int PLAY_READ = 32 * 1024;
+    final private static int SEEK_READ = 4 * 1024;
+    // reads of playback after a seek, 256 KB cross a window boundary about every fourth seek
+    final private static int PLAY_READS = 8;
+    // start of the asset in the file, the bytes before it belong to other entries of the apk
+    final private static int ASSET_OFFSET = 4096;
+
+    /**
+     * file, mapped, asset or raw
+     */
+    @Param({"file", "mapped", "asset", "raw"})
+    public String source;
+
+    private File mFile;
+    private IMediaDataSource mSource;
+    final private byte[] mBuffer = new byte[PLAY_READ];
+    final private long[] mSeeks = new long[1024];
+    private long mPosition = 0;
+    private int mSeek = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(MEDIA_SIZE);
+        byte[] media = new byte[MEDIA_SIZE];
+        random.nextBytes(media);
+        for (int i = 0; i < mSeeks.length; i++) {
+            mSeeks[i] = random.nextInt(MEDIA_SIZE - PLAY_READS * PLAY_READ);
+        }
+        if ("raw".equals(source)) {
+            mSource = new RawMediaDataSource(new ByteArrayInputStream(media));
+        } else {
+            boolean asset = "asset".equals(source);
+            mFile = File.createTempFile("fijk-bench", ".media");
+            FileOutputStream out = new FileOutputStream(mFile);
+            try {
+                if (asset)
+                    out.write(new byte[ASSET_OFFSET]);
+                out.write(media);
+            } finally {
+                out.close();
+            }
+            if (asset)
+                mSource = new AssetMediaDataSource(assetFileDescriptor(mFile, ASSET_OFFSET, MEDIA_SIZE));
+            else
+                mSource = new FileMediaDataSource(mFile, "mapped".equals(source) ? MAP_WINDOW : 0);
+        }
+    }
+
+    /**
+     * Descriptor of a part of file, as AssetManager.openFd gives for an asset in the apk
+     */
+    private static AssetFileDescriptor assetFileDescriptor(final File file, final long start, final long length) {
+        return new AssetFileDescriptor(null, start, length) {
+            @Override
+            public FileInputStream createInputStream() throws IOException {
+                return new FileInputStream(file);
+            }
+
+            @Override
+            public long getStartOffset() {
+                return start;
+            }
+
+            @Override
+            public long getLength() {
+                return length;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mSource.close();
+        if (mFile != null && !mFile.delete())
+            mFile.deleteOnExit();
+    }
+
+    /**
+     * Read as a playing player does, from start to end and again
+     */
+    @Benchmark
+    public int sequentialRead() throws IOException {
+        int n = mSource.readAt(mPosition, mBuffer, 0, PLAY_READ);
+        mPosition = n > 0 ? mPosition + n : 0;
+        return n;
+    }
+
+    /**
+     * Read at a random position, as after a seek
+     */
+    @Benchmark
+    public int seekRead() throws IOException {
+        mSeek = (mSeek + 1) % mSeeks.length;
+        return mSource.readAt(mSeeks[mSeek], mBuffer, 0, SEEK_READ);
+    }
+
+    /**
+     * Seek to a random position and play on from there
+     */
+    @Benchmark
+    public int seekAndPlay() throws IOException {
+        mSeek = (mSeek + 1) % mSeeks.length;
+        long position = mSeeks[mSeek];
+        int read = 0;
+        for (int i = 0; i < PLAY_READS; i++) {
+            int n = mSource.readAt(position + read, mBuffer, 0, PLAY_READ);
+            if (n <= 0)
+                break;
+            read += n;
+        }
+        return read;
+    }
+}
@@ -0,0 +1,118 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes MP4 boxes for parser tests, only the fields the parser reads carry real values
+ */
+final class Mp4Builder {
+
+    private Mp4Builder() {
+    }
+
+    static byte[] box(String type, byte[]... children) {
+        int size = 8;
+        for (byte[] child : children)
+            size += child.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(size);
+        buffer.put(fourcc(type));
+        for (byte[] child : children)
+            buffer.put(child);
+        return buffer.array();
+    }
+
+    /**
+     * Box with a 64 bit size field
+     */
+    static byte[] largeBox(String type, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(16 + payload.length);
+        buffer.putInt(1);
+        buffer.put(fourcc(type));
+        buffer.putLong(16 + payload.length);
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    /**
+     * Full box of version 0 with 32 bit fields
+     */
+    static byte[] fullBox(String type, int... fields) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + fields.length * 4);
+        buffer.putInt(0);
+        for (int field : fields)
+            buffer.putInt(field);
+        return box(type, buffer.array());
+    }
+
+    /**
+     * Full box of version 1, followed by payload
+     */
+    static byte[] fullBoxV1(String type, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + payload.length);
+        buffer.putInt(1 << 24);
+        buffer.put(payload);
+        return box(type, buffer.array());
+    }
+
+    static byte[] mvhd(int timescale) {
+        return fullBox("mvhd", 0, 0, timescale, 0);
+    }
+
+    static byte[] mdhd(int timescale) {
+        return fullBox("mdhd", 0, 0, timescale, 0);
+    }
+
+    static byte[] hdlr(String handler) {
+        return fullBox("hdlr", 0, ByteBuffer.wrap(fourcc(handler)).getInt(), 0, 0, 0);
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        for (byte[] part : parts)
+            os.write(part, 0, part.length);
+        return os.toByteArray();
+    }
+
+    static File write(byte[] data) throws IOException {
+        File file = File.createTempFile("fijk-mp4", ".mp4");
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(data);
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+
+    private static byte[] fourcc(String type) {
+        return new byte[]{(byte) type.charAt(0), (byte) type.charAt(1), (byte) type.charAt(2), (byte) type.charAt(3)};
+    }
+}
@@ -0,0 +1,169 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static com.befovy.fijkplayer.Mp4Builder.box;
+import static com.befovy.fijkplayer.Mp4Builder.concat;
+import static com.befovy.fijkplayer.Mp4Builder.fullBox;
+import static com.befovy.fijkplayer.Mp4Builder.fullBoxV1;
+import static com.befovy.fijkplayer.Mp4Builder.hdlr;
+import static com.befovy.fijkplayer.Mp4Builder.largeBox;
+import static com.befovy.fijkplayer.Mp4Builder.mdhd;
+import static com.befovy.fijkplayer.Mp4Builder.mvhd;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class Mp4KeyframeParserTest {
+
+    private File mFile;
+
+    @After
+    public void tearDown() {
+        if (mFile != null) {
+            //noinspection ResultOfMethodCallIgnored
+            mFile.delete();
+        }
+    }
+
+    /**
+     * Video track of 10 samples of 40ms in 4 chunks, keyframes at sample 1 and 6,
+     * starting 500ms late after an empty edit, and 80ms of media skipped by the edit list
+     */
+    static byte[] videoTrack(byte[] chunkOffsets) {
+        return box("trak",
+                box("edts", fullBox("elst", 2, 500, -1, 0x10000, 4000, 1024, 0x10000)),
+                box("mdia", mdhd(12800), hdlr("vide"),
+                        box("minf", box("stbl",
+                                fullBox("stts", 1, 10, 512),
+                                fullBox("stss", 2, 1, 6),
+                                fullBox("stsc", 2, 1, 3, 1, 3, 2, 1),
+                                fullBox("stsz", 0, 10, 100, 101, 102, 103, 104, 105, 106, 107, 108, 109),
+                                chunkOffsets))));
+    }
+
+    static byte[] audioTrack() {
+        return box("trak", box("mdia", mdhd(44100), hdlr("soun"),
+                box("minf", box("stbl", fullBox("stss", 1, 1)))));
+    }
+
+    static byte[] mp4() {
+        return concat(box("ftyp", new byte[8]), box("mdat", new byte[5000]),
+                box("moov", mvhd(1000), audioTrack(), videoTrack(fullBox("stco", 4, 1000, 2000, 3000, 4000))));
+    }
+
+    private FijkKeyframeIndex.Keyframes parse(byte[] data) throws IOException {
+        mFile = Mp4Builder.write(data);
+        FileMediaDataSource source = new FileMediaDataSource(mFile);
+        try {
+            return Mp4KeyframeParser.parse(source);
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void keyframesOfVideoTrack() throws IOException {
+        FijkKeyframeIndex.Keyframes keyframes = parse(mp4());
+        assertNotNull(keyframes);
+        assertEquals(2, keyframes.count());
+        // 500ms empty edit, then media from 1024 / 12800s
+        assertEquals(420, keyframes.timeMs(0));
+        assertEquals(1000, keyframes.offset(0));
+        // sample 6 is the third of chunk 2, after samples of 103 and 104 bytes
+        assertEquals(420 + 5 * 40, keyframes.timeMs(1));
+        assertEquals(2000 + 103 + 104, keyframes.offset(1));
+    }
+
+    @Test
+    public void largeBoxesAndLongOffsets() throws IOException {
+        ByteBuffer co64 = ByteBuffer.allocate(8 + 4 * 8);
+        co64.putInt(0).putInt(4);
+        for (int i = 1; i <= 4; i++)
+            co64.putLong(i * 5000000000L);
+        byte[] moov = box("moov", mvhd(1000), videoTrack(box("co64", co64.array())));
+        FijkKeyframeIndex.Keyframes keyframes = parse(concat(largeBox("mdat", new byte[100]), moov));
+        assertNotNull(keyframes);
+        assertEquals(2, keyframes.count());
+        assertEquals(5000000000L, keyframes.offset(0));
+        assertEquals(10000000000L + 103 + 104, keyframes.offset(1));
+    }
+
+    @Test
+    public void version1MediaHeader() throws IOException {
+        ByteBuffer mdhd = ByteBuffer.allocate(28);
+        mdhd.putLong(0).putLong(0).putInt(1000).putLong(0);
+        byte[] trak = box("trak", box("mdia", fullBoxV1("mdhd", mdhd.array()), hdlr("vide"),
+                box("minf", box("stbl",
+                        fullBox("stts", 1, 4, 1000),
+                        fullBox("stss", 2, 1, 3),
+                        fullBox("stsc", 1, 1, 4, 1),
+                        fullBox("stsz", 10, 4),
+                        fullBox("stco", 1, 64)))));
+        FijkKeyframeIndex.Keyframes keyframes = parse(box("moov", mvhd(1000), trak));
+        assertNotNull(keyframes);
+        assertEquals(2, keyframes.count());
+        assertEquals(0, keyframes.timeMs(0));
+        assertEquals(64, keyframes.offset(0));
+        assertEquals(2000, keyframes.timeMs(1));
+        assertEquals(64 + 2 * 10, keyframes.offset(1));
+    }
+
+    @Test
+    public void allSamplesAreKeyframesWithoutSyncTable() throws IOException {
+        byte[] trak = box("trak", box("mdia", mdhd(1000), hdlr("vide"),
+                box("minf", box("stbl", fullBox("stts", 1, 4, 1000)))));
+        FijkKeyframeIndex.Keyframes keyframes = parse(box("moov", mvhd(1000), trak));
+        assertNotNull(keyframes);
+        assertEquals(0, keyframes.count());
+    }
+
+    @Test
+    public void unsupportedMediaIsNull() throws IOException {
+        byte[] noise = new byte[4096];
+        new Random(4096).nextBytes(noise);
+        assertNull(parse(noise));
+        tearDown();
+        // fragmented, samples are in moof boxes
+        assertNull(parse(box("moov", mvhd(1000), box("mvex"), videoTrack(fullBox("stco", 4, 1, 2, 3, 4)))));
+        tearDown();
+        assertNull(parse(box("moov", mvhd(1000), audioTrack())));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedMoovFails() throws IOException {
+        byte[] data = mp4();
+        byte[] truncated = new byte[data.length - 10];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        parse(truncated);
+    }
+}
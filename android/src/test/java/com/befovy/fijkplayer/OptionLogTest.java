@@ -0,0 +1,98 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OptionLogTest {
+
+    @Test
+    public void keepsLastValueOfEachKind() {
+        OptionLog log = new OptionLog();
+        log.add(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "headers", "a");
+        log.add(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 1);
+        log.add(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "headers", "b");
+        log.add(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
+        assertEquals("b", log.stringOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "headers", null));
+        assertEquals(0, log.intOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", -1));
+        assertEquals(-1, log.intOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "headers", -1));
+        log.clear();
+        assertEquals(0, log.size());
+        assertEquals("def", log.stringOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "headers", "def"));
+    }
+
+    @Test
+    public void profileHostOptionsAreNotRecorded() {
+        Map<String, Object> host = new LinkedHashMap<>();
+        host.put(HostOption.SEEK_MODE, 1);
+        Map<String, Object> format = new LinkedHashMap<>();
+        format.put("user_agent", "ua");
+        format.put("reconnect", 1);
+        Map<Integer, Object> options = new LinkedHashMap<>();
+        // category 0 is host options
+        options.put(0, host);
+        options.put(IjkMediaPlayer.OPT_CATEGORY_FORMAT, format);
+
+        OptionLog log = new OptionLog();
+        log.add(FijkOptionProfile.compile(options, true));
+        assertEquals(2, log.size());
+        assertEquals("ua", log.stringOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "user_agent", null));
+        assertEquals(1, log.intOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "reconnect", 0));
+    }
+
+    @Test
+    public void addDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        OptionLog log = new OptionLog();
+        final int count = 1000;
+        // grow the arrays, then reuse them after clear
+        for (int i = 0; i < count; i++)
+            log.add(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "framedrop", i);
+        log.clear();
+        long tid = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < count; i++) {
+            log.add(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "framedrop", i);
+            log.add(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "user_agent", "ua");
+            if (log.size() >= count)
+                log.clear();
+        }
+        long allocated = threads.getThreadAllocatedBytes(tid) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,117 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Cost of QueuingEventSink queueing events and flushing them when the delegate is set.
+ * Events which pass through are covered by {@link FijkPlayerBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class QueuingEventSinkBenchmark {
+
+    /**
+     * count of events queued before each flush
+     */
+    @Param({"16", "256"})
+    public int events;
+
+    /**
+     * batch interval of the sink, 0 delivers queued events one by one, otherwise as one batch
+     */
+    @Param({"0", "16"})
+    public long batchInterval;
+
+    private QueuingEventSink mSink;
+    private Object[] mEvents;
+    private long mDelivered = 0;
+
+    final private EventChannel.EventSink mDelegate = new EventChannel.EventSink() {
+        @Override
+        public void success(Object o) {
+            mDelivered++;
+        }
+
+        @Override
+        public void error(String s, String s1, Object o) {
+            mDelivered++;
+        }
+
+        @Override
+        public void endOfStream() {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        mSink = new QueuingEventSink();
+        mSink.setBatchInterval(batchInterval);
+        mEvents = new Object[events];
+        // half of the events are coalescing position events
+        for (int i = 0; i < events; i++) {
+            Map<String, Object> event = new HashMap<>();
+            if (i % 2 == 0) {
+                event.put("event", "pos");
+                event.put("pos", i * 40);
+            } else {
+                event.put("event", "state_change");
+                event.put("new", 4);
+                event.put("old", 3);
+            }
+            mEvents[i] = event;
+        }
+    }
+
+    /**
+     * Queue events while nobody listens, then flush them to the new delegate
+     */
+    @Benchmark
+    public long queueAndFlush() {
+        mSink.setDelegate(null);
+        for (Object event : mEvents) {
+            mSink.success(event);
+        }
+        mSink.setDelegate(mDelegate);
+        return mDelivered;
+    }
+}
@@ -0,0 +1,162 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RangeMediaDataSourceTest {
+
+    final private static int SIZE = 4 * 1024 * 1024 + 1234;
+
+    private StubHttpServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new StubHttpServer(SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    private static byte[] readAll(RangeMediaDataSource source, int bufferSize) {
+        byte[] out = new byte[(int) source.getSize()];
+        byte[] buffer = new byte[bufferSize];
+        int position = 0;
+        while (position < out.length) {
+            int n = source.readAt(position, buffer, 0, buffer.length);
+            if (n <= 0)
+                break;
+            System.arraycopy(buffer, 0, out, position, n);
+            position += n;
+        }
+        return Arrays.copyOf(out, position);
+    }
+
+    @Test
+    public void readsMediaExactly() {
+        RangeMediaDataSource source = new RangeMediaDataSource(mServer.url(), 4);
+        try {
+            assertEquals(SIZE, source.getSize());
+            assertArrayEquals(mServer.media, readAll(source, 32 * 1024));
+            byte[] buffer = new byte[100];
+            assertEquals(-1, source.readAt(SIZE, buffer, 0, buffer.length));
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void seeksBackward() {
+        RangeMediaDataSource source = new RangeMediaDataSource(mServer.url(), 2);
+        try {
+            byte[] buffer = new byte[1000];
+            long[] positions = {3 * 1024 * 1024, 100, SIZE - 500, 2 * RangeMediaDataSource.CHUNK_SIZE - 10};
+            for (long position : positions) {
+                int n = source.readAt(position, buffer, 0, buffer.length);
+                assertTrue(n > 0);
+                assertArrayEquals(Arrays.copyOfRange(mServer.media, (int) position, (int) position + n),
+                        Arrays.copyOf(buffer, n));
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void shortResponseIsRetried() {
+        mServer.shortOnce = true;
+        RangeMediaDataSource source = new RangeMediaDataSource(mServer.url(), 4);
+        try {
+            assertArrayEquals(mServer.media, readAll(source, 64 * 1024));
+        } finally {
+            source.close();
+        }
+        // every chunk is cut once and fetched again
+        assertTrue(mServer.requests.get() >= 2 * (SIZE / RangeMediaDataSource.CHUNK_SIZE));
+    }
+
+    @Test
+    public void serverIgnoringRangeIsReadOnce() {
+        mServer.ignoreRange = true;
+        RangeMediaDataSource source = new RangeMediaDataSource(mServer.url(), 4);
+        try {
+            assertArrayEquals(mServer.media, readAll(source, 64 * 1024));
+        } finally {
+            source.close();
+        }
+        // the first window may have started several full responses, the rest is one response
+        assertTrue("requests " + mServer.requests.get(), mServer.requests.get() <= RangeMediaDataSource.READ_AHEAD + 2);
+        assertTrue("bytes " + mServer.bytesSent.get(), mServer.bytesSent.get() < 2L * SIZE);
+    }
+
+    @Test
+    public void forwardsHeaders() {
+        Map<String, String> headers = HttpHeaders.of("X-Token: abc\r\nReferer: http://example.com/\r\n",
+                "fijk-test", "a=1; b=2");
+        RangeMediaDataSource source = new RangeMediaDataSource(mServer.url(), 1, headers);
+        try {
+            source.getSize();
+        } finally {
+            source.close();
+        }
+        assertEquals("abc", mServer.headers.get("x-token"));
+        assertEquals("http://example.com/", mServer.headers.get("referer"));
+        assertEquals("fijk-test", mServer.headers.get("user-agent"));
+        assertEquals("a=1; b=2", mServer.headers.get("cookie"));
+    }
+
+    /**
+     * Not a strict benchmark, parallel Range requests must hide most of the request latency
+     */
+    @Test
+    public void parallelFetchHidesLatency() {
+        mServer.latencyMs = 20;
+        Map<Integer, Long> elapsed = new HashMap<>();
+        for (int connections : new int[]{1, 4}) {
+            RangeMediaDataSource source = new RangeMediaDataSource(mServer.url(), connections);
+            long start = System.nanoTime();
+            try {
+                assertEquals(SIZE, readAll(source, 64 * 1024).length);
+            } finally {
+                source.close();
+            }
+            elapsed.put(connections, (System.nanoTime() - start) / 1000000);
+        }
+        System.out.println("RangeMediaDataSource 4MB with 20ms latency: 1 connection "
+                + elapsed.get(1) + "ms, 4 connections " + elapsed.get(4) + "ms");
+        assertTrue(elapsed.get(4) < elapsed.get(1) * 3 / 4);
+    }
+}
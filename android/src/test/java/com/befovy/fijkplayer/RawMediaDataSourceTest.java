@@ -0,0 +1,187 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+package com.befovy.fijkplayer;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RawMediaDataSourceTest {
+
+    final private static int BLOCK = RawMediaDataSource.BLOCK_SIZE;
+
+    /**
+     * Stream which counts the bytes decoded, read or skipped, and the resets
+     */
+    private static class CountingStream extends ByteArrayInputStream {
+        long decoded = 0;
+        int resets = 0;
+
+        CountingStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int n = super.read(b, off, len);
+            decoded += Math.max(n, 0);
+            return n;
+        }
+
+        @Override
+        public synchronized long skip(long n) {
+            long skipped = super.skip(n);
+            decoded += skipped;
+            return skipped;
+        }
+
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            resets++;
+        }
+    }
+
+    private static byte[] media(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] read(RawMediaDataSource source, long position, int size) {
+        byte[] buffer = new byte[size];
+        int n = source.readAt(position, buffer, 0, size);
+        return n > 0 ? Arrays.copyOf(buffer, n) : new byte[0];
+    }
+
+    @Test
+    public void readsAcrossBlocksAndTail() {
+        byte[] data = media(3 * BLOCK + 1234);
+        RawMediaDataSource source = new RawMediaDataSource(new CountingStream(data));
+        assertEquals(data.length, source.getSize());
+        long position = 0;
+        while (position < data.length) {
+            byte[] read = read(source, position, 50000);
+            assertTrue(read.length > 0);
+            assertArrayEquals(Arrays.copyOfRange(data, (int) position, (int) position + read.length), read);
+            position += read.length;
+        }
+        assertEquals(-1, source.readAt(data.length, new byte[16], 0, 16));
+        source.close();
+    }
+
+    @Test
+    public void sizeIsMeasuredNotAvailable() {
+        byte[] data = media(5 * BLOCK + 77);
+        // an inflating stream tells 0 or 1 available, whatever is left
+        CountingStream stream = new CountingStream(data) {
+            @Override
+            public synchronized int available() {
+                return 1;
+            }
+        };
+        RawMediaDataSource source = new RawMediaDataSource(stream);
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 200), read(source, 100, 100));
+        assertEquals(data.length, source.getSize());
+        assertEquals(data.length, source.getSize());
+        // measured once, the first block stays cached and later blocks are read again from start
+        assertEquals(data.length, stream.decoded);
+        assertEquals(0, stream.resets);
+        assertArrayEquals(Arrays.copyOfRange(data, 50, 150), read(source, 50, 100));
+        assertArrayEquals(Arrays.copyOfRange(data, 3 * BLOCK, 3 * BLOCK + 100), read(source, 3 * BLOCK, 100));
+        assertEquals(1, stream.resets);
+        assertEquals(-1, source.readAt(data.length, new byte[16], 0, 16));
+        source.close();
+    }
+
+    @Test
+    public void seekReadsTheRightBytes() {
+        byte[] data = media(20 * BLOCK + 77);
+        RawMediaDataSource source = new RawMediaDataSource(new CountingStream(data));
+        long[] positions = {15L * BLOCK + 3, 2L * BLOCK - 10, 20L * BLOCK + 10, 7L * BLOCK, 0};
+        for (long position : positions) {
+            byte[] read = read(source, position, 4096);
+            int end = (int) Math.min(position + 4096, data.length);
+            assertArrayEquals(Arrays.copyOfRange(data, (int) position, end), read);
+        }
+        source.close();
+    }
+
+    @Test
+    public void backwardSeekKeepsCachedBlocks() {
+        int blocks = 2 * RawMediaDataSource.MAX_CACHED_BLOCKS;
+        byte[] data = media(blocks * BLOCK);
+        CountingStream stream = new CountingStream(data);
+        RawMediaDataSource source = new RawMediaDataSource(stream);
+        // play a few blocks far into the stream
+        for (int i = blocks - 8; i < blocks; i++) {
+            read(source, (long) i * BLOCK, BLOCK);
+        }
+        // seek back to start, then back to the playhead
+        read(source, 0, 4096);
+        assertEquals(1, stream.resets);
+        long decoded = stream.decoded;
+        for (int i = blocks - 8; i < blocks; i++) {
+            assertArrayEquals(Arrays.copyOfRange(data, i * BLOCK, i * BLOCK + 100),
+                    read(source, (long) i * BLOCK, 100));
+        }
+        assertEquals(decoded, stream.decoded);
+        assertEquals(1, stream.resets);
+        source.close();
+    }
+
+    @Test
+    public void evictedBlocksAreReused() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        int blocks = 3 * RawMediaDataSource.MAX_CACHED_BLOCKS;
+        byte[] data = media(blocks * BLOCK);
+        RawMediaDataSource source = new RawMediaDataSource(new CountingStream(data));
+        byte[] buffer = new byte[4096];
+        // fill the cache
+        for (int i = 0; i <= RawMediaDataSource.MAX_CACHED_BLOCKS; i++) {
+            source.readAt((long) i * BLOCK, buffer, 0, buffer.length);
+        }
+        long tid = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = RawMediaDataSource.MAX_CACHED_BLOCKS + 1; i < blocks; i++) {
+            source.readAt((long) i * BLOCK, buffer, 0, buffer.length);
+        }
+        long allocated = threads.getThreadAllocatedBytes(tid) - before;
+        // every block missed, without reuse each one allocates BLOCK bytes
+        assertTrue("allocated " + allocated + " bytes", allocated < 2L * BLOCK);
+        source.close();
+    }
+}
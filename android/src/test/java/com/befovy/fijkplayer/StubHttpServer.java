@@ -0,0 +1,138 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local http server of one random media, for data sources which do http requests
+ */
+final class StubHttpServer implements HttpHandler {
+
+    final byte[] media;
+    final private HttpServer mServer;
+    final private ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    // answer 200 with the whole media to Range requests
+    volatile boolean ignoreRange = false;
+    volatile long latencyMs = 0;
+    // the first response of each range start is cut to half
+    volatile boolean shortOnce = false;
+    volatile String etag = "\"v1\"";
+    volatile String lastModified = "Wed, 01 Jan 2020 00:00:00 GMT";
+
+    final AtomicInteger requests = new AtomicInteger(0);
+    final AtomicLong bytesSent = new AtomicLong(0);
+    // request headers of the last request
+    final Map<String, String> headers = new ConcurrentHashMap<>();
+    final private Set<Long> mCut = Collections.synchronizedSet(new HashSet<Long>());
+
+    StubHttpServer(int size) throws IOException {
+        media = new byte[size];
+        new Random(size).nextBytes(media);
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", this);
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/media.mp4";
+    }
+
+    void stop() {
+        mServer.stop(0);
+        // wake up responses waiting for latency
+        mExecutor.shutdownNow();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        headers.clear();
+        for (Map.Entry<String, java.util.List<String>> header : exchange.getRequestHeaders().entrySet())
+            headers.put(header.getKey().toLowerCase(), header.getValue().get(0));
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long start = 0;
+        long end = media.length - 1;
+        int code = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && !ignoreRange && range.startsWith("bytes=")) {
+            String[] parts = range.substring(6).split("-", -1);
+            start = Long.parseLong(parts[0]);
+            if (parts.length > 1 && parts[1].length() > 0)
+                end = Math.min(Long.parseLong(parts[1]), media.length - 1);
+            if (start >= media.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + media.length);
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            code = 206;
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + start + "-" + end + "/" + media.length);
+        }
+        if (etag != null)
+            exchange.getResponseHeaders().set("ETag", etag);
+        if (lastModified != null)
+            exchange.getResponseHeaders().set("Last-Modified", lastModified);
+        long length = end - start + 1;
+        long body = length;
+        if (shortOnce && mCut.add(start))
+            body = length / 2;
+        // a cut body is sent chunked, as a server closing the connection early
+        exchange.sendResponseHeaders(code, body == length ? length : 0);
+        OutputStream os = exchange.getResponseBody();
+        try {
+            os.write(media, (int) start, (int) body);
+            bytesSent.addAndGet(body);
+        } catch (IOException ignored) {
+            // client went away
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -87,6 +87,29 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
   /// stream of [bufferPercent].
   Stream<int> get onBufferPercentUpdate => _bufferPercentController.stream;
 
+  int _bufferBytes = 0;
+
+  /// return the bytes of audio and video data cached by player
+  int get bufferBytes => _bufferBytes;
+
+  final StreamController<int> _bufferBytesController =
+      StreamController.broadcast();
+
+  /// stream of [bufferBytes].
+  Stream<int> get onBufferBytesUpdate => _bufferBytesController.stream;
+
+  Duration _bufferDuration = Duration();
+
+  /// return the duration of audio or video data cached by player
+  Duration get bufferDuration => _bufferDuration;
+
+  final StreamController<Duration> _bufferDurationController =
+      StreamController.broadcast();
+
+  /// stream of [bufferDuration].
+  Stream<Duration> get onBufferDurationUpdate =>
+      _bufferDurationController.stream;
+
   Duration _currentPos = Duration();
 
   /// return the current playing position
@@ -111,6 +134,19 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
 
   String get dataSource => _dataSource;
 
+  final StreamController<Map<dynamic, dynamic>> _playlistController =
+      StreamController.broadcast();
+
+  /// Only works on Android
+  /// Events of the queue filled by [enqueue].
+  ///
+  /// Each event is a map with `action`, `url`, `index` and `remaining`.
+  /// `action` is `item_ready` when the next item is prepared in background,
+  /// `item_changed` when it starts playing, and `item_error` with `error`
+  /// when it fails to open or prepare and is skipped.
+  Stream<Map<dynamic, dynamic>> get onPlaylistEvent =>
+      _playlistController.stream;
+
   final Completer<int> _nativeSetup;
   Completer<Uint8List> _snapShot;
 
@@ -171,6 +207,8 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
         EventChannel('befovy.com/fijkplayer/event/' + _playerId.toString())
             .receiveBroadcastStream()
             .listen(_eventListener, onError: _errorListener);
+    ServicesBinding.instance.defaultBinaryMessenger
+        .setMessageHandler(_binaryChannelName, _binaryEventListener);
     _nativeSetup.complete(_playerId);
 
     _channel.setMethodCallHandler(_handler);
@@ -216,12 +254,98 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
     return _channel.invokeMethod("applyOptions", fijkOption.data);
   }
 
+  /// Only works on Android
+  /// Apply options registered by [FijkPlugin.registerOptionProfile] as [name].
+  ///
+  /// On other platforms, this method does nothing.
+  Future<void> applyOptionProfile(String name) async {
+    await _nativeSetup.future;
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod(
+          "applyOptionProfile", <String, dynamic>{'name': name});
+    }
+  }
+
   Future<int> setupSurface() async {
     await _nativeSetup.future;
     FijkLog.i("$this setupSurface");
     return _channel.invokeMethod("setupSurface");
   }
 
+  /// Only works on Android
+  /// Set the policy of position update events which drive [onCurrentPosUpdate].
+  ///
+  /// With [interval] in milliseconds greater than 0, at most one position
+  /// update event is sent in each [interval].
+  /// Whatever the policy is, no position update event is sent after all
+  /// [FijkView] of this player are disposed, until a new [FijkView] is built.
+  Future<void> setPositionNotify(FijkPosNotify mode, {int interval = 0}) async {
+    await _nativeSetup.future;
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("setPositionNotify",
+          <String, dynamic>{'mode': mode.index, 'interval': interval});
+    }
+  }
+
+  /// Only works on Android
+  /// Query current position and update [currentPos] and [onCurrentPosUpdate],
+  /// regardless of the policy set by [setPositionNotify].
+  Future<Duration> requestPosition() async {
+    await _nativeSetup.future;
+    if (Platform.isAndroid) {
+      int pos = await _channel.invokeMethod("notifyPosition");
+      return Duration(milliseconds: pos);
+    }
+    return _currentPos;
+  }
+
+  /// Only works on Android
+  /// Append [urls] to the queue played after current data source.
+  ///
+  /// The head of the queue is prepared in background while current item
+  /// plays, and it takes over the same [FijkView] when current item completes,
+  /// without going through idle and preparing states.
+  /// Options set on this player are used by the queued items as well.
+  /// Returns the count of items not played yet.
+  Future<int> enqueue(List<String> urls) async {
+    await _nativeSetup.future;
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod(
+          "playlistEnqueue", <String, dynamic>{'urls': urls});
+    }
+    return 0;
+  }
+
+  /// Only works on Android
+  /// Play the next item of the queue filled by [enqueue] as soon as it is
+  /// prepared. Returns false if the queue is empty.
+  Future<bool> next() async {
+    await _nativeSetup.future;
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("playlistNext");
+    }
+    return false;
+  }
+
+  /// Only works on Android
+  /// Remove all items of the queue filled by [enqueue].
+  /// The queue is also cleared by [reset] and [release].
+  Future<void> clearQueue() async {
+    await _nativeSetup.future;
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("playlistClear");
+    }
+  }
+
+  /// Only works on Android
+  /// Called by [FijkView] when it is built and disposed
+  Future<void> _onViewLoad(bool load) async {
+    await _nativeSetup.future;
+    if (Platform.isAndroid && state != FijkState.end) {
+      return _channel.invokeMethod(load ? "onLoad" : "onUnload");
+    }
+  }
+
   /// Take snapshot (screen shot) of current playing video
   ///
   /// If you want to use [takeSnapshot], you must call
@@ -235,17 +359,54 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
   /// var provider = MemoryImage(v);
   /// Widget image = Image(image: provider)
   /// ```
-  Future<Uint8List> takeSnapShot() async {
+  ///
+  /// On Android (7.0 and above), [format] can be `png`, `jpeg` or `rgba`.
+  /// `rgba` returns raw pixels, 4 bytes per pixel.
+  /// [width] and [height] scale the snapshot, default to the video size.
+  /// Set a small size for thumbnails when scrubbing, native bitmaps are
+  /// pooled and reused between snapshots.
+  Future<Uint8List> takeSnapShot(
+      {String format = "png", int quality = 90, int width, int height}) async {
     await _nativeSetup.future;
     FijkLog.i("$this takeSnapShot");
     if (_snapShot != null && !_snapShot.isCompleted) {
       return Future.error(StateError("last snapShot is not finished"));
     }
     _snapShot = Completer<Uint8List>();
-    _channel.invokeMethod("snapshot");
+    _channel.invokeMethod("snapshot", <String, dynamic>{
+      'format': format,
+      'quality': quality,
+      'width': width,
+      'height': height,
+    });
     return _snapShot.future;
   }
 
+  /// Only works on Android
+  /// Return playback QoS metrics of this player.
+  ///
+  /// Includes prepare and first frame latency of current session, stall count,
+  /// stall duration, time played, rebuffer ratio, and histograms of prepare,
+  /// first frame, stall and seek latency in milliseconds. Stall count, stall
+  /// duration, time played and rebuffer ratio count all sessions since the
+  /// last [resetMetrics], time played is time in started state.
+  Future<Map<dynamic, dynamic>> getMetrics() async {
+    await _nativeSetup.future;
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("getMetrics");
+    }
+    return Future.value(<dynamic, dynamic>{});
+  }
+
+  /// Only works on Android
+  /// Clear the metrics returned by [getMetrics].
+  Future<void> resetMetrics() async {
+    await _nativeSetup.future;
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("resetMetrics");
+    }
+  }
+
   /// Set data source for this player
   ///
   /// [path] must be a valid uri, otherwise this method return ArgumentError
@@ -415,6 +576,7 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
       await _channel.invokeMethod("reset").then((_) {
         FijkLog.i("$this invoke reset #$cid -> done");
       });
+      _scrubbing = false;
       _setValue(
           FijkValue.uninitialized().copyWith(fullScreen: value.fullScreen));
     }
@@ -436,6 +598,31 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
     }
   }
 
+  bool _scrubbing = false;
+
+  /// Only works on Android
+  /// Return true between [setScrubbing] true and false
+  bool get isScrubbing => _scrubbing;
+
+  /// Only works on Android
+  /// Enter or leave scrub mode, used when the user drags a progress slider.
+  ///
+  /// In scrub mode, [seekTo] calls made while a seek is in progress are not
+  /// sent to the native player at once. Only the latest target is kept and it
+  /// is sent when the seek in progress completes.
+  /// Seeks turn off ijkplayer's `enable-accurate-seek` and land on a keyframe,
+  /// the nearest one if host option `seek-mode` has loaded the keyframe index.
+  /// When scrub mode ends, the last target is sought again with accurate seek.
+  /// [getMetrics] reports `seeksIssued` and `seeksDropped`.
+  Future<void> setScrubbing(bool scrubbing) async {
+    await _nativeSetup.future;
+    if (Platform.isAndroid && _scrubbing != scrubbing) {
+      _scrubbing = scrubbing;
+      return _channel.invokeMethod(
+          "setScrubbing", <String, dynamic>{'scrubbing': scrubbing});
+    }
+  }
+
   /// Release native player. Release memory and resource
   Future<void> release() async {
     await _nativeSetup.future;
@@ -446,6 +633,8 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
     _setValue(value.copyWith(state: FijkState.end));
     await _nativeEventSubscription?.cancel();
     _nativeEventSubscription = null;
+    ServicesBinding.instance.defaultBinaryMessenger
+        .setMessageHandler(_binaryChannelName, null);
     _allInstance.remove(_playerId);
     await FijkPlugin._releasePlayer(_playerId).then((_) {
       FijkLog.i("$this invoke release #$cid -> done");
@@ -548,6 +737,15 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
         _bufferPosController.add(_bufferPos);
         _bufferPercent = percent;
         _bufferPercentController.add(percent);
+        // cached bytes and duration come with the same event
+        if (map['bytes'] != null) {
+          _bufferBytes = map['bytes'];
+          _bufferBytesController.add(_bufferBytes);
+        }
+        if (map['ms'] != null) {
+          _bufferDuration = Duration(milliseconds: map['ms']);
+          _bufferDurationController.add(_bufferDuration);
+        }
         break;
       case 'pos':
         int pos = map['pos'];
@@ -565,11 +763,94 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
       case 'seek_complete':
         _seeking = false;
         break;
+      case 'accurate_seek_complete':
+        // position reaches the seek target, with host option seek-mode 2
+        _seeking = false;
+        _currentPos = Duration(milliseconds: map['pos']);
+        _currentPosController.add(_currentPos);
+        FijkLog.d("$this accurate seek complete $_currentPos");
+        break;
+      case 'playlist':
+        if (map['action'] == 'item_changed') {
+          _dataSource = map['url'];
+          FijkLog.i("$this playlist item changed to $_dataSource");
+        }
+        _playlistController.add(map);
+        break;
+      case 'batch':
+        final List<dynamic> events = map['events'];
+        events.forEach(_eventListener);
+        break;
       default:
         break;
     }
   }
 
+  String get _binaryChannelName =>
+      'befovy.com/fijkplayer/binary/' + _playerId.toString();
+
+  /// Decode binary event records sent when host option `binary-event` is 1.
+  ///
+  /// Each record is 20 bytes little endian: int32 what, int32 arg1,
+  /// int32 arg2, int64 value. `what` is the native event constant.
+  Future<ByteData> _binaryEventListener(ByteData data) {
+    for (int offset = 0;
+        offset + _FijkEvent.recordSize <= data.lengthInBytes;
+        offset += _FijkEvent.recordSize) {
+      int what = data.getInt32(offset, Endian.little);
+      int arg1 = data.getInt32(offset + 4, Endian.little);
+      int arg2 = data.getInt32(offset + 8, Endian.little);
+      int value = data.getInt64(offset + 12, Endian.little);
+      Map<String, dynamic> event;
+      switch (what) {
+        case _FijkEvent.prepared:
+          event = {'event': 'prepared', 'duration': value};
+          break;
+        case _FijkEvent.playbackStateChanged:
+          event = {'event': 'state_change', 'new': arg1, 'old': arg2};
+          break;
+        case _FijkEvent.videoRenderingStart:
+        case _FijkEvent.audioRenderingStart:
+          event = {
+            'event': 'rendering_start',
+            'type': what == _FijkEvent.videoRenderingStart ? 'video' : 'audio'
+          };
+          break;
+        case _FijkEvent.bufferingStart:
+        case _FijkEvent.bufferingEnd:
+          event = {'event': 'freeze', 'value': what == _FijkEvent.bufferingStart};
+          break;
+        case _FijkEvent.bufferingUpdate:
+          // value is cached bytes in high 32 bits and cached ms in low 32 bits
+          event = {
+            'event': 'buffering',
+            'head': arg1,
+            'percent': arg2,
+            'bytes': value >> 32,
+            'ms': value & 0xffffffff
+          };
+          break;
+        case _FijkEvent.currentPositionUpdate:
+          event = {'event': 'pos', 'pos': arg1};
+          break;
+        case _FijkEvent.videoRotationChanged:
+          event = {'event': 'rotate', 'degree': arg1};
+          break;
+        case _FijkEvent.videoSizeChanged:
+          event = {'event': 'size_changed', 'width': arg1, 'height': arg2};
+          break;
+        case _FijkEvent.seekComplete:
+          event = {'event': 'seek_complete', 'pos': arg1, 'err': arg2};
+          break;
+        case _FijkEvent.accurateSeekComplete:
+          event = {'event': 'accurate_seek_complete', 'pos': arg1};
+          break;
+      }
+      if (event != null) _eventListener(event);
+    }
+    return Future.value(null);
+  }
+
   void _errorListener(Object obj) {
     final PlatformException e = obj;
     FijkException exception = FijkException.fromPlatformException(e);
@@ -582,3 +863,23 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
     return 'FijkPlayer{id:$_playerId}';
   }
 }
+
+/// Native event constants of binary event records,
+/// keep in sync with FijkEventConstants.java
+class _FijkEvent {
+  /// bytes of one record: int32 what, int32 arg1, int32 arg2, int64 value
+  static const int recordSize = 20;
+
+  static const int prepared = 200;
+  static const int videoSizeChanged = 400;
+  static const int videoRenderingStart = 402;
+  static const int audioRenderingStart = 403;
+  static const int videoRotationChanged = 404;
+  static const int bufferingStart = 500;
+  static const int bufferingEnd = 501;
+  static const int bufferingUpdate = 502;
+  static const int currentPositionUpdate = 510;
+  static const int seekComplete = 600;
+  static const int playbackStateChanged = 700;
+  static const int accurateSeekComplete = 900;
+}
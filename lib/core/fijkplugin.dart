@@ -132,6 +132,222 @@ class FijkPlugin {
     return Future.value();
   }
 
+  /// Only works on Android
+  /// Load native libraries in background, and create a player with surface
+  /// for the first [FijkPlayer] if the player pool keeps idle players,
+  /// see [setPlayerPool].
+  ///
+  /// To warm up as soon as the plugin is attached, add
+  /// `<meta-data android:name="com.befovy.fijkplayer.warm_up" android:value="true" />`
+  /// into `<application>` of AndroidManifest.xml instead.
+  static Future<void> warmUp() {
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("warmUp");
+    }
+    return Future.value();
+  }
+
+  /// Only works on Android
+  /// Return cost of each warm up stage in microseconds, -1 for stages not done
+  static Future<Map<dynamic, dynamic>> warmUpStats() {
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("warmUpStats");
+    }
+    return Future.value(<dynamic, dynamic>{});
+  }
+
+  /// Only works on Android
+  /// Keep released players in a pool and reuse them for new [FijkPlayer]s.
+  ///
+  /// At most [maxIdle] released players are kept, and the pool is refilled
+  /// to [minIdle] players in background after a player is taken from it.
+  /// Both default to 0, which means no pool.
+  ///
+  /// Textures of released players are pooled separately, at most
+  /// [maxTextures] are kept, 2 by default.
+  static Future<void> setPlayerPool(
+      {int minIdle = 0, int maxIdle = 0, int maxTextures}) {
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("playerPool", <String, dynamic>{
+        'min': minIdle,
+        'max': maxIdle,
+        'textures': maxTextures
+      });
+    }
+    return Future.value();
+  }
+
+  /// Only works on Android
+  /// Return player pool statistics, hit rate and player creation latency,
+  /// and texture pool statistics in `texture`
+  static Future<Map<dynamic, dynamic>> playerPoolStats() {
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("playerPoolStats");
+    }
+    return Future.value(<dynamic, dynamic>{});
+  }
+
+  /// Only works on Android
+  /// Register [option] as a named profile, validated and flattened once.
+  /// Players apply it by [FijkPlayer.applyOptionProfile] without sending
+  /// the option maps again.
+  ///
+  /// Return the number of options in this profile,
+  /// or throw [PlatformException] if some option value is not int or String.
+  static Future<int> registerOptionProfile(String name, FijkOption option) {
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("registerOptionProfile",
+          <String, dynamic>{'name': name, 'options': option.data});
+    }
+    return Future.value(0);
+  }
+
+  /// Only works on Android
+  /// Remove the profile registered as [name].
+  static Future<void> unregisterOptionProfile(String name) {
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod(
+          "unregisterOptionProfile", <String, dynamic>{'name': name});
+    }
+    return Future.value();
+  }
+
+  /// Only works on Android
+  /// Return id and native state of all created players
+  static Future<List<dynamic>> players() {
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("players");
+    }
+    return Future.value(<dynamic>[]);
+  }
+
+  /// Only works on Android
+  /// Fetch the head of a http(s) [url] into disk cache in background.
+  ///
+  /// Give the size to preload either as [bytes], or as [ms] which is
+  /// converted to bytes with an estimated bitrate of 2Mbps.
+  /// A [FijkPlayer] which later sets [url] as data source reads the
+  /// preloaded head from disk cache and fetches the rest itself.
+  /// Preloads are cancelled automatically when the system is low on memory.
+  static Future<void> preload(String url, {int bytes, int ms}) {
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("preload",
+          <String, dynamic>{'url': url, 'bytes': bytes, 'ms': ms});
+    }
+    return Future.value();
+  }
+
+  /// Only works on Android
+  /// Cancel the preload of [url], or all preloads if [url] is null
+  static Future<void> cancelPreload([String url]) {
+    if (Platform.isAndroid) {
+      return _channel
+          .invokeMethod("cancelPreload", <String, dynamic>{'url': url});
+    }
+    return Future.value();
+  }
+
+  static final StreamController<Map<dynamic, dynamic>> _schedulerController =
+      StreamController.broadcast();
+
+  /// Only works on Android
+  /// Decisions of the decode budget set by [setDecodeBudget].
+  ///
+  /// Each event is a map with `pid`, `action` and `priority`. `action` is
+  /// `suspend` when a playing player is paused for a higher priority one,
+  /// `wait` when a start request is held back, `resume` when a suspended
+  /// or waiting player is started, and `limit` with `bufferBytes` and `fps`
+  /// when limits are applied to a preparing player.
+  static Stream<Map<dynamic, dynamic>> get onSchedulerEvent =>
+      _schedulerController.stream;
+
+  static final StreamController<Map<dynamic, dynamic>> _memoryController =
+      StreamController.broadcast();
+
+  /// Only works on Android
+  /// Actions taken when the system is low on memory.
+  ///
+  /// Each event is a map with the trim `level` and `action`. `limit_buffer`
+  /// means players prepared in the next minute get smaller buffers, that is
+  /// all for moderate pressure. On severe pressure, `clear_caches` means
+  /// preloads are cancelled and in-memory caches are dropped, then
+  /// `clear_player_pool` and `reset_player` with `pid` for each paused player
+  /// reset to idle state. A reset player
+  /// drops its options and host options, set them again before reusing it.
+  static Stream<Map<dynamic, dynamic>> get onMemoryEvent {
+    if (Platform.isAndroid) {
+      _onLoad("memory");
+    }
+    return _memoryController.stream;
+  }
+
+  /// Only works on Android
+  /// Set the global decode budget of all players.
+  ///
+  /// At most [maxActive] players play at the same time, players of lower
+  /// priority are paused and resumed later, also when a waiting player gets a
+  /// higher priority. [maxBufferBytes] caps the max buffer size of all
+  /// prepared players, each gets an even share or what is left, but no less
+  /// than 256KB. Players of negative priority are prepared with max fps
+  /// [lowPriorityFps]. The fps cap is set at prepare only, a player already
+  /// prepared keeps its frame rate until it prepares again.
+  /// 0 means no limit, which is the default.
+  static Future<void> setDecodeBudget(
+      {int maxActive = 0, int maxBufferBytes = 0, int lowPriorityFps = 0}) {
+    if (Platform.isAndroid) {
+      _onLoad("scheduler");
+      return _channel.invokeMethod("decodeBudget", <String, dynamic>{
+        'maxActive': maxActive,
+        'maxBufferBytes': maxBufferBytes,
+        'lowPriorityFps': lowPriorityFps,
+      });
+    }
+    return Future.value();
+  }
+
+  /// Only works on Android
+  /// Set the priority of [player] in decode budget, 0 by default.
+  static Future<void> setPlayerPriority(FijkPlayer player, int priority) async {
+    if (Platform.isAndroid) {
+      final int pid = await player.id;
+      return _channel.invokeMethod("playerPriority",
+          <String, dynamic>{'pid': pid, 'priority': priority});
+    }
+  }
+
+  /// Only works on Android
+  /// Extract preview frames of [url] without creating a player.
+  ///
+  /// Frames are decoded at the key frame closest to each time in [times],
+  /// or every [interval] from the start, [count] frames or to the end.
+  /// Each frame is scaled to [width] x [height].
+  /// If [columns] is greater than 0, all frames are drawn into one jpeg sprite
+  /// sheet `data` with `columns` and `rows`, otherwise `frames` is a list of
+  /// jpeg images, null for frames that can't be decoded.
+  /// The returned map also contains the frame `times` in milliseconds.
+  static Future<Map<dynamic, dynamic>> thumbnails(String url,
+      {List<int> times,
+      Duration interval,
+      int count,
+      int width = 160,
+      int height = 90,
+      int columns = 0,
+      int quality = 80}) {
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("thumbnails", <String, dynamic>{
+        'url': url,
+        'times': times,
+        'interval': interval?.inMilliseconds,
+        'count': count,
+        'width': width,
+        'height': height,
+        'columns': columns,
+        'quality': quality,
+      });
+    }
+    return Future.value(<dynamic, dynamic>{});
+  }
+
   static Future<void> _setLogLevel(int level) {
     return _channel.invokeMethod("logLevel", <String, dynamic>{'level': level});
   }
@@ -165,6 +381,12 @@ class FijkPlugin {
         double vol = map['vol'];
         FijkVolume._instance._onVolCallback(vol, sui);
         break;
+      case 'scheduler':
+        _schedulerController.add(map);
+        break;
+      case 'memory':
+        _memoryController.add(map);
+        break;
       default:
         break;
     }
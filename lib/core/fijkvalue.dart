@@ -109,6 +109,21 @@ enum FijkState {
   end
 }
 
+/// Policy of position update events, see [FijkPlayer.setPositionNotify]
+enum FijkPosNotify {
+  /// No position update event
+  off,
+
+  /// Position update events are sent periodically, this is the default
+  always,
+
+  /// Position update events are sent only when the player is [FijkState.started]
+  playing,
+
+  /// Position is only sent when [FijkPlayer.requestPosition] is called
+  onDemand,
+}
+
 /// FijkValue include the properties of a [FijkPlayer] which update not frequently.
 ///
 /// To get the updated value of other frequently updated properties,
@@ -195,6 +195,7 @@ class _FijkViewState extends State<FijkView> {
       _vHeight = s.height;
     }
     widget.player.addListener(_fijkValueListener);
+    widget.player._onViewLoad(true);
     _nativeSetup();
   }
 
@@ -243,6 +244,7 @@ class _FijkViewState extends State<FijkView> {
   void dispose() {
     super.dispose();
     widget.player.removeListener(_fijkValueListener);
+    widget.player._onViewLoad(false);
 
     var brightness = _fijkData.getValue(FijkData._fijkViewPanelBrightness);
     if (brightness != null && brightness is double) {
@@ -495,8 +497,11 @@ class __InnerFijkViewState extends State<_InnerFijkView> {
   }
 
   Widget buildTexture() {
-    Widget tex = _textureId > 0 ? Texture(textureId: _textureId) : Container();
-    if (_degree != 0 && _textureId > 0) {
+    // on android, a pooled texture keeps the last frame of its previous
+    // player until the new video renders, so show it only after that
+    bool show = _textureId > 0 && (_videoRender || !Platform.isAndroid);
+    Widget tex = show ? Texture(textureId: _textureId) : Container();
+    if (_degree != 0 && show) {
       return RotatedBox(
         quarterTurns: _degree ~/ 90,
         child: tex,
@@ -32,18 +32,35 @@ Widget defaultFijkPanelBuilder(FijkPlayer player, FijkData data,
       texturePos: texturePos);
 }
 
+/// Default panel, which seeks while the progress slider is dragged if
+/// [seekOnDrag] is true, see [FijkPlayer.setScrubbing].
+/// [defaultFijkPanelBuilder] only seeks when the drag ends.
+FijkPanelWidgetBuilder defaultFijkPanelBuilderWith({bool seekOnDrag = false}) {
+  return (FijkPlayer player, FijkData data, BuildContext context,
+      Size viewSize, Rect texturePos) {
+    return _DefaultFijkPanel(
+        player: player,
+        buildContext: context,
+        viewSize: viewSize,
+        texturePos: texturePos,
+        seekOnDrag: seekOnDrag);
+  };
+}
+
 /// Default Panel Widget
 class _DefaultFijkPanel extends StatefulWidget {
   final FijkPlayer player;
   final BuildContext buildContext;
   final Size viewSize;
   final Rect texturePos;
+  final bool seekOnDrag;
 
   const _DefaultFijkPanel({
     @required this.player,
     this.buildContext,
     this.viewSize,
     this.texturePos,
+    this.seekOnDrag = false,
   });
 
   @override
@@ -230,8 +247,13 @@ class _DefaultFijkPanelState extends State<_DefaultFijkPanel> {
                         cacheValue: _bufferPos.inMilliseconds.toDouble(),
                         min: 0.0,
                         max: duration,
+                        onChangeStart: (v) {
+                          if (widget.seekOnDrag) player.setScrubbing(true);
+                        },
                         onChanged: (v) {
                           _startHideTimer();
+                          if (widget.seekOnDrag && player.isScrubbing)
+                            player.seekTo(v.toInt());
                           setState(() {
                             _seekPos = v;
                           });
@@ -239,6 +261,7 @@ class _DefaultFijkPanelState extends State<_DefaultFijkPanel> {
                         onChangeEnd: (v) {
                           setState(() {
                             player.seekTo(v.toInt());
+                            if (widget.seekOnDrag) player.setScrubbing(false);
                             print("seek to $v");
                             _currentPos =
                                 Duration(milliseconds: _seekPos.toInt());
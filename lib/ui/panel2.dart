@@ -28,6 +28,7 @@ FijkPanelWidgetBuilder fijkPanel2Builder(
     final int duration = 4000,
     final bool doubleTap = true,
     final bool snapShot = false,
+    final bool seekOnDrag = false,
     final VoidCallback onBack}) {
   return (FijkPlayer player, FijkData data, BuildContext context, Size viewSize,
       Rect texturePos) {
@@ -41,6 +42,7 @@ FijkPanelWidgetBuilder fijkPanel2Builder(
       fill: fill,
       doubleTap: doubleTap,
       snapShot: snapShot,
+      seekOnDrag: seekOnDrag,
       hideDuration: duration,
     );
   };
@@ -55,6 +57,7 @@ class _FijkPanel2 extends StatefulWidget {
   final bool fill;
   final bool doubleTap;
   final bool snapShot;
+  final bool seekOnDrag;
   final int hideDuration;
 
   const _FijkPanel2(
@@ -67,6 +70,7 @@ class _FijkPanel2 extends StatefulWidget {
       this.hideDuration,
       this.doubleTap,
       this.snapShot,
+      this.seekOnDrag = false,
       this.texPos})
       : assert(player != null),
         assert(
@@ -348,8 +352,12 @@ class __FijkPanel2State extends State<_FijkPanel2> {
         cacheValue: bufferPos,
         min: 0.0,
         max: duration,
+        onChangeStart: (v) {
+          if (widget.seekOnDrag) player.setScrubbing(true);
+        },
         onChanged: (v) {
           _restartHideTimer();
+          if (widget.seekOnDrag && player.isScrubbing) player.seekTo(v.toInt());
           setState(() {
             _seekPos = v;
           });
@@ -357,6 +365,7 @@ class __FijkPanel2State extends State<_FijkPanel2> {
         onChangeEnd: (v) {
           setState(() {
             player.seekTo(v.toInt());
+            if (widget.seekOnDrag) player.setScrubbing(false);
             _currentPos = Duration(milliseconds: _seekPos.toInt());
             widget.data.setValue(FijkData._fijkViewPanelSeekto, _seekPos);
             _needClearSeekData = true;